@@ -0,0 +1,391 @@
+package it.unimol.acryl.analysis;
+
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.ShrikeClass;
+import it.unimol.acryl.reports.ReportRow;
+import it.unimol.acryl.static_analysis.contexts.MethodContext;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * State of the analysis of a version of an app, used to analyze the next version incrementally. It contains a key
+ * for each class, which changes when the bytecode of the class or of one of its superclasses (in the jar) changes, and,
+ * for each method, its label, what it depends on and the report rows it produced (without the columns describing the
+ * app). The state is discarded when the format, the labeling algorithm or the configuration of the analysis change.
+ */
+public class AnalysisState {
+    private static final int MAGIC = 0x41435249;
+    private static final int FORMAT_VERSION = 1;
+
+    private final String configuration;
+    private final Map<String, String> classKeys;
+    private final Map<String, MethodState> methods;
+
+    public AnalysisState(String configuration) {
+        this.configuration  = configuration;
+        this.classKeys      = new HashMap<>();
+        this.methods        = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Loads the state stored in the file
+     * @param file state file
+     * @param configuration configuration of the current analysis
+     * @return the stored state, or an empty state if the file does not exist, can not be read or was produced with
+     * a different configuration
+     */
+    public static AnalysisState load(File file, String configuration) {
+        AnalysisState state = new AnalysisState(configuration);
+        if (!file.exists())
+            return state;
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (input.readInt() != MAGIC)
+                throw new IOException("Not an analysis state");
+
+            if (input.readInt() != FORMAT_VERSION || input.readInt() != VersionMethodLabeler.VERSION ||
+                    !input.readUTF().equals(configuration)) {
+                Logger.getAnonymousLogger().info("The analysis state " + file.getPath() + " is outdated: running a full analysis");
+                return state;
+            }
+
+            int classes = input.readInt();
+            for (int i = 0; i < classes; i++) {
+                state.classKeys.put(input.readUTF(), input.readUTF());
+            }
+
+            int methods = input.readInt();
+            for (int i = 0; i < methods; i++) {
+                state.methods.put(input.readUTF(), MethodState.read(input));
+            }
+        } catch (IOException e) {
+            Logger.getAnonymousLogger().warning("Unable to read the analysis state " + file.getPath() + ": " + e.getMessage());
+            return new AnalysisState(configuration);
+        }
+
+        return state;
+    }
+
+    public void store(File file) throws IOException {
+        File temporaryFile = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(VersionMethodLabeler.VERSION);
+            output.writeUTF(this.configuration);
+
+            output.writeInt(this.classKeys.size());
+            for (Map.Entry<String, String> entry : this.classKeys.entrySet()) {
+                output.writeUTF(entry.getKey());
+                output.writeUTF(entry.getValue());
+            }
+
+            output.writeInt(this.methods.size());
+            for (Map.Entry<String, MethodState> entry : this.methods.entrySet()) {
+                output.writeUTF(entry.getKey());
+                entry.getValue().write(output);
+            }
+        }
+
+        Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public boolean isEmpty() {
+        return this.classKeys.isEmpty();
+    }
+
+    /**
+     * Sets the keys of the classes. Classes with a null key are not stored, so they are considered as changed in the
+     * next analysis.
+     */
+    public void setClassKeys(Map<String, String> classKeys) {
+        this.classKeys.clear();
+        for (Map.Entry<String, String> entry : classKeys.entrySet()) {
+            if (entry.getValue() != null)
+                this.classKeys.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Returns the key of the class, or null if the class is not in this state
+     */
+    public String getClassKey(String className) {
+        return this.classKeys.get(className);
+    }
+
+    /**
+     * Returns the classes that are not in this state with the same key, and the classes of this state that do not
+     * exist anymore
+     * @param currentKeys keys of the classes of the current version
+     */
+    public Set<String> getChangedClasses(Map<String, String> currentKeys) {
+        Set<String> result = new HashSet<>();
+        for (Map.Entry<String, String> entry : currentKeys.entrySet()) {
+            if (entry.getValue() == null || !entry.getValue().equals(this.classKeys.get(entry.getKey())))
+                result.add(entry.getKey());
+        }
+
+        for (String className : this.classKeys.keySet()) {
+            if (!currentKeys.containsKey(className))
+                result.add(className);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the state of the method, or null if the method is not in this state
+     */
+    public MethodState getMethod(String signature) {
+        return this.methods.get(signature);
+    }
+
+    /**
+     * Returns the states of all the methods, by signature
+     */
+    public Map<String, MethodState> getMethods() {
+        return Collections.unmodifiableMap(this.methods);
+    }
+
+    public MethodState getOrCreateMethod(String signature) {
+        return this.methods.computeIfAbsent(signature, key -> new MethodState());
+    }
+
+    public void putMethod(String signature, MethodState methodState) {
+        this.methods.put(signature, methodState);
+    }
+
+    /**
+     * Computes the key of each class, combining the hash of its bytecode with the keys of its superclass and of its
+     * interfaces (if they are in the jar), since they determine how the calls towards the class are resolved. Classes
+     * whose bytecode is not available have a null key, i.e., they are always considered as changed.
+     */
+    public static Map<String, String> computeClassKeys(Collection<IClass> classes) {
+        Map<IClass, String> keys = new HashMap<>();
+        Set<IClass> inJar = new HashSet<>(classes);
+
+        Map<String, String> result = new HashMap<>();
+        for (IClass iClass : classes) {
+            result.put(iClass.getName().toString(), computeClassKey(iClass, inJar, keys));
+        }
+
+        return result;
+    }
+
+    private static String computeClassKey(IClass iClass, Set<IClass> inJar, Map<IClass, String> keys) {
+        if (keys.containsKey(iClass))
+            return keys.get(iClass);
+
+        String key = null;
+        if (iClass instanceof ShrikeClass) {
+            List<String> parts = new ArrayList<>();
+            parts.add(PersistentVersionMethodCache.toHex(PersistentVersionMethodCache.hash(((ShrikeClass) iClass).getReader().getBytes())));
+
+            List<IClass> ancestors = new ArrayList<>(iClass.getDirectInterfaces());
+            if (iClass.getSuperclass() != null)
+                ancestors.add(iClass.getSuperclass());
+
+            for (IClass ancestor : ancestors) {
+                if (!inJar.contains(ancestor))
+                    continue;
+
+                String ancestorKey = computeClassKey(ancestor, inJar, keys);
+                if (ancestorKey == null) {
+                    parts = null;
+                    break;
+                }
+                parts.add(ancestorKey);
+            }
+
+            if (parts != null)
+                key = PersistentVersionMethodCache.toHex(PersistentVersionMethodCache.hash(String.join(",", parts).getBytes()));
+        }
+
+        keys.put(iClass, key);
+        return key;
+    }
+
+    /**
+     * Checks whether two labels are equivalent
+     */
+    public static boolean sameLabel(SDKInfo label1, SDKInfo label2) {
+        if (label1 == null || label2 == null)
+            return label1 == label2;
+
+        if (label1.isDirect() != label2.isDirect() || label1.getCheckerMap().size() != label2.getCheckerMap().size())
+            return false;
+
+        for (Map.Entry<Object, VersionChecker> entry : label1.getCheckerMap().entrySet()) {
+            if (!label2.getCheckerMap().containsKey(entry.getKey()))
+                return false;
+
+            VersionChecker checker1 = entry.getValue();
+            VersionChecker checker2 = label2.getCheckerMap().get(entry.getKey());
+            if (checker1 == null || checker2 == null) {
+                if (checker1 != checker2)
+                    return false;
+            } else if (checker1.isNull() != checker2.isNull() ||
+                    (!checker1.isNull() && (checker1.getCheckedVersion() != checker2.getCheckedVersion() ||
+                            checker1.getComparator() != checker2.getComparator()))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * State of a method: all the fields are null until they are set
+     */
+    public static class MethodState {
+        private boolean labeled;
+        private SDKInfo label;
+        private List<String> labelDependencies;
+        private List<String> referencedClasses;
+        private List<ReportRow> rows;
+
+        /**
+         * Returns true if the label of the method is known (possibly null, i.e., the method has no label)
+         */
+        public boolean isLabeled() {
+            return labeled;
+        }
+
+        public SDKInfo getLabel() {
+            return label;
+        }
+
+        /**
+         * Sets the label of the method. Labels that can not be stored are not set.
+         */
+        public void setLabel(SDKInfo label) {
+            this.labeled = label == null || PersistentVersionMethodCache.isStorable(label);
+            this.label = this.labeled ? label : null;
+        }
+
+        /**
+         * Returns the signatures of the methods called whose result is used, i.e., whose labels are used when
+         * labeling and analyzing this method
+         */
+        public List<String> getLabelDependencies() {
+            return labelDependencies;
+        }
+
+        public void setLabelDependencies(List<String> labelDependencies) {
+            this.labelDependencies = labelDependencies;
+        }
+
+        /**
+         * Returns the names of the classes declaring the methods called
+         */
+        public List<String> getReferencedClasses() {
+            return referencedClasses;
+        }
+
+        /**
+         * Returns the report rows of the method, or null if the method was not analyzed
+         */
+        public List<ReportRow> getRows() {
+            return rows;
+        }
+
+        /**
+         * Sets the dependencies and the report rows of an analyzed method
+         */
+        public void setAnalysisResult(MethodContext methodContext, List<ReportRow> rows) {
+            this.setAnalysisResult(computeLabelDependencies(methodContext), computeReferencedClasses(methodContext), rows);
+        }
+
+        void setAnalysisResult(List<String> labelDependencies, List<String> referencedClasses, List<ReportRow> rows) {
+            this.labelDependencies  = labelDependencies;
+            this.referencedClasses  = referencedClasses;
+            this.rows               = new ArrayList<>(rows);
+        }
+
+        /**
+         * Copies the dependencies and the report rows of the method as analyzed in a previous version
+         */
+        public void setAnalysisResult(MethodState previous) {
+            this.labelDependencies  = previous.labelDependencies;
+            this.referencedClasses  = previous.referencedClasses;
+            this.rows               = previous.rows;
+        }
+
+        private void write(DataOutputStream output) throws IOException {
+            output.writeBoolean(this.labeled);
+            if (this.labeled) {
+                output.writeBoolean(this.label != null);
+                if (this.label != null)
+                    PersistentVersionMethodCache.writeSDKInfo(output, this.label);
+            }
+
+            writeStrings(output, this.labelDependencies);
+            writeStrings(output, this.referencedClasses);
+
+            output.writeInt(this.rows == null ? -1 : this.rows.size());
+            if (this.rows != null) {
+                for (ReportRow row : this.rows) {
+                    row.write(output);
+                }
+            }
+        }
+
+        private static MethodState read(DataInputStream input) throws IOException {
+            MethodState state = new MethodState();
+            state.labeled = input.readBoolean();
+            if (state.labeled && input.readBoolean())
+                state.label = PersistentVersionMethodCache.readSDKInfo(input);
+
+            state.labelDependencies = readStrings(input);
+            state.referencedClasses = readStrings(input);
+
+            int rows = input.readInt();
+            if (rows >= 0) {
+                state.rows = new ArrayList<>(rows);
+                for (int i = 0; i < rows; i++) {
+                    state.rows.add(ReportRow.read(input));
+                }
+            }
+
+            return state;
+        }
+
+        private static void writeStrings(DataOutputStream output, List<String> strings) throws IOException {
+            output.writeInt(strings == null ? -1 : strings.size());
+            if (strings != null) {
+                for (String string : strings) {
+                    output.writeUTF(string);
+                }
+            }
+        }
+
+        private static List<String> readStrings(DataInputStream input) throws IOException {
+            int size = input.readInt();
+            if (size < 0)
+                return null;
+
+            List<String> result = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                result.add(input.readUTF());
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * Returns the signatures of the methods called by the method, i.e., the methods whose labels are used
+     */
+    public static List<String> computeLabelDependencies(MethodContext methodContext) {
+        return new ArrayList<>(methodContext.getBytecodeSummary().getCalledSignatures());
+    }
+
+    private static List<String> computeReferencedClasses(MethodContext methodContext) {
+        return new ArrayList<>(methodContext.getBytecodeSummary().getCalledClasses());
+    }
+}
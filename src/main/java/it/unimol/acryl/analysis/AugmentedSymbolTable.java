@@ -1,31 +1,36 @@
 package it.unimol.acryl.analysis;
 
-import com.ibm.wala.shrikeBT.IUnaryOpInstruction;
 import com.ibm.wala.ssa.*;
 import com.ibm.wala.types.MethodReference;
 import it.unimol.acryl.static_analysis.contexts.MethodContext;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
+ * Values of the variables of a method and version checks performed by its branching instructions. Both tables are
+ * arrays, indexed by value number and by instruction index respectively, and they are reused when the table is updated.
  * @author Simone Scalabrino.
  */
 public class AugmentedSymbolTable {
+    private static final Object[] NO_VARIABLES = new Object[0];
+    private static final SDKInfo[] NO_INSTRUCTIONS = new SDKInfo[0];
+
     private final MethodContext methodContext;
-    private Map<Integer, Object> variableTable;
-    private Map<Integer, SDKInfo> checkingInstructionsTable;
+    private Object[] variableTable;
+    private SDKInfo[] checkingInstructionsTable;
 
     public AugmentedSymbolTable(MethodContext methodContext) {
-        this.methodContext = methodContext;
+        this.methodContext              = methodContext;
+        this.variableTable              = NO_VARIABLES;
+        this.checkingInstructionsTable  = NO_INSTRUCTIONS;
     }
 
     public Object get(int variable) {
-        return variableTable.getOrDefault(variable, null);
+        return variable >= 0 && variable < variableTable.length ? variableTable[variable] : null;
     }
 
     public SDKInfo getSDKInfo(int variable) {
-        Object versionChecker = variableTable.getOrDefault(variable, null);
+        Object versionChecker = this.get(variable);
 
         if (versionChecker instanceof SDKInfo) {
             return ((SDKInfo) versionChecker);
@@ -34,8 +39,19 @@ public class AugmentedSymbolTable {
         return null;
     }
 
-    public Map<Integer, SDKInfo> getCheckingInstructionsTable() {
-        return checkingInstructionsTable;
+    /**
+     * Returns the version check performed by the conditional branch instruction with the given index, or null if the
+     * instruction does not check the version
+     */
+    public SDKInfo getCheckingInstruction(int instructionIndex) {
+        return instructionIndex >= 0 && instructionIndex < checkingInstructionsTable.length ? checkingInstructionsTable[instructionIndex] : null;
+    }
+
+    private void put(int variable, Object value) {
+        if (variable >= variableTable.length)
+            variableTable = Arrays.copyOf(variableTable, Math.max(variable + 1, variableTable.length * 2));
+
+        variableTable[variable] = value;
     }
 
     public void update() {
@@ -43,23 +59,34 @@ public class AugmentedSymbolTable {
     }
 
     public void update(IVersionMethodCache methodLabels) {
-        variableTable               = new HashMap<>();
-        checkingInstructionsTable   = new HashMap<>();
-
         // Imports the static symbol table
         IR ir = methodContext.getIntermediateRepresentation();
 
-        if (ir == null)
+        if (ir == null) {
+            variableTable               = NO_VARIABLES;
+            checkingInstructionsTable   = NO_INSTRUCTIONS;
             return;
+        }
 
         SymbolTable symbolTable = ir.getSymbolTable();
 
         int max = symbolTable.getMaxValueNumber();
+        if (variableTable.length > max)
+            Arrays.fill(variableTable, null);
+        else
+            variableTable = new Object[max + 1];
+
+        if (checkingInstructionsTable.length >= ir.getInstructions().length)
+            Arrays.fill(checkingInstructionsTable, null);
+        else
+            checkingInstructionsTable = new SDKInfo[ir.getInstructions().length];
+
         for (int i = 1; i <= max; i++) {
-            if (symbolTable.getValue(i) instanceof ConstantValue) {
-                variableTable.put(i, ((ConstantValue) symbolTable.getValue(i)).getValue());
-            } else if (symbolTable.getValue(i) instanceof PhiValue) {
-                variableTable.put(i, symbolTable.getValue(i));
+            Value value = symbolTable.getValue(i);
+            if (value instanceof ConstantValue) {
+                variableTable[i] = ((ConstantValue) value).getValue();
+            } else if (value instanceof PhiValue) {
+                variableTable[i] = value;
             }
         }
 
@@ -81,8 +108,6 @@ public class AugmentedSymbolTable {
                 updateForUnary((SSAUnaryOpInstruction) ssaInstruction);
             } else if (ssaInstruction instanceof SSAAbstractInvokeInstruction) {
                 updateForInvoke((SSAAbstractInvokeInstruction) ssaInstruction, methodLabels);
-            } else {
-                updateForGenericInstruction(ssaInstruction);
             }
         }
     }
@@ -98,38 +123,29 @@ public class AugmentedSymbolTable {
 
         if (sdkInfo != null) {
             if (sdkInfo.isDirect()) {
-                SDKInfo info = new SDKInfo();
-                info.setDirect(true);
-                variableTable.put(invokeInstruction.getDef(), info);
+                put(invokeInstruction.getDef(), SDKInfo.directInfo());
             } else {
-                variableTable.put(invokeInstruction.getDef(), sdkInfo);
+                put(invokeInstruction.getDef(), sdkInfo);
             }
         }
     }
 
     private void updateForUnary(SSAUnaryOpInstruction unaryOpInstruction) {
-        Object o1 = variableTable.getOrDefault(unaryOpInstruction.getUse(0), null);
+        Object o1 = get(unaryOpInstruction.getUse(0));
 
         if (o1 instanceof SDKInfo) {
             SDKInfo info = ((SDKInfo) o1);
 
             assert !info.isDirect();
 
-            SDKInfo newInfo = info.copy();
-
-            for (VersionChecker dependentChecker : newInfo.getCheckerMap().values()) {
-                if (unaryOpInstruction.getOpcode().equals(IUnaryOpInstruction.Operator.NEG)) {
-                    dependentChecker.invertComparator(true);
-                }
-            }
-
-            variableTable.put(unaryOpInstruction.getDef(), info);
+            // Checkers are not inverted by the negation: the defined variable gets the same checkers as the used one
+            put(unaryOpInstruction.getDef(), info);
         }
     }
 
     private void updateForBinary(SSABinaryOpInstruction binaryOpInstruction) {
-        Object o1 = variableTable.getOrDefault(binaryOpInstruction.getUse(0), null);
-        Object o2 = variableTable.getOrDefault(binaryOpInstruction.getUse(1), null);
+        Object o1 = get(binaryOpInstruction.getUse(0));
+        Object o2 = get(binaryOpInstruction.getUse(1));
 
         SDKInfo checker = null;
         if (o1 instanceof SDKInfo)
@@ -150,12 +166,12 @@ public class AugmentedSymbolTable {
         }
 
         if (checker != null)
-            variableTable.put(binaryOpInstruction.getDef(), checker);
+            put(binaryOpInstruction.getDef(), checker);
     }
 
     private void updateForPhi(SSAPhiInstruction phiInstruction) {
         // TODO implement properly
-        this.variableTable.put(phiInstruction.getDef(), null);
+        put(phiInstruction.getDef(), null);
     }
 
     @SuppressWarnings("SpellCheckingInspection")
@@ -163,9 +179,7 @@ public class AugmentedSymbolTable {
         if (fieldAccessInstruction.getDeclaredField().getName().toString().equals("SDK_INT") &&
                 fieldAccessInstruction.getDeclaredField().getDeclaringClass().getName().toString().equals("Landroid/os/Build$VERSION")) {
             // Adds a reference #variable -> versionChecker
-            SDKInfo info = new SDKInfo();
-            info.setDirect(true);
-            variableTable.put(fieldAccessInstruction.getDef(), info);
+            put(fieldAccessInstruction.getDef(), SDKInfo.directInfo());
         }
     }
 
@@ -185,42 +199,25 @@ public class AugmentedSymbolTable {
         }
 
         if (checker != null) {
-            checker = checker.copy();
-
-            for (VersionChecker versionChecker : checker.getCheckerMap().values()) {
+            final boolean versionInSecondVariable = actualVersionInSecondVariable;
+            checker = checker.withCheckers(versionChecker -> {
                 switch (comparisonInstruction.getOperator()) {
                     case CMP:
-                        versionChecker.setComparator(VersionChecker.Comparator.EQ);
+                        versionChecker = versionChecker.withComparator(VersionChecker.Comparator.EQ);
                         break;
 
                     case CMPL:
-                        versionChecker.setComparator(VersionChecker.Comparator.LT);
+                        versionChecker = versionChecker.withComparator(VersionChecker.Comparator.LT);
                         break;
 
                     case CMPG:
-                        versionChecker.setComparator(VersionChecker.Comparator.GT);
+                        versionChecker = versionChecker.withComparator(VersionChecker.Comparator.GT);
                         break;
                 }
-                assignVersion(use1, use2, versionChecker, actualVersionInSecondVariable);
-            }
-
-            variableTable.put(defined, checker);
-        }
-    }
-
-    private void updateForGenericInstruction(SSAInstruction ssaInstruction) {
-        if (ssaInstruction.getNumberOfDefs() == 1) {
-            for (int i = 0; i < ssaInstruction.getNumberOfUses(); i++) {
-                int usedVariable = ssaInstruction.getUse(i);
+                return assignVersion(use1, use2, versionChecker, versionInSecondVariable);
+            });
 
-                if (variableTable.containsKey(usedVariable)) {
-                    Object use = variableTable.get(ssaInstruction.getUse(i));
-
-                    if (use instanceof VersionChecker) {
-                        variableTable.put(usedVariable, use);
-                    }
-                }
-            }
+            put(defined, checker);
         }
     }
 
@@ -242,31 +239,30 @@ public class AugmentedSymbolTable {
             instructionSdkInfo.setDirect(false);
 
             if (sdkInfo.isDirect()) {
-                VersionChecker versionChecker = new VersionChecker();
+                VersionChecker.Comparator comparator = null;
                 switch (conditionalBranchInstruction.getOperator().toString().toUpperCase()) {
                     case "EQ":
-                        versionChecker.setComparator(VersionChecker.Comparator.EQ);
+                        comparator = VersionChecker.Comparator.EQ;
                         break;
                     case "NE":
-                        versionChecker.setComparator(VersionChecker.Comparator.NE);
+                        comparator = VersionChecker.Comparator.NE;
                         break;
                     case "LT":
-                        versionChecker.setComparator(VersionChecker.Comparator.LT);
+                        comparator = VersionChecker.Comparator.LT;
                         break;
                     case "GE":
-                        versionChecker.setComparator(VersionChecker.Comparator.GE);
+                        comparator = VersionChecker.Comparator.GE;
                         break;
                     case "GT":
-                        versionChecker.setComparator(VersionChecker.Comparator.GT);
+                        comparator = VersionChecker.Comparator.GT;
                         break;
                     case "LE":
-                        versionChecker.setComparator(VersionChecker.Comparator.LE);
+                        comparator = VersionChecker.Comparator.LE;
                         break;
                 }
-                assignVersion(use1, use2, versionChecker, sdkVersionInSecondVariable);
+                VersionChecker versionChecker = assignVersion(use1, use2, VersionChecker.of(comparator, 0), sdkVersionInSecondVariable);
 
-                VersionChecker invertedVersionChecker = versionChecker.copy();
-                invertedVersionChecker.invertComparator(true);
+                VersionChecker invertedVersionChecker = versionChecker.inverted(true);
 
                 instructionSdkInfo.addChecker(true, versionChecker);
                 instructionSdkInfo.addChecker(false, invertedVersionChecker);
@@ -274,7 +270,7 @@ public class AugmentedSymbolTable {
             } else {
                 int otherVariable = sdkVersionInSecondVariable ? use1 : use2;
 
-                Object otherVariableValue = variableTable.get(otherVariable);
+                Object otherVariableValue = get(otherVariable);
 
                 assert (otherVariableValue instanceof Integer);
                 assert (conditionalBranchInstruction.getOperator().toString().toUpperCase().equals("EQ") ||
@@ -286,10 +282,7 @@ public class AugmentedSymbolTable {
                 if (versionChecker == null)
                     return;
 
-                versionChecker = versionChecker.copy();
-
-                VersionChecker invertedVersionChecker = versionChecker.copy();
-                invertedVersionChecker.invertComparator(true);
+                VersionChecker invertedVersionChecker = versionChecker.inverted(true);
 
                 if (!invert) {
                     instructionSdkInfo.addChecker(true, versionChecker);
@@ -300,30 +293,27 @@ public class AugmentedSymbolTable {
                 }
             }
 
-            checkingInstructionsTable.put(conditionalBranchInstruction.iindex, instructionSdkInfo);
+            checkingInstructionsTable[conditionalBranchInstruction.iindex] = instructionSdkInfo;
         }
     }
 
-    private void assignVersion(int use1, int use2, VersionChecker checker, boolean versionInSecondVariable) {
-        Integer checkedVersion = null;
-
+    private VersionChecker assignVersion(int use1, int use2, VersionChecker checker, boolean versionInSecondVariable) {
         int actualUse;
         if (versionInSecondVariable) {
-            checker.invertComparator(false);
+            checker = checker.inverted(false);
 
             actualUse = use1;
         } else {
             actualUse = use2;
         }
 
-        Object data = variableTable.getOrDefault(actualUse, null);
+        Object data = get(actualUse);
         if (data instanceof Integer)
-            checkedVersion = ((Integer) data);
+            return checker.withCheckedVersion((Integer) data);
         else if (data instanceof Float)
-            checkedVersion = Math.round((Float) data);
+            return checker.withCheckedVersion(Math.round((Float) data));
 
-        if (checkedVersion != null)
-            checker.setCheckedVersion(checkedVersion);
+        return checker;
     }
 
     @Override
@@ -333,13 +323,15 @@ public class AugmentedSymbolTable {
         builder.append("_________________________\n");
 
         builder.append("Variables:\n");
-        for (Map.Entry<Integer, Object> entry : this.variableTable.entrySet()) {
-            builder.append("\t").append(String.valueOf(entry.getKey())).append(" -> ").append(String.valueOf(entry.getValue())).append("\n");
+        for (int i = 0; i < this.variableTable.length; i++) {
+            if (this.variableTable[i] != null)
+                builder.append("\t").append(i).append(" -> ").append(String.valueOf(this.variableTable[i])).append("\n");
         }
 
         builder.append("\n").append("Instructions:\n");
-        for (Map.Entry<Integer, SDKInfo> entry : this.checkingInstructionsTable.entrySet()) {
-            builder.append("\t").append(String.valueOf(entry.getKey())).append(" -> ").append(String.valueOf(entry.getValue())).append("\n");
+        for (int i = 0; i < this.checkingInstructionsTable.length; i++) {
+            if (this.checkingInstructionsTable[i] != null)
+                builder.append("\t").append(i).append(" -> ").append(String.valueOf(this.checkingInstructionsTable[i])).append("\n");
         }
 
         builder.append("_________________________");
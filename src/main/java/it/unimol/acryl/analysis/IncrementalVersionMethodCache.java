@@ -0,0 +1,109 @@
+package it.unimol.acryl.analysis;
+
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IMethod;
+import it.unimol.acryl.static_analysis.contexts.ClassContext;
+import it.unimol.acryl.static_analysis.contexts.JarContext;
+import it.unimol.acryl.static_analysis.contexts.MethodContext;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Version method cache that reuses the labels computed when analyzing the previous version of the app. The methods
+ * of the changed classes are labeled again, together with all the methods that (transitively) use their result, since
+ * their labels may change as well; the labels of all the other methods are taken from the previous state.
+ */
+public class IncrementalVersionMethodCache extends VersionMethodCache {
+    private final AnalysisState previousState;
+    private final Set<String> changedClasses;
+    private final Map<String, List<String>> labelDependencies;
+    private final Set<String> changedLabels;
+
+    public IncrementalVersionMethodCache(JarContext context, int threads, AnalysisState previousState, Set<String> changedClasses) {
+        super(context, threads);
+        this.previousState      = previousState;
+        this.changedClasses     = changedClasses;
+        this.labelDependencies  = new HashMap<>();
+        this.changedLabels      = new HashSet<>();
+    }
+
+    @Override
+    public void build() throws IOException {
+        List<MethodContext> methods = new ArrayList<>();
+        Map<String, List<String>> callers = new HashMap<>();
+        Set<String> toLabel = new HashSet<>();
+
+        for (IClass iClass : this.context.getClassesInJar(true)) {
+            ClassContext classContext = this.context.resolveClassContext(iClass);
+            boolean classChanged = this.changedClasses.contains(iClass.getName().toString());
+
+            for (IMethod iMethod : classContext.getNonAbstractMethods()) {
+                MethodContext methodContext = classContext.resolveMethodContext(iMethod);
+                String signature = iMethod.getSignature();
+                methods.add(methodContext);
+
+                AnalysisState.MethodState previous = this.previousState.getMethod(signature);
+                List<String> dependencies;
+                if (!classChanged && previous != null && previous.isLabeled() && previous.getLabelDependencies() != null) {
+                    this.saveEntry(signature, previous.getLabel());
+                    dependencies = previous.getLabelDependencies();
+                } else {
+                    toLabel.add(signature);
+                    dependencies = AnalysisState.computeLabelDependencies(methodContext);
+                }
+
+                this.labelDependencies.put(signature, dependencies);
+                for (String dependency : dependencies) {
+                    callers.computeIfAbsent(dependency, key -> new ArrayList<>()).add(signature);
+                }
+            }
+        }
+
+        Deque<String> worklist = new ArrayDeque<>(toLabel);
+        while (!worklist.isEmpty()) {
+            for (String caller : callers.getOrDefault(worklist.pop(), Collections.emptyList())) {
+                if (toLabel.add(caller))
+                    worklist.push(caller);
+            }
+        }
+
+        // Methods are labeled in the same order used for a full labeling, so that recursive components get the same labels
+        List<MethodContext> methodsToLabel = new ArrayList<>();
+        for (MethodContext method : methods) {
+            String signature = method.getIMethod().getSignature();
+            if (toLabel.contains(signature)) {
+                this.saveEntry(signature, null);
+                methodsToLabel.add(method);
+            }
+        }
+
+        Logger.getAnonymousLogger().info("Reusing labels of " + (methods.size() - methodsToLabel.size()) + " methods, labeling " + methodsToLabel.size() + " methods");
+        this.label(methodsToLabel);
+
+        for (MethodContext method : methodsToLabel) {
+            String signature = method.getIMethod().getSignature();
+            AnalysisState.MethodState previous = this.previousState.getMethod(signature);
+            SDKInfo previousLabel = previous != null ? previous.getLabel() : null;
+
+            if ((previous != null && !previous.isLabeled()) || !AnalysisState.sameLabel(previousLabel, this.getVersionNumbers(signature)))
+                this.changedLabels.add(signature);
+        }
+    }
+
+    /**
+     * Returns the signatures of the methods whose label changed with respect to the previous version
+     */
+    public Set<String> getChangedLabels() {
+        return changedLabels;
+    }
+
+    /**
+     * Returns the signatures of the methods called by the given method whose result is used, or null if the method
+     * was not labeled
+     */
+    public List<String> getLabelDependencies(String signature) {
+        return labelDependencies.get(signature);
+    }
+}
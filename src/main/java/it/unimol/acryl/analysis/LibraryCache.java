@@ -0,0 +1,204 @@
+package it.unimol.acryl.analysis;
+
+import com.ibm.wala.classLoader.IClass;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Persistent cache of the analysis results of library packages, shared by all the analyzed apps. A package is
+ * identified by a fingerprint computed from the keys of its classes (see {@link AnalysisState#computeClassKeys}), so
+ * the same version of a library gets the same fingerprint in every app embedding it. For each fingerprint and
+ * configuration, the cache stores an {@link AnalysisState} with the results of the methods of the package and with
+ * what they depend on outside the package (keys of the classes called and labels of the methods whose result is used):
+ * the results are reused only if such dependencies are the same in the app under analysis. Results are stored only
+ * for packages embedded by at least two apps, so that the cache is not filled with the packages of single apps (e.g.,
+ * obfuscated ones).
+ */
+public class LibraryCache {
+    private final File directory;
+
+    public LibraryCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the package of a class (e.g., "Lcom/squareup/okhttp3/" for "Lcom/squareup/okhttp3/OkHttpClient")
+     */
+    public static String getPackage(String className) {
+        return className.substring(0, className.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Groups the classes by package, keeping their order
+     */
+    public static Map<String, List<IClass>> groupByPackage(Collection<IClass> classes) {
+        Map<String, List<IClass>> result = new LinkedHashMap<>();
+        for (IClass iClass : classes) {
+            result.computeIfAbsent(getPackage(iClass.getName().toString()), key -> new ArrayList<>()).add(iClass);
+        }
+
+        return result;
+    }
+
+    /**
+     * Computes the fingerprint of a package
+     * @param packageName name of the package
+     * @param classes classes of the package
+     * @param classKeys keys of the classes of the app
+     * @return the fingerprint, or null if the key of some class is not available
+     */
+    public static String fingerprint(String packageName, List<IClass> classes, Map<String, String> classKeys) {
+        List<String> parts = new ArrayList<>();
+        for (IClass iClass : classes) {
+            String className = iClass.getName().toString();
+            String key = classKeys.get(className);
+            if (key == null)
+                return null;
+
+            parts.add(className + "=" + key);
+        }
+
+        Collections.sort(parts);
+        parts.add(0, packageName);
+        return PersistentVersionMethodCache.toHex(PersistentVersionMethodCache.hash(String.join(",", parts).getBytes()));
+    }
+
+    /**
+     * Loads the results stored for the package
+     * @return the results, or null if the package was never analyzed with the given configuration
+     */
+    public AnalysisState load(String fingerprint, String configuration) {
+        File file = this.getFile(fingerprint, configuration);
+        if (!file.exists())
+            return null;
+
+        AnalysisState entry = AnalysisState.load(file, configuration);
+        return entry.isEmpty() ? null : entry;
+    }
+
+    /**
+     * Stores the results of the package. Results stored in the meantime by other analyses are overwritten.
+     */
+    public void store(String fingerprint, String configuration, AnalysisState entry) throws IOException {
+        File file = this.getFile(fingerprint, configuration);
+        File folder = file.getParentFile();
+        if (!folder.exists() && !folder.mkdirs() && !folder.exists())
+            throw new IOException("Unable to create the library cache folder " + folder.getPath());
+
+        entry.store(file);
+    }
+
+    /**
+     * Builds the entry to store for a package
+     * @param packageClasses names of the classes of the package
+     * @param methods results of the methods of the package, by signature
+     * @param classKeys keys of the classes of the app
+     * @param labels labels of the methods of the app
+     * @param configuration configuration of the analysis
+     * @return the entry, or null if some method was not analyzed or if some dependency can not be stored
+     */
+    public static AnalysisState buildEntry(Set<String> packageClasses, Map<String, AnalysisState.MethodState> methods,
+                                           Map<String, String> classKeys, IVersionMethodCache labels, String configuration) {
+        AnalysisState entry = new AnalysisState(configuration);
+        Map<String, String> entryKeys = new HashMap<>();
+        for (String className : packageClasses) {
+            entryKeys.put(className, classKeys.get(className));
+        }
+
+        for (Map.Entry<String, AnalysisState.MethodState> method : methods.entrySet()) {
+            AnalysisState.MethodState methodState = method.getValue();
+            if (methodState == null || methodState.getRows() == null)
+                return null;
+
+            entry.putMethod(method.getKey(), methodState);
+            // Classes that are not in the jar have no key, while classes in the jar without a key can not be checked
+            for (String referencedClass : methodState.getReferencedClasses()) {
+                if (classKeys.containsKey(referencedClass) && classKeys.get(referencedClass) == null)
+                    return null;
+
+                entryKeys.put(referencedClass, classKeys.get(referencedClass));
+            }
+        }
+
+        // Labels are propagated from the callees, so also the labels of the methods of the package may change
+        for (AnalysisState.MethodState methodState : methods.values()) {
+            for (String dependency : methodState.getLabelDependencies()) {
+                AnalysisState.MethodState dependencyState = entry.getMethod(dependency);
+                if (dependencyState == null) {
+                    dependencyState = new AnalysisState.MethodState();
+                    entry.putMethod(dependency, dependencyState);
+                }
+
+                dependencyState.setLabel(labels.getVersionNumbers(dependency));
+                if (!dependencyState.isLabeled())
+                    return null;
+            }
+        }
+
+        entry.setClassKeys(entryKeys);
+        return entry;
+    }
+
+    /**
+     * Checks whether the results stored for a package can be used for the app under analysis, i.e., if the classes
+     * called by the package and the labels of the methods it uses are the same
+     * @param entry results stored for the package
+     * @param classKeys keys of the classes of the app
+     * @param labels labels of the methods of the app
+     */
+    public static boolean isValid(AnalysisState entry, Map<String, String> classKeys, IVersionMethodCache labels) {
+        Set<String> checkedClasses = new HashSet<>();
+        Set<String> checkedLabels = new HashSet<>();
+        for (AnalysisState.MethodState methodState : entry.getMethods().values()) {
+            if (methodState.getRows() == null)
+                continue;
+
+            for (String referencedClass : methodState.getReferencedClasses()) {
+                if (checkedClasses.add(referencedClass) && (!Objects.equals(entry.getClassKey(referencedClass), classKeys.get(referencedClass)) ||
+                        (classKeys.containsKey(referencedClass) && classKeys.get(referencedClass) == null)))
+                    return false;
+            }
+
+            for (String dependency : methodState.getLabelDependencies()) {
+                if (!checkedLabels.add(dependency))
+                    continue;
+
+                AnalysisState.MethodState dependencyState = entry.getMethod(dependency);
+                if (dependencyState == null || !dependencyState.isLabeled() ||
+                        !AnalysisState.sameLabel(dependencyState.getLabel(), labels.getVersionNumbers(dependency)))
+                    return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Records that an app embeds the package and checks whether another app embedding it was recorded before with the
+     * same configuration, i.e., whether the results of the package are worth storing
+     * @param appName name of the app under analysis
+     * @return true if the package was recorded for another app
+     */
+    public boolean markEmbeddedBy(String fingerprint, String configuration, String appName) throws IOException {
+        File file = this.getFile(fingerprint, configuration, ".seen");
+        if (file.exists())
+            return !FileUtils.readFileToString(file, StandardCharsets.UTF_8).equals(appName);
+
+        FileUtils.writeStringToFile(file, appName, StandardCharsets.UTF_8);
+        return false;
+    }
+
+    private File getFile(String fingerprint, String configuration) {
+        return this.getFile(fingerprint, configuration, ".bin");
+    }
+
+    private File getFile(String fingerprint, String configuration, String extension) {
+        String configurationHash = PersistentVersionMethodCache.toHex(PersistentVersionMethodCache.hash(configuration.getBytes()));
+
+        return new File(new File(this.directory, configurationHash), fingerprint + extension);
+    }
+}
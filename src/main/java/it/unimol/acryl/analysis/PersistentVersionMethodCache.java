@@ -0,0 +1,392 @@
+package it.unimol.acryl.analysis;
+
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.classLoader.ShrikeClass;
+import com.ibm.wala.shrikeCT.ClassConstants;
+import com.ibm.wala.shrikeCT.ConstantPoolParser;
+import com.ibm.wala.shrikeCT.InvalidClassFileException;
+import it.unimol.acryl.static_analysis.contexts.ClassContext;
+import it.unimol.acryl.static_analysis.contexts.JarContext;
+import it.unimol.acryl.static_analysis.contexts.MethodContext;
+import it.unimol.acryl.static_analysis.utils.GraphUtils;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Version method cache that persists the labels in a binary file, so that classes already labeled in previous runs
+ * (e.g., libraries shared by several apps) are not labeled again.
+ *
+ * Labels are stored per class and keyed by a hash of the bytes of the class and of the classes of the jar it refers
+ * to (transitively), since the label of a method also depends on the labels of the methods it calls. The whole file
+ * is discarded when the format or the labeling algorithm ({@link VersionMethodLabeler#VERSION}) change.
+ */
+public class PersistentVersionMethodCache extends VersionMethodCache {
+    private static final int MAGIC = 0x4143524C;
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte KEY_NULL      = 0;
+    private static final byte KEY_INTEGER   = 1;
+    private static final byte KEY_LONG      = 2;
+    private static final byte KEY_FLOAT     = 3;
+    private static final byte KEY_DOUBLE    = 4;
+    private static final byte KEY_BOOLEAN   = 5;
+    private static final byte KEY_STRING    = 6;
+
+    private static final byte CHECKER_NONE      = 0;
+    private static final byte CHECKER_NULL      = 1;
+    private static final byte CHECKER_VERSION   = 2;
+
+    private final File file;
+    private final Map<String, Map<String, SDKInfo>> storedLabels;
+
+    public PersistentVersionMethodCache(JarContext context, int threads, File file) {
+        super(context, threads);
+        this.file = file;
+        this.storedLabels = new HashMap<>();
+    }
+
+    @Override
+    public void build() throws IOException {
+        this.load();
+
+        Map<IClass, String> classKeys = computeClassKeys(this.context.getClassesInJar(true));
+
+        List<MethodContext> methodsToLabel = new ArrayList<>();
+        List<IClass> classesToLabel = new ArrayList<>();
+        int reused = 0;
+        for (IClass iClass : this.context.getClassesInJar(true)) {
+            ClassContext classContext = this.context.resolveClassContext(iClass);
+            Map<String, SDKInfo> classLabels = this.storedLabels.get(classKeys.get(iClass));
+
+            if (classLabels != null) {
+                for (IMethod iMethod : classContext.getNonAbstractMethods()) {
+                    this.saveEntry(iMethod.getSignature(), classLabels.get(iMethod.getSelector().toString()));
+                }
+                reused++;
+            } else {
+                for (IMethod iMethod : classContext.getNonAbstractMethods()) {
+                    methodsToLabel.add(classContext.resolveMethodContext(iMethod));
+                }
+                classesToLabel.add(iClass);
+            }
+        }
+
+        Logger.getAnonymousLogger().info("Reusing stored labels for " + reused + " classes, labeling " + classesToLabel.size() + " classes");
+        this.label(methodsToLabel);
+
+        for (IClass iClass : classesToLabel) {
+            String key = classKeys.get(iClass);
+            if (key == null)
+                continue;
+
+            Map<String, SDKInfo> classLabels = new LinkedHashMap<>();
+            boolean storable = true;
+            for (IMethod iMethod : this.context.resolveClassContext(iClass).getNonAbstractMethods()) {
+                SDKInfo sdkInfo = this.getVersionNumbers(iMethod.getSignature());
+                if (sdkInfo != null) {
+                    storable &= isStorable(sdkInfo);
+                    classLabels.put(iMethod.getSelector().toString(), sdkInfo);
+                }
+            }
+
+            if (storable)
+                this.storedLabels.put(key, classLabels);
+        }
+
+        this.store();
+    }
+
+    /**
+     * Computes, for each class, a key that changes whenever the class or one of the classes of the jar it
+     * (transitively) refers to changes. Classes whose bytes are not available have no key.
+     */
+    private static Map<IClass, String> computeClassKeys(Collection<IClass> classes) {
+        Map<String, IClass> classesByName = new HashMap<>();
+        for (IClass iClass : classes) {
+            classesByName.put(iClass.getName().toString(), iClass);
+        }
+
+        Map<IClass, byte[]> ownHashes = new HashMap<>();
+        Map<IClass, List<IClass>> references = new HashMap<>();
+        for (IClass iClass : classes) {
+            if (!(iClass instanceof ShrikeClass))
+                continue;
+
+            try {
+                byte[] bytes = ((ShrikeClass) iClass).getReader().getBytes();
+                ownHashes.put(iClass, hash(bytes));
+                references.put(iClass, getReferencedClasses(bytes, classesByName));
+            } catch (InvalidClassFileException e) {
+                Logger.getAnonymousLogger().warning("Unable to read class " + iClass.getName() + ": labels will not be stored");
+            }
+        }
+
+        Map<IClass, String> result = new HashMap<>();
+        Map<IClass, String> componentKeys = new HashMap<>();
+        // Components are returned with the referenced ones first, so their keys are already available
+        for (List<IClass> component : GraphUtils.getStronglyConnectedComponents(ownHashes.keySet(),
+                iClass -> references.getOrDefault(iClass, Collections.emptyList()))) {
+            Set<IClass> members = new HashSet<>(component);
+            List<String> parts = new ArrayList<>();
+            boolean complete = true;
+            for (IClass member : component) {
+                if (!ownHashes.containsKey(member)) {
+                    complete = false;
+                    break;
+                }
+
+                parts.add(toHex(ownHashes.get(member)));
+                for (IClass referenced : references.get(member)) {
+                    if (members.contains(referenced))
+                        continue;
+
+                    String referencedKey = componentKeys.get(referenced);
+                    if (referencedKey == null)
+                        complete = false;
+                    else
+                        parts.add(referencedKey);
+                }
+            }
+
+            if (!complete)
+                continue;
+
+            Collections.sort(parts);
+            String componentKey = toHex(hash(String.join(",", parts).getBytes()));
+            for (IClass member : component) {
+                componentKeys.put(member, componentKey);
+                result.put(member, toHex(ownHashes.get(member)) + componentKey);
+            }
+        }
+
+        return result;
+    }
+
+    private static List<IClass> getReferencedClasses(byte[] bytes, Map<String, IClass> classesByName) throws InvalidClassFileException {
+        ConstantPoolParser constantPool = new com.ibm.wala.shrikeCT.ClassReader(bytes).getCP();
+
+        Set<IClass> result = new LinkedHashSet<>();
+        for (int i = 1; i < constantPool.getItemCount(); i++) {
+            if (constantPool.getItemType(i) != ClassConstants.CONSTANT_Class)
+                continue;
+
+            String className = constantPool.getCPClass(i);
+            int dimensions = 0;
+            while (className.charAt(dimensions) == '[')
+                dimensions++;
+
+            if (dimensions > 0) {
+                if (className.charAt(dimensions) != 'L')
+                    continue;
+                className = className.substring(dimensions + 1, className.length() - 1);
+            }
+
+            IClass referenced = classesByName.get("L" + className);
+            if (referenced != null)
+                result.add(referenced);
+        }
+
+        return new ArrayList<>(result);
+    }
+
+    private void load() {
+        this.storedLabels.clear();
+        synchronized (PersistentVersionMethodCache.class) {
+            this.read(this.storedLabels);
+        }
+    }
+
+    private void read(Map<String, Map<String, SDKInfo>> target) {
+        if (!this.file.exists())
+            return;
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(this.file)))) {
+            if (input.readInt() != MAGIC)
+                throw new IOException("Not a label cache");
+
+            if (input.readInt() != FORMAT_VERSION || input.readInt() != VersionMethodLabeler.VERSION) {
+                Logger.getAnonymousLogger().info("The label cache " + this.file.getPath() + " is outdated: it will be rebuilt");
+                return;
+            }
+
+            int classes = input.readInt();
+            for (int i = 0; i < classes; i++) {
+                String key = input.readUTF();
+                int methods = input.readInt();
+                Map<String, SDKInfo> classLabels = new LinkedHashMap<>();
+                for (int j = 0; j < methods; j++) {
+                    String selector = input.readUTF();
+                    classLabels.put(selector, readSDKInfo(input));
+                }
+                target.putIfAbsent(key, classLabels);
+            }
+        } catch (IOException e) {
+            Logger.getAnonymousLogger().warning("Unable to read the label cache " + this.file.getPath() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stores the labels. Entries written in the meantime by other analyses (e.g., in batch mode) are kept.
+     */
+    private void store() throws IOException {
+        synchronized (PersistentVersionMethodCache.class) {
+            this.read(this.storedLabels);
+            this.write();
+        }
+    }
+
+    private void write() throws IOException {
+        File temporaryFile = File.createTempFile(this.file.getName(), ".tmp", this.file.getAbsoluteFile().getParentFile());
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(VersionMethodLabeler.VERSION);
+
+            output.writeInt(this.storedLabels.size());
+            for (Map.Entry<String, Map<String, SDKInfo>> classEntry : this.storedLabels.entrySet()) {
+                output.writeUTF(classEntry.getKey());
+                output.writeInt(classEntry.getValue().size());
+                for (Map.Entry<String, SDKInfo> methodEntry : classEntry.getValue().entrySet()) {
+                    output.writeUTF(methodEntry.getKey());
+                    writeSDKInfo(output, methodEntry.getValue());
+                }
+            }
+        }
+
+        Files.move(temporaryFile.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    static boolean isStorable(SDKInfo sdkInfo) {
+        for (Object key : sdkInfo.getCheckerMap().keySet()) {
+            if (!(key == null || key instanceof Integer || key instanceof Long || key instanceof Float ||
+                    key instanceof Double || key instanceof Boolean || key instanceof String))
+                return false;
+        }
+
+        return true;
+    }
+
+    static void writeSDKInfo(DataOutputStream output, SDKInfo sdkInfo) throws IOException {
+        output.writeBoolean(sdkInfo.isDirect());
+        output.writeInt(sdkInfo.getCheckerMap().size());
+        for (Map.Entry<Object, VersionChecker> entry : sdkInfo.getCheckerMap().entrySet()) {
+            writeKey(output, entry.getKey());
+
+            VersionChecker checker = entry.getValue();
+            if (checker == null) {
+                output.writeByte(CHECKER_NONE);
+            } else if (checker.isNull()) {
+                output.writeByte(CHECKER_NULL);
+            } else {
+                output.writeByte(CHECKER_VERSION);
+                output.writeInt(checker.getCheckedVersion());
+                output.writeByte(checker.getComparator() == null ? -1 : checker.getComparator().ordinal());
+            }
+        }
+    }
+
+    static SDKInfo readSDKInfo(DataInputStream input) throws IOException {
+        SDKInfo sdkInfo = new SDKInfo();
+        sdkInfo.setDirect(input.readBoolean());
+
+        int checkers = input.readInt();
+        for (int i = 0; i < checkers; i++) {
+            Object key = readKey(input);
+
+            VersionChecker checker;
+            byte checkerType = input.readByte();
+            switch (checkerType) {
+                case CHECKER_NONE:
+                    checker = null;
+                    break;
+
+                case CHECKER_NULL:
+                    checker = new VersionChecker.NullChecker();
+                    break;
+
+                case CHECKER_VERSION:
+                    int checkedVersion = input.readInt();
+                    byte comparator = input.readByte();
+                    checker = VersionChecker.of(comparator >= 0 ? VersionChecker.Comparator.values()[comparator] : null, checkedVersion);
+                    break;
+
+                default:
+                    throw new IOException("Unknown checker type " + checkerType);
+            }
+
+            sdkInfo.addChecker(key, checker);
+        }
+
+        return sdkInfo;
+    }
+
+    private static void writeKey(DataOutputStream output, Object key) throws IOException {
+        if (key == null) {
+            output.writeByte(KEY_NULL);
+        } else if (key instanceof Integer) {
+            output.writeByte(KEY_INTEGER);
+            output.writeInt((Integer) key);
+        } else if (key instanceof Long) {
+            output.writeByte(KEY_LONG);
+            output.writeLong((Long) key);
+        } else if (key instanceof Float) {
+            output.writeByte(KEY_FLOAT);
+            output.writeFloat((Float) key);
+        } else if (key instanceof Double) {
+            output.writeByte(KEY_DOUBLE);
+            output.writeDouble((Double) key);
+        } else if (key instanceof Boolean) {
+            output.writeByte(KEY_BOOLEAN);
+            output.writeBoolean((Boolean) key);
+        } else {
+            output.writeByte(KEY_STRING);
+            output.writeUTF((String) key);
+        }
+    }
+
+    private static Object readKey(DataInputStream input) throws IOException {
+        byte keyType = input.readByte();
+        switch (keyType) {
+            case KEY_NULL:
+                return null;
+            case KEY_INTEGER:
+                return input.readInt();
+            case KEY_LONG:
+                return input.readLong();
+            case KEY_FLOAT:
+                return input.readFloat();
+            case KEY_DOUBLE:
+                return input.readDouble();
+            case KEY_BOOLEAN:
+                return input.readBoolean();
+            case KEY_STRING:
+                return input.readUTF();
+            default:
+                throw new IOException("Unknown key type " + keyType);
+        }
+    }
+
+    static byte[] hash(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-1 not available");
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder result = new StringBuilder();
+        for (byte b : bytes) {
+            result.append(String.format("%02x", b));
+        }
+
+        return result.toString();
+    }
+}
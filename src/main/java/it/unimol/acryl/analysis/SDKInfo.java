@@ -1,15 +1,20 @@
 package it.unimol.acryl.analysis;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.UnaryOperator;
 
 /**
  * @author Simone Scalabrino.
  */
 public class SDKInfo implements Cloneable {
+    private static final SDKInfo DIRECT = new SDKInfo(true);
+
     private boolean direct;
     private Map<Object, VersionChecker> checkerMap;
     private boolean actuallyNull;
+    private boolean immutable;
 
     public SDKInfo() {
         this.direct = false;
@@ -19,11 +24,26 @@ public class SDKInfo implements Cloneable {
         this.actuallyNull = true;
     }
 
+    private SDKInfo(boolean direct) {
+        this.direct         = direct;
+        this.checkerMap     = Collections.emptyMap();
+        this.actuallyNull   = false;
+        this.immutable      = true;
+    }
+
+    /**
+     * Returns the shared (immutable) info of the values that are the SDK version
+     */
+    public static SDKInfo directInfo() {
+        return DIRECT;
+    }
+
     public boolean isDirect() {
         return direct;
     }
 
     public void setDirect(boolean direct) {
+        this.checkMutable();
         this.direct = direct;
         this.actuallyNull = false;
     }
@@ -38,6 +58,7 @@ public class SDKInfo implements Cloneable {
     }
 
     public void addChecker(Object value, VersionChecker checker) {
+        this.checkMutable();
         this.checkerMap.put(value, checker);
         this.actuallyNull = false;
     }
@@ -81,6 +102,7 @@ public class SDKInfo implements Cloneable {
             SDKInfo copy = ((SDKInfo) this.clone());
 
             copy.checkerMap = new HashMap<>();
+            copy.immutable  = false;
             for (Map.Entry<Object, VersionChecker> entry : this.checkerMap.entrySet()) {
                 copy.checkerMap.put(entry.getKey(), entry.getValue().copy());
             }
@@ -92,6 +114,29 @@ public class SDKInfo implements Cloneable {
         return null;
     }
 
+    /**
+     * Returns a copy of this info in which each checker is replaced with the result of the operator. Unlike
+     * {@link #copy()}, the checkers are not copied, so the operator should return immutable checkers.
+     */
+    public SDKInfo withCheckers(UnaryOperator<VersionChecker> operator) {
+        if (this.checkerMap.isEmpty())
+            return this;
+
+        SDKInfo result = new SDKInfo();
+        result.direct       = this.direct;
+        result.actuallyNull = this.actuallyNull;
+        for (Map.Entry<Object, VersionChecker> entry : this.checkerMap.entrySet()) {
+            result.checkerMap.put(entry.getKey(), entry.getValue() == null ? null : operator.apply(entry.getValue()));
+        }
+
+        return result;
+    }
+
+    private void checkMutable() {
+        if (this.immutable)
+            throw new RuntimeException("Shared SDK infos can not be modified: use a copy");
+    }
+
     public void invertAllComparators(boolean b) {
         for (VersionChecker versionChecker : this.getCheckerMap().values()) {
             versionChecker.invertComparator(b);
@@ -16,10 +16,80 @@ public class VersionChecker implements Cloneable {
         EQ,
         NE
     }
+    private static final int SHARED_VERSIONS = 64;
+    private static final VersionChecker[][] SHARED_CHECKERS = new VersionChecker[Comparator.values().length][SHARED_VERSIONS];
+
+    static {
+        for (Comparator comparator : Comparator.values()) {
+            for (int version = 0; version < SHARED_VERSIONS; version++) {
+                SHARED_CHECKERS[comparator.ordinal()][version] = new VersionChecker(comparator, version);
+            }
+        }
+    }
+
     private int checkedVersion;
     private Comparator comparator;
+    private boolean immutable;
+
+    public VersionChecker() {
+    }
+
+    private VersionChecker(Comparator comparator, int checkedVersion) {
+        this.comparator     = comparator;
+        this.checkedVersion = checkedVersion;
+        this.immutable      = true;
+    }
+
+    /**
+     * Returns an immutable checker. Checkers of the usual versions are shared, so that the symbol tables do not
+     * allocate a checker for each comparison: use {@link #copy()} to get a checker that can be modified.
+     */
+    public static VersionChecker of(Comparator comparator, int checkedVersion) {
+        if (comparator != null && checkedVersion >= 0 && checkedVersion < SHARED_VERSIONS)
+            return SHARED_CHECKERS[comparator.ordinal()][checkedVersion];
+
+        return new VersionChecker(comparator, checkedVersion);
+    }
+
+    /**
+     * Returns an immutable checker equal to this one, except for the comparator
+     */
+    public VersionChecker withComparator(Comparator comparator) {
+        return this.derive(comparator, this.checkedVersion);
+    }
+
+    /**
+     * Returns an immutable checker equal to this one, except for the checked version
+     */
+    public VersionChecker withCheckedVersion(int checkedVersion) {
+        return this.derive(this.comparator, checkedVersion);
+    }
+
+    /**
+     * Returns an immutable checker with the inverted comparator (see {@link #invertComparator(boolean)})
+     */
+    public VersionChecker inverted(boolean hardInversion) {
+        return this.derive(invert(this.comparator, hardInversion), this.checkedVersion);
+    }
+
+    private VersionChecker derive(Comparator comparator, int checkedVersion) {
+        if (!this.isNull())
+            return of(comparator, checkedVersion);
+
+        VersionChecker result = this.copy();
+        result.comparator       = comparator;
+        result.checkedVersion   = checkedVersion;
+        result.immutable        = true;
+        return result;
+    }
+
+    private void checkMutable() {
+        if (this.immutable)
+            throw new RuntimeException("Shared version checkers can not be modified: use a copy");
+    }
 
     public void setCheckedVersion(int checkedVersion) {
+        this.checkMutable();
         this.checkedVersion = checkedVersion;
     }
 
@@ -28,6 +98,7 @@ public class VersionChecker implements Cloneable {
     }
 
     public void setComparator(String comparatorString) {
+        this.checkMutable();
         switch (comparatorString) {
             case ">":
                 this.comparator = Comparator.GT;
@@ -59,33 +130,31 @@ public class VersionChecker implements Cloneable {
     }
 
     public void setComparator(Comparator comparator) {
+        this.checkMutable();
         this.comparator = comparator;
     }
 
     public void invertComparator(boolean hardInversion) {
-        switch (this.comparator) {
+        this.checkMutable();
+        this.comparator = invert(this.comparator, hardInversion);
+    }
+
+    private static Comparator invert(Comparator comparator, boolean hardInversion) {
+        switch (comparator) {
         case GT:
-            this.comparator = Comparator.LE;
-            break;
+            return Comparator.LE;
         case LT:
-            this.comparator = Comparator.GE;
-            break;
+            return Comparator.GE;
         case GE:
-            this.comparator = Comparator.LT;
-            break;
+            return Comparator.LT;
         case LE:
-            this.comparator = Comparator.GT;
-            break;
+            return Comparator.GT;
         case EQ:
-            if (hardInversion) {
-                this.comparator = Comparator.NE;
-            }
-            break;
+            return hardInversion ? Comparator.NE : Comparator.EQ;
         case NE:
-            if (hardInversion) {
-                this.comparator = Comparator.EQ;
-            }
-            break;
+            return hardInversion ? Comparator.EQ : Comparator.NE;
+        default:
+            return comparator;
         }
     }
 
@@ -100,7 +169,9 @@ public class VersionChecker implements Cloneable {
 
     public VersionChecker copy() {
         try {
-            return ((VersionChecker) this.clone());
+            VersionChecker copy = ((VersionChecker) this.clone());
+            copy.immutable = false;
+            return copy;
         } catch (CloneNotSupportedException e) {
             //Not possible
             return null;
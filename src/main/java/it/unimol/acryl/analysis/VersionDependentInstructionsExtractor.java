@@ -3,6 +3,7 @@ package it.unimol.acryl.analysis;
 import com.ibm.wala.ssa.ISSABasicBlock;
 import com.ibm.wala.ssa.SSACFG;
 import com.ibm.wala.ssa.SSAConditionalBranchInstruction;
+import it.unimol.acryl.graphs.CompactCFG;
 import it.unimol.acryl.static_analysis.contexts.MethodContext;
 import it.unimol.acryl.static_analysis.utils.CFGVisitor;
 import it.unimol.acryl.graphs.SubCFG;
@@ -25,26 +26,107 @@ public class VersionDependentInstructionsExtractor {
     }
 
     public Set<SubCFG> extractVersionIndependentCFGs(MethodContext methodContext, Collection<SubCFG> checkedSubCFG) {
+        return this.extractVersionIndependentCFGs(methodContext, checkedSubCFG, UncheckedRegions.BLOCKS);
+    }
+
+    /**
+     * Extracts the parts of the method that are not checked against the SDK version
+     * @param methodContext method
+     * @param checkedSubCFG checked parts of the method
+     * @param regions how unchecked blocks are grouped
+     * @return the unchecked parts
+     */
+    public Set<SubCFG> extractVersionIndependentCFGs(MethodContext methodContext, Collection<SubCFG> checkedSubCFG, UncheckedRegions regions) {
         if (methodContext.getIntermediateRepresentation() == null)
             return null;
 
-        Set<SubCFG> result = new HashSet<>();
-        Set<ISSABasicBlock> checkedBlocks = new HashSet<>();
+        SSACFG cfg = methodContext.getIntermediateRepresentation().getControlFlowGraph();
+
+        // Parts are views over the same compact CFG: the one of the checked parts, if any
+        CompactCFG graph = null;
+        BitSet uncheckedBlocks = null;
         for (SubCFG subCFG : checkedSubCFG) {
-            checkedBlocks.addAll(subCFG.vertexSet());
+            if (graph == null && subCFG.getGraph().getCFG() == cfg) {
+                graph = subCFG.getGraph();
+                uncheckedBlocks = graph.getAllBlocks();
+            }
         }
 
-        SSACFG cfg = methodContext.getIntermediateRepresentation().getControlFlowGraph();
-        for (ISSABasicBlock basicBlock : cfg) {
-            if (!checkedBlocks.contains(basicBlock)) {
-                SubCFG subCFG = new SubCFG(cfg, Collections.singleton(basicBlock));
-                result.add(subCFG);
+        if (graph == null) {
+            graph = new CompactCFG(cfg);
+            uncheckedBlocks = graph.getAllBlocks();
+        }
+
+        for (SubCFG subCFG : checkedSubCFG) {
+            for (ISSABasicBlock basicBlock : subCFG.vertexSet()) {
+                uncheckedBlocks.clear(basicBlock.getNumber());
             }
         }
-        
+
+        List<BitSet> groups = new ArrayList<>();
+        if (regions == UncheckedRegions.BLOCKS) {
+            for (int block = uncheckedBlocks.nextSetBit(0); block >= 0; block = uncheckedBlocks.nextSetBit(block + 1)) {
+                BitSet group = new BitSet();
+                group.set(block);
+                groups.add(group);
+            }
+        } else {
+            // Entry and exit blocks are left out: they are empty and they would connect everything
+            uncheckedBlocks.clear(cfg.entry().getNumber());
+            uncheckedBlocks.clear(cfg.exit().getNumber());
+
+            if (regions == UncheckedRegions.METHOD) {
+                if (!uncheckedBlocks.isEmpty())
+                    groups.add(uncheckedBlocks);
+            } else {
+                BitSet remaining = (BitSet) uncheckedBlocks.clone();
+                for (int block = remaining.nextSetBit(0); block >= 0; block = remaining.nextSetBit(block + 1)) {
+                    groups.add(collectRegion(graph, block, remaining));
+                }
+            }
+        }
+
+        Set<SubCFG> result = new LinkedHashSet<>();
+        for (BitSet group : groups) {
+            SubCFG subCFG = new SubCFG(graph, group, true);
+            subCFG.setMethodContext(methodContext);
+            result.add(subCFG);
+        }
+
         return result;
     }
 
+    /**
+     * Collects the blocks connected to the given one (in any direction) among the remaining ones, removing them
+     */
+    private static BitSet collectRegion(CompactCFG graph, int start, BitSet remaining) {
+        BitSet region = new BitSet();
+        Deque<Integer> toVisit = new ArrayDeque<>();
+        remaining.clear(start);
+        toVisit.push(start);
+        while (!toVisit.isEmpty()) {
+            int block = toVisit.pop();
+            region.set(block);
+
+            for (int i = graph.getSuccessorStart(block); i < graph.getSuccessorEnd(block); i++) {
+                visitNeighbor(graph.getSuccessor(i), remaining, toVisit);
+            }
+
+            for (int i = graph.getPredecessorStart(block); i < graph.getPredecessorEnd(block); i++) {
+                visitNeighbor(graph.getPredecessor(i), remaining, toVisit);
+            }
+        }
+
+        return region;
+    }
+
+    private static void visitNeighbor(int neighbor, BitSet remaining, Deque<Integer> toVisit) {
+        if (remaining.get(neighbor)) {
+            remaining.clear(neighbor);
+            toVisit.push(neighbor);
+        }
+    }
+
     public Map<VersionChecker, SubCFG> extractVersionDependentCFG(MethodContext methodContext) {
         if (methodContext.getIntermediateRepresentation() == null)
             return null;
@@ -54,25 +136,18 @@ public class VersionDependentInstructionsExtractor {
         AugmentedSymbolTable symbolTable = methodContext.getAugmentedSymbolTable();
         symbolTable.update(this.versionMethodCache);
 
-        Map<VersionChecker, SubCFG> result = new HashMap<>();
+        Map<VersionChecker, SubCFG> result = new LinkedHashMap<>();
 
         visitor.visit(block -> {
             if (block.getLastInstruction() instanceof SSAConditionalBranchInstruction) {
                 SSAConditionalBranchInstruction lastInstruction = (SSAConditionalBranchInstruction) block.getLastInstruction();
 
-                SDKInfo checker = symbolTable.getCheckingInstructionsTable().get(lastInstruction.iindex);
+                SDKInfo checker = symbolTable.getCheckingInstruction(lastInstruction.iindex);
                 if (checker != null) {
                     try {
                         visitor.visitConditionalBranchingBlock(block,
-                                trueSubCFG -> {
-                                    VersionChecker subChecker = checker.getVersionFor(true);
-                                    result.put(subChecker, trueSubCFG);
-                                },
-
-                                falseSubCFG -> {
-                                    VersionChecker subChecker = checker.getVersionFor(false);
-                                    result.put(subChecker, falseSubCFG);
-                                }
+                                trueSubCFG -> result.put(copyOf(checker.getVersionFor(true)), trueSubCFG),
+                                falseSubCFG -> result.put(copyOf(checker.getVersionFor(false)), falseSubCFG)
                         );
                     } catch (CFGVisitor.NoEndingBlockException e) {
                         Logger.getAnonymousLogger().warning("\tCould not find ending block of " + block.toString());
@@ -83,4 +158,25 @@ public class VersionDependentInstructionsExtractor {
 
         return result;
     }
-}
\ No newline at end of file
+
+    /**
+     * Copies the checker of a branch: checkers are shared among equivalent checks, while each branch needs its own
+     * key in the result
+     */
+    private static VersionChecker copyOf(VersionChecker checker) {
+        return checker == null ? null : checker.copy();
+    }
+
+    /**
+     * Ways of grouping the blocks that are not checked against the SDK version: each group is matched against the rules
+     * as a whole
+     */
+    public enum UncheckedRegions {
+        /** One group for each block */
+        BLOCKS,
+        /** One group for each set of connected blocks */
+        CONNECTED,
+        /** One group for the whole method */
+        METHOD
+    }
+}
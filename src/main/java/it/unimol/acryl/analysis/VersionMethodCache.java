@@ -5,10 +5,16 @@ import com.ibm.wala.classLoader.IMethod;
 import it.unimol.acryl.static_analysis.contexts.ClassContext;
 import it.unimol.acryl.static_analysis.contexts.JarContext;
 import it.unimol.acryl.static_analysis.contexts.MethodContext;
+import it.unimol.acryl.static_analysis.utils.GraphUtils;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
 
 /**
  * Holds a cache of methods that return version labels
@@ -16,32 +22,163 @@ import java.util.Map;
  */
 public class VersionMethodCache implements IVersionMethodCache {
     private final Map<String, SDKInfo> cache;
-    private final JarContext context;
+    protected final JarContext context;
+    private final int threads;
 
     public VersionMethodCache(JarContext context) {
-        this.cache = new HashMap<>();
+        this(context, Runtime.getRuntime().availableProcessors());
+    }
+
+    public VersionMethodCache(JarContext context, int threads) {
+        this.cache = new ConcurrentHashMap<>();
         this.context = context;
+        this.threads = threads;
     }
 
     public void build() throws IOException {
-        VersionMethodLabeler labeler = new VersionMethodLabeler();
-
+        List<MethodContext> methods = new ArrayList<>();
         for (IClass iClass : this.context.getClassesInJar(true)) {
             ClassContext classContext = this.context.resolveClassContext(iClass);
-//            System.out.println("Labeling methods from " + classContext.getIClass().getName().toString());
             for (IMethod iMethod : classContext.getNonAbstractMethods()) {
-                MethodContext methodContext = classContext.resolveMethodContext(iMethod);
+                methods.add(classContext.resolveMethodContext(iMethod));
+            }
+        }
+
+        this.label(methods);
+    }
+
+    /**
+     * Labels the given methods. Methods are labeled following the strongly connected components of the call graph, so
+     * that the labels of the callees are available when a method is labeled (e.g., a method that returns the result of
+     * a wrapper of SDK_INT gets a label as well). Independent components are labeled in parallel. The methods of a
+     * component (i.e., mutually recursive methods) are labeled one after the other, in the order in which
+     * {@link GraphUtils#getStronglyConnectedComponents} returns them: each one sees the labels of the ones before and
+     * not the labels of the ones after, so the result depends on that order, which only depends on the order of the
+     * given methods. Methods that neither read SDK_INT nor call labeled methods are not labeled (see
+     * {@link it.unimol.acryl.static_analysis.contexts.BytecodeSummary}).
+     * @param methods methods to label
+     */
+    protected void label(Collection<MethodContext> methods) {
+        Map<String, MethodContext> methodsBySignature = new HashMap<>();
+        for (MethodContext method : methods) {
+            methodsBySignature.put(method.getIMethod().getSignature(), method);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(this.threads);
+        try {
+            Map<MethodContext, Collection<MethodContext>> callees = new ConcurrentHashMap<>();
+            pool.submit(() -> methods.parallelStream().forEach(
+                    method -> callees.put(method, getLabelDependencies(method, methodsBySignature))
+            )).join();
+
+            List<List<MethodContext>> components = GraphUtils.getStronglyConnectedComponents(methods, callees::get);
+            labelComponents(components, callees, pool);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
 
-                //Saves an empty entry to avoid infinite loops due recursion or cyclic calls
-                this.saveEntry(methodContext, null);
-                SDKInfo sdkInfo = labeler.labelMethod(methodContext);
-                this.saveEntry(methodContext, sdkInfo);
+    private void labelComponents(List<List<MethodContext>> components, Map<MethodContext, Collection<MethodContext>> callees, ForkJoinPool pool) {
+        Map<MethodContext, Integer> componentIndexes = new HashMap<>();
+        for (int i = 0; i < components.size(); i++) {
+            for (MethodContext method : components.get(i)) {
+                componentIndexes.put(method, i);
             }
         }
+
+        AtomicInteger[] pendingDependencies = new AtomicInteger[components.size()];
+        List<List<Integer>> dependentComponents = new ArrayList<>();
+        for (int i = 0; i < components.size(); i++) {
+            dependentComponents.add(new ArrayList<>());
+        }
+
+        for (int i = 0; i < components.size(); i++) {
+            Set<Integer> calledComponents = new HashSet<>();
+            for (MethodContext method : components.get(i)) {
+                for (MethodContext callee : callees.get(method)) {
+                    int calledComponent = componentIndexes.get(callee);
+                    if (calledComponent != i && calledComponents.add(calledComponent))
+                        dependentComponents.get(calledComponent).add(i);
+                }
+            }
+            pendingDependencies[i] = new AtomicInteger(calledComponents.size());
+        }
+
+        VersionMethodLabeler labeler = new VersionMethodLabeler();
+        CountDownLatch remaining = new CountDownLatch(components.size());
+        AtomicInteger skipped = new AtomicInteger();
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+        // Components are submitted as soon as all the components they call are labeled
+        Runnable[] tasks = new Runnable[components.size()];
+        for (int i = 0; i < components.size(); i++) {
+            final int component = i;
+            tasks[i] = () -> {
+                try {
+                    if (failure.get() == null) {
+                        for (MethodContext method : components.get(component)) {
+                            if (method.getBytecodeSummary().isVersionDependent(this)) {
+                                this.saveEntry(method, labeler.labelMethod(method, this));
+                            } else {
+                                this.saveEntry(method, null);
+                                skipped.incrementAndGet();
+                            }
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    for (int dependent : dependentComponents.get(component)) {
+                        if (pendingDependencies[dependent].decrementAndGet() == 0)
+                            pool.execute(tasks[dependent]);
+                    }
+                    remaining.countDown();
+                }
+            };
+        }
+
+        for (int i = 0; i < components.size(); i++) {
+            if (pendingDependencies[i].get() == 0)
+                pool.execute(tasks[i]);
+        }
+
+        try {
+            remaining.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("Aborted labeling");
+        }
+
+        if (failure.get() != null)
+            throw failure.get();
+
+        Logger.getAnonymousLogger().info("Skipped the labeling of " + skipped.get() + " methods not depending on the SDK version");
+    }
+
+    /**
+     * Returns the methods whose label may be used when labeling the given method, i.e., the methods among the ones to
+     * label that are called. They are taken from the bytecode, so that the IR is not built for the methods that are
+     * not labeled.
+     */
+    private static Collection<MethodContext> getLabelDependencies(MethodContext methodContext, Map<String, MethodContext> methodsBySignature) {
+        Set<MethodContext> result = new LinkedHashSet<>();
+        for (String signature : methodContext.getBytecodeSummary().getCalledSignatures()) {
+            MethodContext callee = methodsBySignature.get(signature);
+            if (callee != null)
+                result.add(callee);
+        }
+
+        return result;
     }
 
     public void saveEntry(MethodContext methodContext, SDKInfo sdkInfo) {
-        this.cache.put(methodContext.getIMethod().getSignature(), sdkInfo);
+        this.saveEntry(methodContext.getIMethod().getSignature(), sdkInfo);
+    }
+
+    protected void saveEntry(String signature, SDKInfo sdkInfo) {
+        if (sdkInfo == null)
+            this.cache.remove(signature);
+        else
+            this.cache.put(signature, sdkInfo);
     }
 
     public SDKInfo getVersionNumbers(String signature) {
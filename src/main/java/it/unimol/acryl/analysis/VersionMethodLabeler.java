@@ -14,13 +14,37 @@ import java.util.logging.Logger;
  * @author Simone Scalabrino.
  */
 public class VersionMethodLabeler {
+    /**
+     * Version of the labeling algorithm. It must be increased every time a change may modify the labels, so that
+     * persisted labels are invalidated.
+     */
+    public static final int VERSION = 1;
+
     public SDKInfo labelMethod(MethodContext methodContext) {
         if (methodContext.getIntermediateRepresentation() == null)
             return null;
 
-        CFGVisitor visitor = new CFGVisitor(methodContext);
+        return labelMethod(methodContext, methodContext.getAugmentedSymbolTable());
+    }
+
+    /**
+     * Labels the method considering the labels of the methods it calls (e.g., wrappers of SDK_INT)
+     * @param methodContext method to label
+     * @param methodLabels labels of the called methods
+     * @return the label of the method, or null if the method does not return version information
+     */
+    public SDKInfo labelMethod(MethodContext methodContext, IVersionMethodCache methodLabels) {
+        if (methodContext.getIntermediateRepresentation() == null)
+            return null;
 
         AugmentedSymbolTable symbolTable = methodContext.getAugmentedSymbolTable();
+        symbolTable.update(methodLabels);
+
+        return labelMethod(methodContext, symbolTable);
+    }
+
+    private SDKInfo labelMethod(MethodContext methodContext, AugmentedSymbolTable symbolTable) {
+        CFGVisitor visitor = new CFGVisitor(methodContext);
 
         SDKInfo result = new SDKInfo();
 
@@ -28,7 +52,7 @@ public class VersionMethodLabeler {
             if (block.getLastInstruction() instanceof SSAConditionalBranchInstruction) {
                 SSAConditionalBranchInstruction lastInstruction = (SSAConditionalBranchInstruction) block.getLastInstruction();
 
-                SDKInfo checker = symbolTable.getCheckingInstructionsTable().get(lastInstruction.iindex);
+                SDKInfo checker = symbolTable.getCheckingInstruction(lastInstruction.iindex);
                 if (checker != null) {
                     try {
                         visitor.visitConditionalBranchingBlock(block,
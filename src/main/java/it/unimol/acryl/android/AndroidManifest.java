@@ -0,0 +1,315 @@
+package it.unimol.acryl.android;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Data read from the binary AndroidManifest.xml of an APK, parsed without running aapt. Only the attributes with a
+ * literal value are read: the ones referring to resources (e.g., a versionName defined in strings.xml) are not
+ * resolved, as done when parsing the output of "aapt l -a".
+ */
+public class AndroidManifest {
+    private static final String MANIFEST_ENTRY  = "AndroidManifest.xml";
+    private static final String ANDROID_NS      = "http://schemas.android.com/apk/res/android";
+
+    private static final int CHUNK_STRING_POOL      = 0x0001;
+    private static final int CHUNK_XML              = 0x0003;
+    private static final int CHUNK_START_ELEMENT    = 0x0102;
+    private static final int CHUNK_END_ELEMENT      = 0x0103;
+    private static final int CHUNK_RESOURCE_MAP     = 0x0180;
+
+    private static final int UTF8_FLAG  = 1 << 8;
+    private static final int NO_INDEX   = -1;
+
+    private static final int TYPE_STRING    = 0x03;
+    private static final int TYPE_INT_DEC   = 0x10;
+    private static final int TYPE_INT_HEX   = 0x11;
+
+    private static final int ATTRIBUTE_NAME                 = 0x01010003;
+    private static final int ATTRIBUTE_MIN_SDK_VERSION      = 0x0101020c;
+    private static final int ATTRIBUTE_VERSION_NAME         = 0x0101021c;
+    private static final int ATTRIBUTE_TARGET_SDK_VERSION   = 0x01010270;
+    private static final int ATTRIBUTE_MAX_SDK_VERSION      = 0x01010271;
+
+    private String packageName;
+    private String version;
+
+    private int minSDKVersion;
+    private int targetSDKVersion;
+    private int maxSDKVersion;
+
+    private final List<String> activities;
+
+    private AndroidManifest() {
+        this.minSDKVersion      = -1;
+        this.targetSDKVersion   = -1;
+        this.maxSDKVersion      = -1;
+        this.activities         = new ArrayList<>();
+    }
+
+    /**
+     * Reads the manifest of the APK
+     * @param apk APK file
+     * @return the data of the manifest
+     * @throws IOException if the APK can not be read, or if its manifest is missing or malformed
+     */
+    public static AndroidManifest read(File apk) throws IOException {
+        try (ZipFile zip = new ZipFile(apk)) {
+            ZipEntry entry = zip.getEntry(MANIFEST_ENTRY);
+            if (entry == null)
+                throw new IOException("No " + MANIFEST_ENTRY + " in " + apk);
+
+            try (InputStream stream = zip.getInputStream(entry)) {
+                return parse(IOUtils.toByteArray(stream));
+            }
+        }
+    }
+
+    /**
+     * Parses a binary XML manifest
+     * @param data content of the manifest
+     * @return the data of the manifest
+     * @throws IOException if the manifest is malformed
+     */
+    public static AndroidManifest parse(byte[] data) throws IOException {
+        try {
+            return new Parser(ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN)).parse();
+        } catch (IndexOutOfBoundsException | IllegalArgumentException | NegativeArraySizeException e) {
+            throw new IOException("Malformed binary manifest", e);
+        }
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    /**
+     * Returns the version name of the app, or null if it is not declared or if it refers to a resource
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    public int getMinSDKVersion() {
+        return minSDKVersion;
+    }
+
+    public int getTargetSDKVersion() {
+        return targetSDKVersion;
+    }
+
+    public int getMaxSDKVersion() {
+        return maxSDKVersion;
+    }
+
+    /**
+     * Returns the names of the activities, as declared in the manifest (they may be relative to the package)
+     */
+    public List<String> getActivities() {
+        return Collections.unmodifiableList(activities);
+    }
+
+    private static class Parser {
+        private final ByteBuffer data;
+        private final AndroidManifest manifest;
+
+        private String[] strings;
+        private int[] resourceIds;
+        private final List<String> path;
+
+        private Parser(ByteBuffer data) {
+            this.data       = data;
+            this.manifest   = new AndroidManifest();
+            this.strings    = new String[0];
+            this.resourceIds = new int[0];
+            this.path       = new ArrayList<>();
+        }
+
+        private AndroidManifest parse() throws IOException {
+            if ((data.getShort(0) & 0xFFFF) != CHUNK_XML)
+                throw new IOException("Not a binary XML file");
+
+            int end = Math.min(data.getInt(4), data.limit());
+            int position = data.getShort(2) & 0xFFFF;
+            while (position + 8 <= end) {
+                int type = data.getShort(position) & 0xFFFF;
+                int size = data.getInt(position + 4);
+                if (size < 8 || size > end - position)
+                    throw new IOException("Malformed chunk at " + position);
+
+                switch (type) {
+                    case CHUNK_STRING_POOL:
+                        this.readStringPool(position, size);
+                        break;
+                    case CHUNK_RESOURCE_MAP:
+                        this.readResourceMap(position, size);
+                        break;
+                    case CHUNK_START_ELEMENT:
+                        this.readStartElement(position);
+                        break;
+                    case CHUNK_END_ELEMENT:
+                        if (!path.isEmpty())
+                            path.remove(path.size() - 1);
+                        break;
+                    default:
+                        break;
+                }
+
+                position += size;
+            }
+
+            return manifest;
+        }
+
+        private void readStringPool(int chunk, int size) throws IOException {
+            int headerSize      = data.getShort(chunk + 2) & 0xFFFF;
+            int stringCount     = data.getInt(chunk + 8);
+            boolean utf8        = (data.getInt(chunk + 16) & UTF8_FLAG) != 0;
+            int stringsStart    = chunk + data.getInt(chunk + 20);
+
+            // Lengths are checked before allocating, so that a malformed manifest can not exhaust the memory
+            if (stringCount < 0 || headerSize + stringCount * 4L > size)
+                throw new IOException("Malformed string pool at " + chunk);
+
+            strings = new String[stringCount];
+            for (int i = 0; i < stringCount; i++) {
+                int offset = stringsStart + data.getInt(chunk + headerSize + i * 4);
+                strings[i] = utf8 ? readUtf8(offset) : readUtf16(offset);
+            }
+        }
+
+        private String readUtf8(int offset) throws IOException {
+            // Length in UTF-16 characters (ignored), then length in bytes
+            offset += (data.get(offset) & 0x80) != 0 ? 2 : 1;
+
+            int length = data.get(offset) & 0xFF;
+            if ((length & 0x80) != 0) {
+                length = ((length & 0x7F) << 8) | (data.get(offset + 1) & 0xFF);
+                offset += 2;
+            } else {
+                offset += 1;
+            }
+
+            if (offset + (long) length > data.limit())
+                throw new IOException("Malformed string at " + offset);
+
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = data.get(offset + i);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private String readUtf16(int offset) throws IOException {
+            int length = data.getShort(offset) & 0xFFFF;
+            if ((length & 0x8000) != 0) {
+                length = ((length & 0x7FFF) << 16) | (data.getShort(offset + 2) & 0xFFFF);
+                offset += 4;
+            } else {
+                offset += 2;
+            }
+
+            if (offset + length * 2L > data.limit())
+                throw new IOException("Malformed string at " + offset);
+
+            char[] chars = new char[length];
+            for (int i = 0; i < length; i++) {
+                chars[i] = data.getChar(offset + i * 2);
+            }
+            return new String(chars);
+        }
+
+        private void readResourceMap(int chunk, int size) {
+            int headerSize = data.getShort(chunk + 2) & 0xFFFF;
+
+            resourceIds = new int[(size - headerSize) / 4];
+            for (int i = 0; i < resourceIds.length; i++) {
+                resourceIds[i] = data.getInt(chunk + headerSize + i * 4);
+            }
+        }
+
+        private void readStartElement(int chunk) {
+            int extension       = chunk + (data.getShort(chunk + 2) & 0xFFFF);
+            String name         = this.getString(data.getInt(extension + 4));
+            int attributeStart  = data.getShort(extension + 8) & 0xFFFF;
+            int attributeSize   = data.getShort(extension + 10) & 0xFFFF;
+            int attributeCount  = data.getShort(extension + 12) & 0xFFFF;
+
+            path.add(name);
+
+            for (int i = 0; i < attributeCount; i++) {
+                int attribute = extension + attributeStart + i * attributeSize;
+                this.readAttribute(attribute);
+            }
+        }
+
+        private void readAttribute(int attribute) {
+            int namespace   = data.getInt(attribute);
+            int name        = data.getInt(attribute + 4);
+            int rawValue    = data.getInt(attribute + 8);
+            int type        = data.get(attribute + 15) & 0xFF;
+            int value       = data.getInt(attribute + 16);
+
+            String stringValue = type == TYPE_STRING ? this.getString(value) : null;
+            boolean intValue = type == TYPE_INT_DEC || type == TYPE_INT_HEX;
+
+            if (this.isInPath("manifest")) {
+                if (namespace == NO_INDEX && "package".equals(this.getString(name)))
+                    manifest.packageName = stringValue != null ? stringValue : this.getString(rawValue);
+                else if (this.isAndroidAttribute(namespace, name, "versionName", ATTRIBUTE_VERSION_NAME))
+                    manifest.version = stringValue;
+            } else if (this.isInPath("manifest", "uses-sdk") && intValue) {
+                if (this.isAndroidAttribute(namespace, name, "minSdkVersion", ATTRIBUTE_MIN_SDK_VERSION))
+                    manifest.minSDKVersion = value;
+                else if (this.isAndroidAttribute(namespace, name, "targetSdkVersion", ATTRIBUTE_TARGET_SDK_VERSION))
+                    manifest.targetSDKVersion = value;
+                else if (this.isAndroidAttribute(namespace, name, "maxSdkVersion", ATTRIBUTE_MAX_SDK_VERSION))
+                    manifest.maxSDKVersion = value;
+            } else if (this.isInPath("manifest", "application", "activity") && stringValue != null) {
+                if (this.isAndroidAttribute(namespace, name, "name", ATTRIBUTE_NAME))
+                    manifest.activities.add(stringValue);
+            }
+        }
+
+        /**
+         * Checks whether the attribute is the given Android attribute. The resource ID is checked first, since
+         * obfuscators may remove the names of the attributes.
+         */
+        private boolean isAndroidAttribute(int namespace, int name, String expectedName, int expectedId) {
+            if (name >= 0 && name < resourceIds.length && resourceIds[name] != 0)
+                return resourceIds[name] == expectedId;
+
+            return ANDROID_NS.equals(this.getString(namespace)) && expectedName.equals(this.getString(name));
+        }
+
+        private boolean isInPath(String... elements) {
+            if (path.size() != elements.length)
+                return false;
+
+            for (int i = 0; i < elements.length; i++) {
+                if (!elements[i].equals(path.get(i)))
+                    return false;
+            }
+
+            return true;
+        }
+
+        private String getString(int index) {
+            if (index < 0 || index >= strings.length)
+                return null;
+
+            return strings[index];
+        }
+    }
+}
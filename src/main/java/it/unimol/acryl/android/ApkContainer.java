@@ -2,7 +2,9 @@ package it.unimol.acryl.android;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
@@ -14,19 +16,24 @@ import java.util.zip.ZipInputStream;
 public class ApkContainer {
     private final File file;
 
-    private String rawManifest;
+    private boolean loaded;
 
     private String packageName;
     private String version;
 
     private int minSDKVersion;
     private int targetSDKVersion;
+    private int maxSDKVersion;
+
+    private List<String> activities;
 
     public ApkContainer(File file) {
         this.file = file;
 
         this.targetSDKVersion   = -1;
         this.minSDKVersion      = -1;
+        this.maxSDKVersion      = -1;
+        this.activities         = Collections.emptyList();
     }
 
     @Deprecated
@@ -97,6 +104,25 @@ public class ApkContainer {
         return this.targetSDKVersion;
     }
 
+    /**
+     * Returns the maxSdkVersion declared in the manifest, or -1 if it is not declared
+     */
+    public int getMaxSDKVersion() throws IOException {
+        loadData();
+
+        return this.maxSDKVersion;
+    }
+
+    /**
+     * Returns the names of the activities declared in the manifest. They are not available (i.e., the list is empty)
+     * if the manifest could only be read through aapt.
+     */
+    public List<String> getActivities() throws IOException {
+        loadData();
+
+        return this.activities;
+    }
+
     public String getPackageName() throws IOException {
         loadData();
 
@@ -110,32 +136,22 @@ public class ApkContainer {
     }
 
     private void loadData() throws IOException {
-        if (rawManifest == null) {
-            this.rawManifest = AndroidToolkit.getInstance().aapt().extractManifest(this);
-
-            Pattern patternPackage      = Pattern.compile("package=\"([A-Za-z.0-9_]+)\"");
-            Pattern patternVersion      = Pattern.compile("android:versionName\\([A-Za-z0-9]+\\)=\"([A-Za-z.0-9_]+)\"");
-
-            Pattern patternSDKMin       = Pattern.compile("android:minSdkVersion\\([A-Za-z0-9]+\\)=\\([A-Za-z0-9 ]+\\)([0-9xA-Fa-f]+)");
-            Pattern patternSDKTarget    = Pattern.compile("android:targetSdkVersion\\([A-Za-z0-9]+\\)=\\([A-Za-z0-9 ]+\\)([0-9xA-Fa-f]+)");
-
-            for (String line : this.rawManifest.split("\n")) {
-                Matcher matcherPackage = patternPackage.matcher(line);
-                Matcher matcherVersion = patternVersion.matcher(line);
-
-                Matcher matcherSDKMin       = patternSDKMin   .matcher(line);
-                Matcher matcherSDKTarget    = patternSDKTarget.matcher(line);
-
-                if (matcherPackage.find()) {
-                    this.packageName        = matcherPackage.group(1);
-                } else if (matcherVersion.find()) {
-                    this.version            = matcherVersion.group(1);
-                } else if (matcherSDKMin.find()) {
-                    this.minSDKVersion      = Integer.decode(matcherSDKMin   .group(1));
-                } else if (matcherSDKTarget.find()) {
-                    this.targetSDKVersion   = Integer.decode(matcherSDKTarget.group(1));
-                }
+        if (!this.loaded) {
+            try {
+                AndroidManifest manifest = AndroidManifest.read(this.file);
+
+                this.packageName        = manifest.getPackageName();
+                this.version            = manifest.getVersion();
+                this.minSDKVersion      = manifest.getMinSDKVersion();
+                this.targetSDKVersion   = manifest.getTargetSDKVersion();
+                this.maxSDKVersion      = manifest.getMaxSDKVersion();
+                this.activities         = manifest.getActivities();
+            } catch (IOException e) {
+                Logger.getAnonymousLogger().warning("Unable to read the manifest (" + e.getMessage() + "), using aapt");
+                this.loadDataWithAapt();
             }
+
+            this.loaded = true;
         }
 
         assert this.packageName != null;
@@ -145,6 +161,38 @@ public class ApkContainer {
         assert this.targetSDKVersion    >= 0;
     }
 
+    private void loadDataWithAapt() throws IOException {
+        String rawManifest = AndroidToolkit.getInstance().aapt().extractManifest(this);
+
+        Pattern patternPackage      = Pattern.compile("package=\"([A-Za-z.0-9_]+)\"");
+        Pattern patternVersion      = Pattern.compile("android:versionName\\([A-Za-z0-9]+\\)=\"([A-Za-z.0-9_]+)\"");
+
+        Pattern patternSDKMin       = Pattern.compile("android:minSdkVersion\\([A-Za-z0-9]+\\)=\\([A-Za-z0-9 ]+\\)([0-9xA-Fa-f]+)");
+        Pattern patternSDKTarget    = Pattern.compile("android:targetSdkVersion\\([A-Za-z0-9]+\\)=\\([A-Za-z0-9 ]+\\)([0-9xA-Fa-f]+)");
+        Pattern patternSDKMax       = Pattern.compile("android:maxSdkVersion\\([A-Za-z0-9]+\\)=\\([A-Za-z0-9 ]+\\)([0-9xA-Fa-f]+)");
+
+        for (String line : rawManifest.split("\n")) {
+            Matcher matcherPackage = patternPackage.matcher(line);
+            Matcher matcherVersion = patternVersion.matcher(line);
+
+            Matcher matcherSDKMin       = patternSDKMin   .matcher(line);
+            Matcher matcherSDKTarget    = patternSDKTarget.matcher(line);
+            Matcher matcherSDKMax       = patternSDKMax   .matcher(line);
+
+            if (matcherPackage.find()) {
+                this.packageName        = matcherPackage.group(1);
+            } else if (matcherVersion.find()) {
+                this.version            = matcherVersion.group(1);
+            } else if (matcherSDKMin.find()) {
+                this.minSDKVersion      = Integer.decode(matcherSDKMin   .group(1));
+            } else if (matcherSDKTarget.find()) {
+                this.targetSDKVersion   = Integer.decode(matcherSDKTarget.group(1));
+            } else if (matcherSDKMax.find()) {
+                this.maxSDKVersion      = Integer.decode(matcherSDKMax   .group(1));
+            }
+        }
+    }
+
     public File getFile() {
         return file;
     }
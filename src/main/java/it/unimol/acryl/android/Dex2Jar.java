@@ -1,19 +1,39 @@
 package it.unimol.acryl.android;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
 import java.io.*;
-import java.util.ArrayList;
-import java.util.List;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipException;
-import java.util.zip.ZipInputStream;
-import java.util.zip.ZipOutputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.*;
 
 /**
  * Uses dex2jar to translate a DEX file into a JAR file
  * @author Simone Scalabrino.
  */
 public class Dex2Jar {
+    private static final String TRANSLATOR_CLASS = "com.googlecode.d2j.dex.Dex2jar";
+    private static final Pattern DEX_INDEX = Pattern.compile("([0-9]+)");
+    private static final Map<File, Optional<ClassLoader>> libraries = new HashMap<>();
+    private static ExecutorService processPool;
+
     private final String program;
 
     public Dex2Jar(String pathToDex2Jar) {
@@ -33,24 +53,193 @@ public class Dex2Jar {
         }
     }
 
-    @SuppressWarnings({"ResultOfMethodCallIgnored", "SpellCheckingInspection"})
+    /**
+     * Translates all the DEX files of the APK into a single JAR file. If possible, dex2jar is run within this process
+     * (see {@link #runInProcess}); otherwise, its script is run once per DEX file, converting the DEX files in
+     * parallel, and the resulting JARs are merged. The JAR file is written next to the destination and moved there only
+     * when complete, so that a failed translation never leaves a partial JAR file in place of the destination.
+     */
     public void run(ApkContainer container, File destination) throws IOException, DexException {
+        File partialDestination = new File(destination.getAbsoluteFile().getParentFile(), destination.getName() + ".part");
+        try {
+            if (!this.runInProcess(container, partialDestination))
+                this.runExternally(container, partialDestination);
+
+            if (partialDestination.exists())
+                Files.move(partialDestination.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(partialDestination.toPath());
+        }
+    }
+
+    /**
+     * Translates the DEX files of the APK within this process, loading dex2jar from the "lib" folder next to its
+     * script. DEX files are read directly from the APK and translated in order (classes.dex, classes2.dex, ...), each
+     * one into its own temporary folder; a class defined in more than one DEX file is taken from the first one, as
+     * Android does. This path relies on the API of dex2jar 2.x ({@code Dex2jar.from(byte[])...to(Path)}) and has only
+     * been checked against a stub of that API, so any failure falls back to {@link #runExternally}.
+     * @return false if dex2jar could not be loaded or failed, in which case nothing is written
+     */
+    boolean runInProcess(ApkContainer container, File destination) throws IOException {
+        ClassLoader library = getLibrary(new File(this.program).getAbsoluteFile().getParentFile());
+        if (library == null)
+            return false;
+
+        try (ZipFile apk = new ZipFile(container.getFile())) {
+            List<ZipEntry> dexEntries = new ArrayList<>();
+            Enumeration<? extends ZipEntry> entries = apk.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.getName().startsWith("classes") && entry.getName().endsWith(".dex"))
+                    dexEntries.add(entry);
+            }
+
+            if (dexEntries.size() == 0)
+                return true;
+
+            dexEntries.sort(Comparator.comparingInt(entry -> getDexIndex(entry.getName())));
+
+            Files.deleteIfExists(destination.toPath());
+            URI jarUri = URI.create("jar:" + destination.getAbsoluteFile().toURI());
+            Path translationFolder = Files.createTempDirectory("dex2jar");
+            try (FileSystem jar = FileSystems.newFileSystem(jarUri, Collections.singletonMap("create", "true"))) {
+                Class<?> translatorClass = library.loadClass(TRANSLATOR_CLASS);
+                for (ZipEntry dexEntry : dexEntries) {
+                    byte[] dex;
+                    try (InputStream stream = apk.getInputStream(dexEntry)) {
+                        dex = IOUtils.toByteArray(stream);
+                    }
+
+                    // Same options used by the d2j-dex2jar script by default
+                    Path dexFolder = Files.createTempDirectory(translationFolder, "classes");
+                    Object translator = translatorClass.getMethod("from", byte[].class).invoke(null, (Object) dex);
+                    translator = translatorClass.getMethod("topoLogicalSort").invoke(translator);
+                    translator = translatorClass.getMethod("skipDebug", boolean.class).invoke(translator, true);
+                    translatorClass.getMethod("to", Path.class).invoke(translator, dexFolder);
+
+                    copyMissingFiles(dexFolder, jar.getPath("/"));
+                    FileUtils.deleteDirectory(dexFolder.toFile());
+                }
+            } finally {
+                FileUtils.deleteDirectory(translationFolder.toFile());
+            }
+
+            return true;
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            Throwable cause = e instanceof InvocationTargetException ? e.getCause() : e;
+            Logger.getAnonymousLogger().warning("Unable to run dex2jar within the process (" + cause + "), running it externally");
+
+            Files.deleteIfExists(destination.toPath());
+            return false;
+        }
+    }
+
+    /**
+     * Copies the files of a folder into another one, on any file system, skipping the ones that already exist there
+     */
+    private static void copyMissingFiles(Path source, Path destination) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(source)) {
+            children.forEach(files::add);
+        }
+
+        for (Path file : files) {
+            Path target = destination.resolve(file.getFileName().toString());
+            if (Files.isDirectory(file)) {
+                Files.createDirectories(target);
+                copyMissingFiles(file, target);
+            } else if (!Files.exists(target)) {
+                Files.copy(file, target);
+            }
+        }
+    }
+
+    /**
+     * Returns the position of a DEX file in the APK: 1 for classes.dex, N for classesN.dex
+     */
+    static int getDexIndex(String dexName) {
+        Matcher matcher = DEX_INDEX.matcher(dexName);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : 1;
+    }
+
+    /**
+     * Returns the class loader of the dex2jar library in the given folder, or null if it is not available
+     */
+    private static ClassLoader getLibrary(File dex2jarFolder) {
+        synchronized (libraries) {
+            return libraries.computeIfAbsent(dex2jarFolder, folder -> {
+                File[] jars = new File(folder, "lib").listFiles((dir, name) -> name.endsWith(".jar"));
+                if (jars == null || jars.length == 0)
+                    return Optional.empty();
+
+                try {
+                    URL[] urls = new URL[jars.length];
+                    for (int i = 0; i < jars.length; i++) {
+                        urls[i] = jars[i].toURI().toURL();
+                    }
+
+                    // No parent except the bootstrap loader, so that the libraries of dex2jar (e.g., ASM) do not clash
+                    ClassLoader loader = new URLClassLoader(urls, null);
+                    loader.loadClass(TRANSLATOR_CLASS);
+                    return Optional.of(loader);
+                } catch (IOException | ClassNotFoundException | LinkageError e) {
+                    return Optional.empty();
+                }
+            }).orElse(null);
+        }
+    }
+
+    @SuppressWarnings({"ResultOfMethodCallIgnored", "SpellCheckingInspection"})
+    private void runExternally(ApkContainer container, File destination) throws IOException, DexException {
         File tempFolder = File.createTempFile("dexextractor", "");
         tempFolder.delete();
         tempFolder.mkdir();
 
         List<File> dexes = container.extractAllDexes(tempFolder, "classes");
+        dexes.sort(Comparator.comparingInt(dex -> getDexIndex(dex.getName())));
 
-        List<File> jars = new ArrayList<>();
+        List<Future<File>> conversions = new ArrayList<>();
         for (File dex : dexes) {
-            File jarFile = new File(tempFolder, dex.getName() + ".jar");
-            this.run(dex, jarFile);
-            jars.add(jarFile);
+            conversions.add(getProcessPool().submit(() -> {
+                File jarFile = new File(tempFolder, dex.getName() + ".jar");
+                this.run(dex, jarFile);
+                return jarFile;
+            }));
+        }
+
+        List<File> jars = new ArrayList<>();
+        try {
+            for (Future<File> conversion : conversions) {
+                jars.add(conversion.get());
+            }
+        } catch (InterruptedException e) {
+            conversions.forEach(conversion -> conversion.cancel(true));
+            throw new RuntimeException("Aborted process");
+        } catch (ExecutionException e) {
+            conversions.forEach(conversion -> conversion.cancel(true));
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            if (e.getCause() instanceof DexException)
+                throw (DexException) e.getCause();
+            throw new RuntimeException(e.getCause());
         }
 
         if (jars.size() == 0)
             return;
 
+        if (!JarMerger.merge(jars, destination))
+            mergeByRecompressing(jars, destination);
+
+        boolean deletionResult = tempFolder.delete();
+
+        assert deletionResult;
+    }
+
+    /**
+     * Merges the JAR files by decompressing and compressing again all their entries. Slower than
+     * {@link JarMerger#merge}, but it also supports Zip64 archives.
+     */
+    private static void mergeByRecompressing(List<File> jars, File destination) throws IOException {
         FileOutputStream fos = new FileOutputStream(destination, false);
         ZipOutputStream zos = new ZipOutputStream(fos);
         ZipEntry ze;
@@ -81,10 +270,22 @@ public class Dex2Jar {
         }
         zos.close();
         fos.close();
+    }
 
-        boolean deletionResult = tempFolder.delete();
+    /**
+     * Returns the pool in which the dex2jar processes are run. It is shared among all the conversions, so that no more
+     * than one process per processor is running at the same time, even when several APKs are converted concurrently.
+     */
+    private static synchronized ExecutorService getProcessPool() {
+        if (processPool == null) {
+            processPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "dex2jar");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
 
-        assert deletionResult;
+        return processPool;
     }
 
     public static class DexException extends Exception {}
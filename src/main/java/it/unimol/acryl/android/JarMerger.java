@@ -0,0 +1,284 @@
+package it.unimol.acryl.android;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Merges JAR files into a single one by copying the entries as they are, still compressed, instead of inflating and
+ * deflating them again. The entries keep the order they have in the source JARs; in case of entries with the same
+ * name, the first one is kept. Only plain ZIP files are supported: Zip64 archives (or merges which would need Zip64)
+ * are rejected, and the caller should fall back to a regular copy.
+ */
+public class JarMerger {
+    private static final int LOCAL_HEADER_SIGNATURE   = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE            = 0x06054b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE  = 0x07064b50;
+
+    private static final int LOCAL_HEADER_SIZE   = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_SIZE            = 22;
+    private static final int MAX_COMMENT_SIZE    = 0xFFFF;
+
+    private static final long MAX_VALUE   = 0xFFFFFFFFL;
+    private static final int MAX_ENTRIES  = 0xFFFF;
+    private static final int DATA_DESCRIPTOR_FLAG = 0x08;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private JarMerger() {
+    }
+
+    /**
+     * Merges the JAR files into the destination
+     * @param jars JAR files to merge, in order
+     * @param destination file to write (overwritten if it exists)
+     * @return false if the JARs could not be merged without Zip64 support, in which case nothing is written
+     * @throws IOException if a JAR can not be read or is malformed, or if the destination can not be written
+     */
+    public static boolean merge(List<File> jars, File destination) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        long outputOffset = 0;
+        long centralSize = 0;
+
+        for (File jar : jars) {
+            List<Entry> jarEntries = readEntries(jar);
+            if (jarEntries == null)
+                return false;
+
+            for (Entry entry : jarEntries) {
+                if (!names.add(entry.name)) {
+                    Logger.getAnonymousLogger().severe("Duplicate entry skipped while merging jars: " + entry.name);
+                    continue;
+                }
+
+                entry.outputOffset = outputOffset;
+                outputOffset += LOCAL_HEADER_SIZE + entry.localName.length + entry.localExtra.length + entry.compressedSize;
+                centralSize  += entry.central.capacity();
+                entries.add(entry);
+            }
+        }
+
+        if (entries.size() > MAX_ENTRIES || outputOffset > MAX_VALUE || outputOffset + centralSize > MAX_VALUE)
+            return false;
+
+        Map<File, FileChannel> sources = new HashMap<>();
+        try (FileChannel output = FileChannel.open(destination.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            // Headers and small entries are gathered in the buffer, so that most entries do not need a write on their own
+            ByteBuffer pending = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+            for (Entry entry : entries) {
+                FileChannel source = sources.get(entry.jar);
+                if (source == null) {
+                    source = FileChannel.open(entry.jar.toPath(), StandardOpenOption.READ);
+                    sources.put(entry.jar, source);
+                }
+
+                if (pending.remaining() < LOCAL_HEADER_SIZE + entry.localName.length + entry.localExtra.length)
+                    flush(output, pending);
+
+                // Sizes and CRC are known, so the data descriptor is not needed anymore
+                pending.putInt(LOCAL_HEADER_SIGNATURE);
+                pending.putShort(entry.central.getShort(6));
+                pending.putShort((short) (entry.central.getShort(8) & ~DATA_DESCRIPTOR_FLAG));
+                pending.putShort(entry.central.getShort(10));
+                pending.putInt(entry.central.getInt(12));
+                pending.putInt(entry.central.getInt(16));
+                pending.putInt(entry.central.getInt(20));
+                pending.putInt(entry.central.getInt(24));
+                pending.putShort((short) entry.localName.length);
+                pending.putShort((short) entry.localExtra.length);
+                pending.put(entry.localName);
+                pending.put(entry.localExtra);
+
+                if (entry.compressedSize > pending.remaining()) {
+                    flush(output, pending);
+                    if (entry.compressedSize > pending.remaining()) {
+                        transfer(source, entry, output);
+                        continue;
+                    }
+                }
+
+                int limit = pending.limit();
+                ((Buffer) pending).limit(pending.position() + (int) entry.compressedSize);
+                long position = entry.dataOffset;
+                while (pending.hasRemaining()) {
+                    int read = source.read(pending, position);
+                    if (read < 0)
+                        throw new IOException("Truncated entry " + entry.name + " in " + entry.jar);
+                    position += read;
+                }
+                ((Buffer) pending).limit(limit);
+            }
+
+            for (Entry entry : entries) {
+                ByteBuffer central = entry.central;
+                central.putShort(8, (short) (central.getShort(8) & ~DATA_DESCRIPTOR_FLAG));
+                central.putInt(42, (int) entry.outputOffset);
+                ((Buffer) central).flip();
+
+                if (pending.remaining() < central.remaining())
+                    flush(output, pending);
+                pending.put(central);
+            }
+
+            if (pending.remaining() < END_SIZE)
+                flush(output, pending);
+            pending.putInt(END_SIGNATURE);
+            pending.putShort((short) 0);
+            pending.putShort((short) 0);
+            pending.putShort((short) entries.size());
+            pending.putShort((short) entries.size());
+            pending.putInt((int) centralSize);
+            pending.putInt((int) outputOffset);
+            pending.putShort((short) 0);
+            flush(output, pending);
+        } finally {
+            for (FileChannel source : sources.values()) {
+                source.close();
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Reads the central directory of the JAR
+     * @return the entries of the JAR, or null if the JAR uses Zip64
+     */
+    private static List<Entry> readEntries(File jar) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(jar, "r")) {
+            long length = file.length();
+            int tailLength = (int) Math.min(length, END_SIZE + MAX_COMMENT_SIZE);
+            ByteBuffer tail = read(file, length - tailLength, tailLength);
+
+            int end = -1;
+            for (int i = tailLength - END_SIZE; i >= 0; i--) {
+                if (tail.getInt(i) == END_SIGNATURE) {
+                    end = i;
+                    break;
+                }
+            }
+
+            if (end < 0)
+                throw new IOException("Not a zip file: " + jar);
+
+            if (end >= 20 && tail.getInt(end - 20) == ZIP64_LOCATOR_SIGNATURE)
+                return null;
+
+            int entryCount     = tail.getShort(end + 10) & 0xFFFF;
+            long centralSize   = tail.getInt(end + 12) & MAX_VALUE;
+            long centralOffset = tail.getInt(end + 16) & MAX_VALUE;
+            if (entryCount == MAX_ENTRIES || centralSize == MAX_VALUE || centralOffset == MAX_VALUE)
+                return null;
+
+            ByteBuffer central = read(file, centralOffset, (int) centralSize);
+            List<Entry> entries = new ArrayList<>(entryCount);
+            int position = 0;
+            for (int i = 0; i < entryCount; i++) {
+                if (central.getInt(position) != CENTRAL_HEADER_SIGNATURE)
+                    throw new IOException("Malformed central directory in " + jar);
+
+                int recordLength = CENTRAL_HEADER_SIZE
+                        + (central.getShort(position + 28) & 0xFFFF)
+                        + (central.getShort(position + 30) & 0xFFFF)
+                        + (central.getShort(position + 32) & 0xFFFF);
+                ByteBuffer record = buffer(recordLength);
+                for (int j = 0; j < recordLength; j++) {
+                    record.put(central.get(position + j));
+                }
+                position += recordLength;
+
+                Entry entry = readEntry(file, jar, record);
+                if (entry == null)
+                    return null;
+                entries.add(entry);
+            }
+
+            return entries;
+        }
+    }
+
+    private static Entry readEntry(RandomAccessFile file, File jar, ByteBuffer central) throws IOException {
+        long compressedSize   = central.getInt(20) & MAX_VALUE;
+        long uncompressedSize = central.getInt(24) & MAX_VALUE;
+        long localOffset      = central.getInt(42) & MAX_VALUE;
+        if (compressedSize == MAX_VALUE || uncompressedSize == MAX_VALUE || localOffset == MAX_VALUE)
+            return null;
+
+        byte[] name = new byte[central.getShort(28) & 0xFFFF];
+        for (int i = 0; i < name.length; i++) {
+            name[i] = central.get(CENTRAL_HEADER_SIZE + i);
+        }
+
+        ByteBuffer local = read(file, localOffset, LOCAL_HEADER_SIZE);
+        if (local.getInt(0) != LOCAL_HEADER_SIGNATURE)
+            throw new IOException("Malformed local header in " + jar);
+
+        int localNameLength  = local.getShort(26) & 0xFFFF;
+        int localExtraLength = local.getShort(28) & 0xFFFF;
+        ByteBuffer localExtra = read(file, localOffset + LOCAL_HEADER_SIZE + localNameLength, localExtraLength);
+
+        Entry entry = new Entry();
+        entry.jar            = jar;
+        entry.name           = new String(name, StandardCharsets.UTF_8);
+        entry.central        = central;
+        entry.localName      = name;
+        entry.localExtra     = localExtra.array();
+        entry.compressedSize = compressedSize;
+        entry.dataOffset     = localOffset + LOCAL_HEADER_SIZE + localNameLength + localExtraLength;
+        return entry;
+    }
+
+    private static ByteBuffer read(RandomAccessFile file, long offset, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        file.seek(offset);
+        file.readFully(bytes);
+
+        return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static ByteBuffer buffer(int length) {
+        return ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        // Casts needed to run on Java 8 when compiled with a later JDK
+        ((Buffer) buffer).flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        ((Buffer) buffer).clear();
+    }
+
+    private static void transfer(FileChannel source, Entry entry, FileChannel output) throws IOException {
+        long copied = 0;
+        while (copied < entry.compressedSize) {
+            long transferred = source.transferTo(entry.dataOffset + copied, entry.compressedSize - copied, output);
+            if (transferred <= 0)
+                throw new IOException("Truncated entry " + entry.name + " in " + entry.jar);
+            copied += transferred;
+        }
+    }
+
+    private static class Entry {
+        private File jar;
+        private String name;
+        private ByteBuffer central;
+        private byte[] localName;
+        private byte[] localExtra;
+        private long compressedSize;
+        private long dataOffset;
+        private long outputOffset;
+    }
+}
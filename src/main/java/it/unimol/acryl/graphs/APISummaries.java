@@ -0,0 +1,169 @@
+package it.unimol.acryl.graphs;
+
+import com.ibm.wala.ssa.ISSABasicBlock;
+import com.ibm.wala.ssa.SSAAbstractInvokeInstruction;
+import com.ibm.wala.ssa.SSACFG;
+import com.ibm.wala.ssa.SSAInstruction;
+import it.unimol.acryl.static_analysis.contexts.JarContext;
+import it.unimol.acryl.static_analysis.contexts.MethodContext;
+import it.unimol.acryl.static_analysis.contexts.ResolvedCall;
+import it.unimol.acryl.static_analysis.utils.GraphUtils;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Transitive summaries of the APIs called by the methods of a jar, i.e., the APIs (outside the jar) called by a method
+ * or by the methods of the jar it calls, directly or indirectly. They give the same APIs as an inter-procedural
+ * {@link IPCFG}, which inlines the callees in each graph, but each method is summarized only once. Summaries are computed
+ * on demand, bottom-up on the strongly connected components of the calls: all the methods of a component (i.e.,
+ * mutually recursive methods) share the same summary.
+ */
+public class APISummaries {
+    private final JarContext jarContext;
+    private final Map<String, BitSet> summaries;
+
+    public APISummaries(JarContext jarContext) {
+        this.jarContext = jarContext;
+        this.summaries  = new HashMap<>();
+    }
+
+    /**
+     * Returns the same APIs as {@code IPCFG.buildIPCFG(jarContext, subCFG, true).getCalledAPIIds(filters)}
+     * @param subCFG part of a method
+     * @param filters prefixes of the APIs to consider (all of them if empty)
+     * @return ids of the called APIs
+     */
+    public synchronized BitSet getCalledAPIIds(SubCFG subCFG, Collection<String> filters) throws IOException {
+        MethodContext methodContext = subCFG.getMethodContext();
+        if (methodContext == null)
+            return IPCFG.buildIPCFG(this.jarContext, subCFG, true).getCalledAPIIds(filters);
+
+        BitSet result = new BitSet();
+        for (ISSABasicBlock basicBlock : subCFG.vertexSet()) {
+            if (basicBlock.isEntryBlock() || basicBlock.isExitBlock())
+                continue;
+
+            for (int id : methodContext.getCalledAPIIds(basicBlock, false))
+                result.set(id);
+
+            for (MethodContext callee : this.getCalleesInJar(basicBlock))
+                result.or(this.getSummary(callee));
+        }
+
+        return IPCFG.filterAPIIds(result, filters);
+    }
+
+    /**
+     * Returns the summary of a method. The result must not be modified.
+     */
+    public synchronized BitSet getSummary(MethodContext methodContext) {
+        String signature = methodContext.getIMethod().getSignature();
+        if (!this.summaries.containsKey(signature))
+            this.summarize(methodContext);
+
+        return this.summaries.get(signature);
+    }
+
+    private void summarize(MethodContext root) {
+        Map<String, MethodContext> contexts = new HashMap<>();
+        Map<String, List<String>> callees = new HashMap<>();
+        contexts.put(root.getIMethod().getSignature(), root);
+
+        // Methods already summarized are not visited again: they belong to components that are already complete
+        List<List<String>> components = GraphUtils.getStronglyConnectedComponents(
+                Collections.singletonList(root.getIMethod().getSignature()),
+                signature -> {
+                    if (this.summaries.containsKey(signature))
+                        return Collections.emptyList();
+
+                    List<String> result = new ArrayList<>();
+                    for (MethodContext callee : this.getCalleesInJar(contexts.get(signature))) {
+                        String calleeSignature = callee.getIMethod().getSignature();
+                        contexts.putIfAbsent(calleeSignature, callee);
+                        result.add(calleeSignature);
+                    }
+
+                    callees.put(signature, result);
+                    return result;
+                });
+
+        // Components come in reverse topological order, so the summaries of the callees are already available
+        for (List<String> component : components) {
+            if (this.summaries.containsKey(component.get(0)))
+                continue;
+
+            Set<String> members = new HashSet<>(component);
+            BitSet summary = new BitSet();
+            for (String signature : component) {
+                summary.or(this.getDirectAPIIds(contexts.get(signature)));
+
+                for (String callee : callees.get(signature)) {
+                    if (!members.contains(callee))
+                        summary.or(this.summaries.get(callee));
+                }
+            }
+
+            for (String signature : component) {
+                this.summaries.put(signature, summary);
+            }
+        }
+    }
+
+    private BitSet getDirectAPIIds(MethodContext methodContext) {
+        BitSet result = new BitSet();
+        if (methodContext.getIntermediateRepresentation() == null)
+            return result;
+
+        try {
+            for (ISSABasicBlock basicBlock : methodContext.getIntermediateRepresentation().getControlFlowGraph()) {
+                if (basicBlock.isEntryBlock() || basicBlock.isExitBlock())
+                    continue;
+
+                for (int id : methodContext.getCalledAPIIds(basicBlock, false))
+                    result.set(id);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to resolve the calls of " + methodContext.getIMethod().getSignature() + ": " + e.getMessage());
+        }
+
+        return result;
+    }
+
+    private List<MethodContext> getCalleesInJar(MethodContext methodContext) {
+        List<MethodContext> result = new ArrayList<>();
+        if (methodContext.getIntermediateRepresentation() == null)
+            return result;
+
+        SSACFG cfg = methodContext.getIntermediateRepresentation().getControlFlowGraph();
+        try {
+            for (ISSABasicBlock basicBlock : cfg) {
+                if (!basicBlock.isEntryBlock() && !basicBlock.isExitBlock())
+                    result.addAll(this.getCalleesInJar(basicBlock));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to resolve the calls of " + methodContext.getIMethod().getSignature() + ": " + e.getMessage());
+        }
+
+        return result;
+    }
+
+    private List<MethodContext> getCalleesInJar(ISSABasicBlock basicBlock) throws IOException {
+        List<MethodContext> result = new ArrayList<>();
+        for (SSAInstruction instruction : basicBlock) {
+            if (instruction instanceof SSAAbstractInvokeInstruction) {
+                SSAAbstractInvokeInstruction invokeInstruction = (SSAAbstractInvokeInstruction) instruction;
+                ResolvedCall resolvedCall = this.jarContext.resolveCall(invokeInstruction.getDeclaredTarget());
+
+                // Same resolution of the callee as in IPCFG.buildFromSubCFG
+                if (resolvedCall.isInJar()) {
+                    result.add(this.jarContext
+                            .resolveClassContext(invokeInstruction.getDeclaredTarget().getDeclaringClass().getName().toString())
+                            .resolveMethodContext(resolvedCall.getMethod()));
+                }
+            }
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,274 @@
+package it.unimol.acryl.graphs;
+
+import com.ibm.wala.ssa.ISSABasicBlock;
+import com.ibm.wala.ssa.SSACFG;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Compressed sparse row representation of the CFG of a method over the numbers of its basic blocks. The successors of
+ * each block are stored contiguously, normal successors first and then the exceptional ones that are not also normal;
+ * predecessors are stored in the same way. Parts of the CFG are {@link SubCFG}s, i.e., masks of block numbers over a
+ * shared CompactCFG, so they do not copy the graph.
+ */
+public class CompactCFG {
+    private final SSACFG cfg;
+    private final ISSABasicBlock[] blocks;
+
+    private final int[] successorStart;
+    private final int[] normalSuccessorEnd;
+    private final int[] successors;
+
+    private final int[] predecessorStart;
+    private final int[] normalPredecessorEnd;
+    private final int[] predecessors;
+
+    private int[] immediatePostDominators;
+
+    public CompactCFG(SSACFG cfg) {
+        this.cfg = cfg;
+
+        int size = cfg.getMaxNumber() + 1;
+        this.blocks = new ISSABasicBlock[size];
+        for (ISSABasicBlock block : cfg) {
+            this.blocks[block.getNumber()] = block;
+        }
+
+        this.successorStart         = new int[size + 1];
+        this.normalSuccessorEnd     = new int[size];
+        int[] successors            = new int[16];
+        int edges = 0;
+        for (int number = 0; number < size; number++) {
+            this.successorStart[number] = edges;
+            ISSABasicBlock block = this.blocks[number];
+            if (block != null) {
+                for (ISSABasicBlock successor : cfg.getNormalSuccessors(block)) {
+                    successors = append(successors, edges++, successor.getNumber());
+                }
+                this.normalSuccessorEnd[number] = edges;
+
+                for (ISSABasicBlock successor : cfg.getExceptionalSuccessors(block)) {
+                    if (!contains(successors, this.successorStart[number], edges, successor.getNumber()))
+                        successors = append(successors, edges++, successor.getNumber());
+                }
+            } else {
+                this.normalSuccessorEnd[number] = edges;
+            }
+        }
+        this.successorStart[size] = edges;
+        this.successors = Arrays.copyOf(successors, edges);
+
+        // Predecessors are the transposition of the successors, in increasing order of block number
+        this.predecessorStart       = new int[size + 1];
+        this.normalPredecessorEnd   = new int[size];
+        this.predecessors           = new int[edges];
+        int[] normalCounts = new int[size];
+        int[] counts = new int[size];
+        for (int number = 0; number < size; number++) {
+            for (int i = this.successorStart[number]; i < this.successorStart[number + 1]; i++) {
+                counts[this.successors[i]]++;
+                if (i < this.normalSuccessorEnd[number])
+                    normalCounts[this.successors[i]]++;
+            }
+        }
+
+        int[] nextNormal = new int[size];
+        int[] nextExceptional = new int[size];
+        for (int number = 0; number < size; number++) {
+            this.predecessorStart[number + 1] = this.predecessorStart[number] + counts[number];
+            this.normalPredecessorEnd[number] = this.predecessorStart[number] + normalCounts[number];
+            nextNormal[number] = this.predecessorStart[number];
+            nextExceptional[number] = this.normalPredecessorEnd[number];
+        }
+
+        for (int number = 0; number < size; number++) {
+            for (int i = this.successorStart[number]; i < this.successorStart[number + 1]; i++) {
+                int successor = this.successors[i];
+                if (i < this.normalSuccessorEnd[number])
+                    this.predecessors[nextNormal[successor]++] = number;
+                else
+                    this.predecessors[nextExceptional[successor]++] = number;
+            }
+        }
+    }
+
+    private static int[] append(int[] array, int position, int value) {
+        if (position == array.length)
+            array = Arrays.copyOf(array, array.length * 2);
+
+        array[position] = value;
+        return array;
+    }
+
+    private static boolean contains(int[] array, int from, int to, int value) {
+        for (int i = from; i < to; i++) {
+            if (array[i] == value)
+                return true;
+        }
+
+        return false;
+    }
+
+    public SSACFG getCFG() {
+        return cfg;
+    }
+
+    /**
+     * Returns the number of block numbers, i.e., the maximum block number plus one
+     */
+    public int size() {
+        return this.blocks.length;
+    }
+
+    /**
+     * Returns the block with the given number (null if there is no such block)
+     */
+    public ISSABasicBlock getBlock(int number) {
+        return this.blocks[number];
+    }
+
+    /**
+     * Returns the numbers of all the blocks
+     */
+    public BitSet getAllBlocks() {
+        BitSet result = new BitSet(this.blocks.length);
+        for (int number = 0; number < this.blocks.length; number++) {
+            if (this.blocks[number] != null)
+                result.set(number);
+        }
+
+        return result;
+    }
+
+    /**
+     * Successors of a block are the values {@link #getSuccessor(int)} from this position (included)...
+     */
+    public int getSuccessorStart(int number) {
+        return this.successorStart[number];
+    }
+
+    /**
+     * ...to this one (excluded), if exceptional successors are considered...
+     */
+    public int getSuccessorEnd(int number) {
+        return this.successorStart[number + 1];
+    }
+
+    /**
+     * ...or to this one (excluded), otherwise
+     */
+    public int getNormalSuccessorEnd(int number) {
+        return this.normalSuccessorEnd[number];
+    }
+
+    public int getSuccessor(int position) {
+        return this.successors[position];
+    }
+
+    /**
+     * Same as {@link #getSuccessorStart(int)}, for the predecessors
+     */
+    public int getPredecessorStart(int number) {
+        return this.predecessorStart[number];
+    }
+
+    public int getPredecessorEnd(int number) {
+        return this.predecessorStart[number + 1];
+    }
+
+    public int getNormalPredecessorEnd(int number) {
+        return this.normalPredecessorEnd[number];
+    }
+
+    public int getPredecessor(int position) {
+        return this.predecessors[position];
+    }
+
+    /**
+     * Returns the immediate post-dominator of a block, considering only normal edges
+     * @return the number of the immediate post-dominator, or -1 if the block is the exit or if it does not reach it
+     */
+    public int getImmediatePostDominator(int number) {
+        if (this.immediatePostDominators == null)
+            this.immediatePostDominators = this.computeImmediatePostDominators();
+
+        return this.immediatePostDominators[number];
+    }
+
+    /**
+     * Computes the post-dominators according to "A Simple, Fast Dominance Algorithm" (Cooper et al.), on the reversed
+     * graph, using the post-order of a visit from the exit
+     */
+    private int[] computeImmediatePostDominators() {
+        int size = this.blocks.length;
+        int exit = this.cfg.exit().getNumber();
+
+        int[] order = new int[size];
+        Arrays.fill(order, -1);
+        int[] postOrder = new int[size];
+        int visited = 0;
+
+        boolean[] discovered = new boolean[size];
+        int[] stack = new int[size];
+        int[] next = new int[size];
+        int top = 0;
+        stack[top++] = exit;
+        discovered[exit] = true;
+        next[exit] = this.predecessorStart[exit];
+        while (top > 0) {
+            int block = stack[top - 1];
+            if (next[block] < this.normalPredecessorEnd[block]) {
+                int predecessor = this.predecessors[next[block]++];
+                if (!discovered[predecessor]) {
+                    discovered[predecessor] = true;
+                    next[predecessor] = this.predecessorStart[predecessor];
+                    stack[top++] = predecessor;
+                }
+            } else {
+                top--;
+                order[block] = visited;
+                postOrder[visited++] = block;
+            }
+        }
+
+        int[] dominators = new int[size];
+        Arrays.fill(dominators, -1);
+        dominators[exit] = exit;
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = visited - 2; i >= 0; i--) {
+                int block = postOrder[i];
+                int newDominator = -1;
+                for (int j = this.successorStart[block]; j < this.normalSuccessorEnd[block]; j++) {
+                    int successor = this.successors[j];
+                    if (dominators[successor] == -1)
+                        continue;
+
+                    newDominator = newDominator == -1 ? successor : intersect(dominators, order, successor, newDominator);
+                }
+
+                if (dominators[block] != newDominator) {
+                    dominators[block] = newDominator;
+                    changed = true;
+                }
+            }
+        }
+
+        dominators[exit] = -1;
+        return dominators;
+    }
+
+    private static int intersect(int[] dominators, int[] order, int first, int second) {
+        while (first != second) {
+            while (order[first] < order[second])
+                first = dominators[first];
+            while (order[second] < order[first])
+                second = dominators[second];
+        }
+
+        return first;
+    }
+}
@@ -4,9 +4,10 @@ import com.ibm.wala.ssa.ISSABasicBlock;
 import com.ibm.wala.ssa.SSAAbstractInvokeInstruction;
 import com.ibm.wala.ssa.SSACFG;
 import com.ibm.wala.ssa.SSAInstruction;
-import it.unimol.acryl.static_analysis.contexts.ClassContext;
 import it.unimol.acryl.static_analysis.contexts.JarContext;
 import it.unimol.acryl.static_analysis.contexts.MethodContext;
+import it.unimol.acryl.static_analysis.contexts.ResolvedCall;
+import it.unimol.acryl.static_analysis.utils.ApiSymbolTable;
 import org.jgrapht.Graph;
 import org.jgrapht.ext.StringComponentNameProvider;
 import org.jgrapht.graph.DefaultDirectedGraph;
@@ -27,6 +28,8 @@ public class IPCFG extends DefaultDirectedGraph<InternalBlock, DefaultEdge> {
     private final boolean interProcedural;
 
     private final Map<String, InternalBlock> includedMethods;
+    private final Map<MethodContext, Set<ISSABasicBlock>> sourceBlocks;
+    private boolean summarizable;
 
     public IPCFG(JarContext context, boolean interProcedural) {
         super(DefaultEdge.class);
@@ -39,6 +42,8 @@ public class IPCFG extends DefaultDirectedGraph<InternalBlock, DefaultEdge> {
         this.context = context;
 
         this.includedMethods = new HashMap<>();
+        this.sourceBlocks = new HashMap<>();
+        this.summarizable = true;
     }
 
     public boolean isInterProcedural() {
@@ -71,43 +76,107 @@ public class IPCFG extends DefaultDirectedGraph<InternalBlock, DefaultEdge> {
     }
 
     public Collection<String> getCalledAPIs(Collection<String> filters) {
-        Set<String> apiCalls = new HashSet<>();
+        return ApiSymbolTable.getInstance().getSignatures(this.getCalledAPIIds(filters));
+    }
 
-        for (InternalBlock internalBlock : this.vertexSet()) {
-            for (SSAInstruction instruction : internalBlock.getInstructions()) {
-                if (instruction instanceof SSAAbstractInvokeInstruction) {
-                    SSAAbstractInvokeInstruction invokeInstruction = (SSAAbstractInvokeInstruction) instruction;
+    /**
+     * Same as {@link #getCalledAPIs(Collection)}, with the APIs represented by their ids in the {@link ApiSymbolTable}.
+     * The result is the union of the (memoized) summaries of the blocks of the methods included in the graph.
+     * @param filters prefixes of the APIs to consider (all of them if empty)
+     * @return ids of the called APIs
+     */
+    public BitSet getCalledAPIIds(Collection<String> filters) {
+        BitSet apiCalls = new BitSet();
+        try {
+            if (this.summarizable)
+                this.collectSummarizedAPIs(apiCalls);
+            else
+                this.collectCalledAPIs(apiCalls);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to resolve the called APIs: " + e.getMessage());
+        }
 
-                    String className = invokeInstruction.getDeclaredTarget().getDeclaringClass().getName().toString();
-                    ClassContext classContext = this.context.resolveClassContext(className);
+        return filterAPIIds(apiCalls, filters);
+    }
 
-                    String methodSelector = invokeInstruction.getDeclaredTarget().getSelector().toString();
+    /**
+     * Removes from a set of API ids the ones not matching any of the given prefixes
+     * @param apiIds ids of the APIs, modified in place
+     * @param filters prefixes of the APIs to keep (all of them if empty)
+     * @return the given set
+     */
+    public static BitSet filterAPIIds(BitSet apiIds, Collection<String> filters) {
+        if (filters.size() > 0) {
+            ApiSymbolTable symbolTable = ApiSymbolTable.getInstance();
+            for (int id = apiIds.nextSetBit(0); id >= 0; id = apiIds.nextSetBit(id + 1)) {
+                String calledMethodSignature = symbolTable.getSignature(id);
+
+                boolean isOk = false;
+                for (String filter : filters) {
+                    if (calledMethodSignature.startsWith(filter))
+                        isOk = true;
+                }
 
-                    String calledMethodSignature;
-                    try {
-                        MethodContext calledMethodContext = classContext.resolveMethodContext(methodSelector);
-                        calledMethodSignature = calledMethodContext.getIMethod().getSignature();
-                    } catch (RuntimeException e) {
-                        calledMethodSignature = "<??? Not resolved ???>";
-                    }
+                if (!isOk)
+                    apiIds.clear(id);
+            }
+        }
 
-                    boolean isOk = false;
-                    if (filters.size() == 0) {
-                        isOk = true;
-                    } else {
-                        for (String filter : filters) {
-                            if (calledMethodSignature.startsWith(filter))
-                                isOk = true;
-                        }
-                    }
+        return apiIds;
+    }
 
-                    if (isOk)
-                        apiCalls.add(calledMethodSignature);
-                }
+    private void collectSummarizedAPIs(BitSet apiCalls) throws IOException {
+        // Calls towards methods of the jar are replaced by the callees when the graph is inter-procedural
+        for (Map.Entry<MethodContext, Set<ISSABasicBlock>> entry : this.sourceBlocks.entrySet()) {
+            for (ISSABasicBlock basicBlock : entry.getValue()) {
+                for (int id : entry.getKey().getCalledAPIIds(basicBlock, !this.interProcedural))
+                    apiCalls.set(id);
             }
         }
+    }
 
-        return apiCalls;
+    private void collectCalledAPIs(BitSet apiCalls) throws IOException {
+        for (InternalBlock internalBlock : this.vertexSet()) {
+            collectCalledAPIs(this.context, internalBlock.getInstructions(), apiCalls);
+        }
+    }
+
+    private static void collectCalledAPIs(JarContext context, Iterable<SSAInstruction> instructions, BitSet apiCalls) throws IOException {
+        for (SSAInstruction instruction : instructions) {
+            if (instruction instanceof SSAAbstractInvokeInstruction) {
+                SSAAbstractInvokeInstruction invokeInstruction = (SSAAbstractInvokeInstruction) instruction;
+
+                int apiId = context.resolveCall(invokeInstruction.getDeclaredTarget()).getApiId();
+                if (apiId != ApiSymbolTable.UNKNOWN)
+                    apiCalls.set(apiId);
+            }
+        }
+    }
+
+    /**
+     * Returns the same APIs as {@code buildIPCFG(jarContext, subCFG, false).getCalledAPIIds(filters)}, walking the
+     * blocks of the sub-CFG without building the graph. It should be used when the graph is needed only for the APIs.
+     * @param jarContext context of the jar
+     * @param subCFG part of a method
+     * @param filters prefixes of the APIs to consider (all of them if empty)
+     * @return ids of the called APIs
+     */
+    public static BitSet getCalledAPIIds(JarContext jarContext, SubCFG subCFG, Collection<String> filters) throws IOException {
+        BitSet apiCalls = new BitSet();
+        MethodContext methodContext = subCFG.getMethodContext();
+        for (ISSABasicBlock basicBlock : subCFG.vertexSet()) {
+            if (basicBlock.isEntryBlock() || basicBlock.isExitBlock())
+                continue;
+
+            if (methodContext != null) {
+                for (int id : methodContext.getCalledAPIIds(basicBlock, true))
+                    apiCalls.set(id);
+            } else {
+                collectCalledAPIs(jarContext, basicBlock, apiCalls);
+            }
+        }
+
+        return filterAPIIds(apiCalls, filters);
     }
 
     @Override
@@ -148,10 +217,19 @@ public class IPCFG extends DefaultDirectedGraph<InternalBlock, DefaultEdge> {
 
         Map<ISSABasicBlock, InternalBlock> internalBlocks = new HashMap<>();
 
+        Set<ISSABasicBlock> sourceBlocks = null;
+        if (cfg.getMethodContext() != null)
+            sourceBlocks = ipcfg.sourceBlocks.computeIfAbsent(cfg.getMethodContext(), key -> new HashSet<>());
+        else
+            ipcfg.summarizable = false;
+
         for (ISSABasicBlock basicBlock : cfg.vertexSet()) {
             if (basicBlock.isEntryBlock() || basicBlock.isExitBlock())
                 continue;
 
+            if (sourceBlocks != null)
+                sourceBlocks.add(basicBlock);
+
             if (!internalBlocks.containsKey(basicBlock)) {
                 internalBlocks.put(basicBlock, new InternalBlock());
                 ipcfg.addVertex(internalBlocks.get(basicBlock));
@@ -170,26 +248,16 @@ public class IPCFG extends DefaultDirectedGraph<InternalBlock, DefaultEdge> {
                 if (instruction instanceof SSAAbstractInvokeInstruction) {
                     SSAAbstractInvokeInstruction invokeInstruction = (SSAAbstractInvokeInstruction) instruction;
 
-                    String className = invokeInstruction.getDeclaredTarget().getDeclaringClass().getName().toString();
-                    ClassContext classContext = jarContext.resolveClassContext(className);
+                    ResolvedCall resolvedCall = jarContext.resolveCall(invokeInstruction.getDeclaredTarget());
+                    String calledMethodSignature = resolvedCall.getSignature();
 
-                    String methodSelector = invokeInstruction.getDeclaredTarget().getSelector().toString();
-
-                    MethodContext calledMethodContext = null;
-                    String calledMethodSignature;
-                    boolean isClassInJar = false;
-                    try {
-                        calledMethodContext = classContext.resolveMethodContext(methodSelector);
-                        calledMethodSignature = calledMethodContext.getIMethod().getSignature();
-                        isClassInJar = jarContext.isClassInJar(jarContext.resolveClassContext(calledMethodContext.getIMethod().getDeclaringClass()), false);
-                    } catch (RuntimeException e) {
-                        calledMethodSignature = "<??? Not resolved ???>";
-                    }
-
-                    if (ipcfg.isInterProcedural() && isClassInJar) {
+                    if (ipcfg.isInterProcedural() && resolvedCall.isInJar()) {
                         InternalBlock otherHead;
                         InternalBlock otherTail;
                         if (!ipcfg.includesMethod(calledMethodSignature)) {
+                            MethodContext calledMethodContext = jarContext
+                                    .resolveClassContext(invokeInstruction.getDeclaredTarget().getDeclaringClass().getName().toString())
+                                    .resolveMethodContext(resolvedCall.getMethod());
                             InternalBlock[] blocks = buildFromMethod(ipcfg, calledMethodContext);
                             otherHead = blocks[0];
                             otherTail = blocks[1];
@@ -211,9 +279,7 @@ public class IPCFG extends DefaultDirectedGraph<InternalBlock, DefaultEdge> {
                 }
             }
 
-            for (DefaultEdge edge : cfg.outgoingEdgesOf(basicBlock)) {
-                ISSABasicBlock successor = cfg.getEdgeTarget(edge);
-
+            for (ISSABasicBlock successor : cfg.getSuccessors(basicBlock)) {
                 if (!internalBlocks.containsKey(successor)) {
                     internalBlocks.put(successor, new InternalBlock());
                     ipcfg.addVertex(internalBlocks.get(successor));
@@ -250,6 +316,7 @@ public class IPCFG extends DefaultDirectedGraph<InternalBlock, DefaultEdge> {
 
         SSACFG cfg = methodContext.getIntermediateRepresentation().getControlFlowGraph();
         SubCFG subCFG = new SubCFG(cfg);
+        subCFG.setMethodContext(methodContext);
 
         return buildFromSubCFG(
                 ipcfg,
@@ -8,69 +8,119 @@ import it.unimol.acryl.static_analysis.contexts.MethodContext;
 import org.jgrapht.graph.DefaultDirectedGraph;
 import org.jgrapht.graph.DefaultEdge;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Comparator;
-import java.util.List;
+import java.util.*;
 import java.util.logging.Logger;
 
 /**
+ * Part of the CFG of a method, i.e., a set of its blocks. It is a view over a {@link CompactCFG}, which may be shared by
+ * many parts of the same method. Edges are the ones of the CFG among the blocks of the part (exceptional edges
+ * optionally included). Use {@link #toGraph()} to get a jgrapht graph (e.g., for exporting it).
+ *
  * @author Simone Scalabrino.
  */
-public class SubCFG extends DefaultDirectedGraph<ISSABasicBlock, DefaultEdge> implements Cloneable {
+public class SubCFG {
+    private final CompactCFG graph;
+    private final BitSet blocks;
+    private final boolean addExceptional;
+    private final Set<ISSABasicBlock> vertexSet;
     private MethodContext methodContext;
     private List<Integer> involvedJavaLines;
 
+    /**
+     * Creates a part of the CFG
+     * @param graph CFG of the method
+     * @param blocks numbers of the blocks of the part (not copied: it must not be modified afterwards)
+     * @param addExceptional if true, also exceptional edges are considered
+     */
+    public SubCFG(CompactCFG graph, BitSet blocks, boolean addExceptional) {
+        this.graph          = graph;
+        this.blocks         = blocks;
+        this.addExceptional = addExceptional;
+        this.vertexSet      = new BlockSet();
+    }
+
     public SubCFG(SSACFG cfg, boolean addExceptional, Collection<ISSABasicBlock> blocks) {
-        super(DefaultEdge.class);
+        this(new CompactCFG(cfg), toMask(blocks), addExceptional);
+    }
+
+    public SubCFG(SSACFG cfg, Collection<ISSABasicBlock> blocks) {
+        this(cfg, true, blocks);
+    }
+
+    public SubCFG(SSACFG cfg, boolean addExceptional) {
+        this(new CompactCFG(cfg), addExceptional);
+    }
+
+    public SubCFG(SSACFG cfg) {
+        this(cfg, true);
+    }
+
+    private SubCFG(CompactCFG graph, boolean addExceptional) {
+        this(graph, graph.getAllBlocks(), addExceptional);
+    }
 
+    private static BitSet toMask(Collection<ISSABasicBlock> blocks) {
+        BitSet result = new BitSet();
         for (ISSABasicBlock block : blocks) {
-            this.addVertex(block);
+            result.set(block.getNumber());
         }
 
-        for (ISSABasicBlock block : blocks) {
-            for (ISSABasicBlock successor : cfg.getNormalSuccessors(block)) {
-                if (blocks.contains(successor)) {
-                    this.addEdge(block, successor);
-                }
-            }
+        return result;
+    }
 
-            if (addExceptional) {
-                for (ISSABasicBlock successor : cfg.getExceptionalSuccessors(block)) {
-                    if (blocks.contains(successor)) {
-                        this.addEdge(block, successor);
-                    }
-                }
-            }
-        }
+    public CompactCFG getGraph() {
+        return graph;
     }
 
-    public SubCFG(SSACFG cfg, Collection<ISSABasicBlock> blocks) {
-        this(cfg, true, blocks);
+    /**
+     * Returns the blocks of the part, in increasing order of number
+     */
+    public Set<ISSABasicBlock> vertexSet() {
+        return vertexSet;
     }
 
-    public SubCFG(SSACFG cfg, boolean addExceptional) {
-        super(DefaultEdge.class);
+    public boolean containsVertex(ISSABasicBlock block) {
+        return this.blocks.get(block.getNumber());
+    }
 
-        for (ISSABasicBlock block : cfg) {
-            this.addVertex(block);
+    /**
+     * Returns the successors of a block of the part that belong to the part: normal successors first, then the
+     * exceptional ones (if considered)
+     */
+    public List<ISSABasicBlock> getSuccessors(ISSABasicBlock block) {
+        int number = block.getNumber();
+        int end = this.addExceptional ? this.graph.getSuccessorEnd(number) : this.graph.getNormalSuccessorEnd(number);
+
+        List<ISSABasicBlock> result = new ArrayList<>(end - this.graph.getSuccessorStart(number));
+        for (int i = this.graph.getSuccessorStart(number); i < end; i++) {
+            int successor = this.graph.getSuccessor(i);
+            if (this.blocks.get(successor))
+                result.add(this.graph.getBlock(successor));
         }
 
-        for (ISSABasicBlock block : cfg) {
-            for (ISSABasicBlock successor : cfg.getNormalSuccessors(block)) {
-                this.addEdge(block, successor);
-            }
+        return result;
+    }
 
-            if (addExceptional) {
-                for (ISSABasicBlock successor : cfg.getExceptionalSuccessors(block)) {
-                    this.addEdge(block, successor);
-                }
+    /**
+     * Builds a jgrapht graph with the blocks and the edges of the part
+     */
+    public DefaultDirectedGraph<ISSABasicBlock, DefaultEdge> toGraph() {
+        DefaultDirectedGraph<ISSABasicBlock, DefaultEdge> result = new DefaultDirectedGraph<>(DefaultEdge.class);
+        for (ISSABasicBlock block : this.vertexSet) {
+            result.addVertex(block);
+        }
+
+        for (ISSABasicBlock block : this.vertexSet) {
+            for (ISSABasicBlock successor : this.getSuccessors(block)) {
+                result.addEdge(block, successor);
             }
         }
+
+        return result;
     }
 
-    public SubCFG(SSACFG cfg) {
-        this(cfg, true);
+    public MethodContext getMethodContext() {
+        return methodContext;
     }
 
     public void setMethodContext(MethodContext methodContext) {
@@ -110,6 +160,44 @@ public class SubCFG extends DefaultDirectedGraph<ISSABasicBlock, DefaultEdge> im
     }
 
     public SubCFG copy() {
-        return ((SubCFG) this.clone());
+        SubCFG result = new SubCFG(this.graph, this.blocks, this.addExceptional);
+        result.methodContext = this.methodContext;
+        return result;
+    }
+
+    private class BlockSet extends AbstractSet<ISSABasicBlock> {
+        private final int size = blocks.cardinality();
+
+        @Override
+        public Iterator<ISSABasicBlock> iterator() {
+            return new Iterator<ISSABasicBlock>() {
+                private int next = blocks.nextSetBit(0);
+
+                @Override
+                public boolean hasNext() {
+                    return next >= 0;
+                }
+
+                @Override
+                public ISSABasicBlock next() {
+                    if (next < 0)
+                        throw new NoSuchElementException();
+
+                    ISSABasicBlock result = graph.getBlock(next);
+                    next = blocks.nextSetBit(next + 1);
+                    return result;
+                }
+            };
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof ISSABasicBlock && containsVertex((ISSABasicBlock) o);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
     }
 }
@@ -1,5 +1,6 @@
 package it.unimol.acryl.lifetime;
 
+import it.unimol.acryl.static_analysis.utils.ApiSymbolTable;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 
@@ -18,9 +19,24 @@ import java.util.regex.Pattern;
  */
 public class APILifetime {
     private final Map<String, APILife> lifeMap;
+    private final APILife[] lifeById;
 
     public APILifetime(Map<String, APILife> lifeMap) {
         this.lifeMap = lifeMap;
+
+        ApiSymbolTable symbolTable = ApiSymbolTable.getInstance();
+        Map<Integer, APILife> lives = new HashMap<>();
+        int maxId = -1;
+        for (Map.Entry<String, APILife> entry : lifeMap.entrySet()) {
+            int id = symbolTable.getOrCreateId(entry.getKey());
+            lives.put(id, entry.getValue());
+            maxId = Math.max(maxId, id);
+        }
+
+        this.lifeById = new APILife[maxId + 1];
+        for (Map.Entry<Integer, APILife> entry : lives.entrySet()) {
+            this.lifeById[entry.getKey()] = entry.getValue();
+        }
     }
 
     public APILife getLifeFor(String signature) {
@@ -30,6 +46,18 @@ public class APILifetime {
             return new APILife(signature, 0, -1);
     }
 
+    /**
+     * Same as {@link #getLifeFor(String)}, with the API represented by its id in the {@link ApiSymbolTable}
+     * @param apiId id of the API
+     * @return the life of the API
+     */
+    public APILife getLifeFor(int apiId) {
+        if (apiId >= 0 && apiId < this.lifeById.length && this.lifeById[apiId] != null)
+            return this.lifeById[apiId];
+        else
+            return new APILife(apiId >= 0 ? ApiSymbolTable.getInstance().getSignature(apiId) : null, 0, -1);
+    }
+
     public int size() {
         return this.lifeMap.size();
     }
@@ -0,0 +1,89 @@
+package it.unimol.acryl.reports;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Immutable line of a TSV report, with the keys used to sort it. Rows do not keep references to the analysis
+ * structures (e.g., IRs), so they can be retained (or spilled to disk) until the report is written.
+ */
+public final class ReportRow {
+    private final int priority;
+    private final double confidence;
+    private final String line;
+
+    public ReportRow(int priority, double confidence, Object... values) {
+        this(priority, confidence, join(values));
+    }
+
+    ReportRow(int priority, double confidence, String line) {
+        this.priority   = priority;
+        this.confidence = confidence;
+        this.line       = line;
+    }
+
+    /**
+     * Returns the priority of the row: rows with lower priority come first
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * Returns the confidence of the row: among the rows with the same priority, the ones with higher confidence come first
+     */
+    public double getConfidence() {
+        return confidence;
+    }
+
+    /**
+     * Returns the tab-separated values of the row
+     */
+    public String getLine() {
+        return line;
+    }
+
+    /**
+     * Returns a row with the same sorting keys and the given values before the ones of this row
+     */
+    public ReportRow withLeadingColumns(Object... values) {
+        return new ReportRow(priority, confidence, join(values) + '\t' + line);
+    }
+
+    public void write(DataOutput output) throws IOException {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+
+        output.writeInt(priority);
+        output.writeDouble(confidence);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    public static ReportRow read(DataInput input) throws IOException {
+        int priority = input.readInt();
+        double confidence = input.readDouble();
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+
+        return new ReportRow(priority, confidence, new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    private static String join(Object[] values) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0)
+                line.append('\t');
+
+            line.append(values[i]);
+        }
+
+        return line.toString();
+    }
+
+    @Override
+    public String toString() {
+        return line;
+    }
+}
@@ -0,0 +1,185 @@
+package it.unimol.acryl.reports;
+
+import java.io.*;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Writes a TSV report whose rows are sorted by priority (ascending) and confidence (descending). Rows with the same
+ * keys are written in the order they were added. At most a fixed number of rows is kept in memory: when the buffer
+ * is full, it is sorted and spilled to a temporary file; all the sorted runs are merged when the writer is closed.
+ */
+public class SortedReportWriter implements Closeable {
+    public static final int DEFAULT_ROWS_IN_MEMORY = 50_000;
+
+    private static final Comparator<SequencedRow> ORDER = Comparator
+            .comparingInt((SequencedRow row) -> row.row.getPriority())
+            .thenComparing((row1, row2) -> -Double.compare(row1.row.getConfidence(), row2.row.getConfidence()))
+            .thenComparingLong(row -> row.sequence);
+
+    private final File outputFile;
+    private final String header;
+    private final int maxRowsInMemory;
+    private final List<SequencedRow> buffer;
+    private final List<File> runs;
+    private long sequence;
+    private boolean closed;
+
+    public SortedReportWriter(File outputFile, String header) {
+        this(outputFile, header, DEFAULT_ROWS_IN_MEMORY);
+    }
+
+    public SortedReportWriter(File outputFile, String header, int maxRowsInMemory) {
+        this.outputFile      = outputFile;
+        this.header          = header;
+        this.maxRowsInMemory = Math.max(1, maxRowsInMemory);
+        this.buffer          = new ArrayList<>();
+        this.runs            = new ArrayList<>();
+    }
+
+    public synchronized void add(ReportRow row) throws IOException {
+        if (this.closed)
+            throw new RuntimeException("The report was already written");
+
+        this.buffer.add(new SequencedRow(row, this.sequence++));
+        if (this.buffer.size() >= this.maxRowsInMemory)
+            this.spill();
+    }
+
+    public synchronized void addAll(Collection<ReportRow> rows) throws IOException {
+        for (ReportRow row : rows) {
+            this.add(row);
+        }
+    }
+
+    /**
+     * Returns the number of sorted runs spilled to disk so far
+     */
+    public synchronized int getNumberOfRuns() {
+        return this.runs.size();
+    }
+
+    /**
+     * Merges the sorted runs and writes the report
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.closed)
+            return;
+        this.closed = true;
+
+        this.buffer.sort(ORDER);
+
+        List<RunReader> readers = new ArrayList<>();
+        try (PrintWriter writer = new PrintWriter(this.outputFile)) {
+            writer.println(this.header);
+
+            PriorityQueue<RunReader> queue = new PriorityQueue<>((r1, r2) -> ORDER.compare(r1.current, r2.current));
+            for (File run : this.runs) {
+                RunReader reader = new RunReader(run);
+                readers.add(reader);
+                if (reader.advance())
+                    queue.add(reader);
+            }
+
+            Iterator<SequencedRow> memoryRun = this.buffer.iterator();
+            SequencedRow memoryRow = memoryRun.hasNext() ? memoryRun.next() : null;
+            while (memoryRow != null || !queue.isEmpty()) {
+                SequencedRow next;
+                if (queue.isEmpty() || (memoryRow != null && ORDER.compare(memoryRow, queue.peek().current) < 0)) {
+                    next = memoryRow;
+                    memoryRow = memoryRun.hasNext() ? memoryRun.next() : null;
+                } else {
+                    RunReader reader = queue.poll();
+                    next = reader.current;
+                    if (reader.advance())
+                        queue.add(reader);
+                }
+
+                writer.print(next.row.getLine());
+                writer.print("\n");
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+
+            this.deleteRuns();
+        }
+    }
+
+    /**
+     * Drops the rows without writing the report (e.g., because the analysis failed). Does nothing if the report was
+     * already written.
+     */
+    public synchronized void discard() {
+        if (this.closed)
+            return;
+        this.closed = true;
+
+        this.deleteRuns();
+    }
+
+    private void deleteRuns() {
+        for (File run : this.runs) {
+            if (!run.delete())
+                Logger.getAnonymousLogger().warning("Unable to delete the sorted run " + run);
+        }
+
+        this.runs.clear();
+        this.buffer.clear();
+    }
+
+    private void spill() throws IOException {
+        this.buffer.sort(ORDER);
+
+        // Runs are deleted when the writer is closed or discarded
+        File run = File.createTempFile("report", ".run");
+        this.runs.add(run);
+        try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run)))) {
+            for (SequencedRow row : this.buffer) {
+                stream.writeLong(row.sequence);
+                row.row.write(stream);
+            }
+        }
+
+        this.buffer.clear();
+    }
+
+    private static class SequencedRow {
+        private final ReportRow row;
+        private final long sequence;
+
+        private SequencedRow(ReportRow row, long sequence) {
+            this.row      = row;
+            this.sequence = sequence;
+        }
+    }
+
+    private static class RunReader implements Closeable {
+        private final DataInputStream stream;
+        private SequencedRow current;
+
+        private RunReader(File run) throws IOException {
+            this.stream = new DataInputStream(new BufferedInputStream(new FileInputStream(run)));
+        }
+
+        private boolean advance() throws IOException {
+            long sequence;
+            try {
+                sequence = this.stream.readLong();
+            } catch (EOFException e) {
+                this.current = null;
+                return false;
+            }
+
+            this.current = new SequencedRow(ReportRow.read(this.stream), sequence);
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.stream.close();
+        }
+    }
+}
@@ -17,7 +17,8 @@ import java.io.IOException;
 import java.util.Collection;
 
 /**
- * Set of detection rules
+ * Set of detection rules. The detectors do not keep any state, so the same instance can be shared by several
+ * detection threads.
  * @author Simone Scalabrino.
  */
 public class CombinedViolationDetector {
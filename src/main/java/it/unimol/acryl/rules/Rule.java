@@ -1,8 +1,10 @@
 package it.unimol.acryl.rules;
 
 import it.unimol.acryl.analysis.VersionChecker;
+import it.unimol.acryl.static_analysis.utils.ApiSymbolTable;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -13,12 +15,25 @@ public class Rule {
     private final VersionChecker checker;
     private final Collection<String> trueApis;
     private final Collection<String> falseApis;
+    private final Set<String> involvedApis;
+    private final int[] trueApiIds;
+    private final int[] falseApiIds;
+    private final int[] involvedApiIds;
     private double confidence;
 
     public Rule(VersionChecker checker, Collection<String> trueApis, Collection<String> falseApis) {
         this.checker = checker;
         this.trueApis = trueApis;
         this.falseApis = falseApis;
+
+        Set<String> total = new HashSet<>(trueApis);
+        total.addAll(falseApis);
+        this.involvedApis = Collections.unmodifiableSet(total);
+
+        ApiSymbolTable symbolTable = ApiSymbolTable.getInstance();
+        this.trueApiIds     = symbolTable.getSortedIds(trueApis);
+        this.falseApiIds    = symbolTable.getSortedIds(falseApis);
+        this.involvedApiIds = symbolTable.getSortedIds(total);
     }
 
     public Collection<String> getTrueApis() {
@@ -30,9 +45,28 @@ public class Rule {
     }
 
     public Collection<String> getInvolvedApis() {
-        Set<String> total = new HashSet<>(trueApis);
-        total.addAll(falseApis);
-        return total;
+        return involvedApis;
+    }
+
+    /**
+     * @return ids of the true APIs in the {@link ApiSymbolTable}, sorted
+     */
+    public int[] getTrueApiIds() {
+        return trueApiIds;
+    }
+
+    /**
+     * @return ids of the false APIs in the {@link ApiSymbolTable}, sorted
+     */
+    public int[] getFalseApiIds() {
+        return falseApiIds;
+    }
+
+    /**
+     * @return ids of the true and false APIs in the {@link ApiSymbolTable}, sorted
+     */
+    public int[] getInvolvedApiIds() {
+        return involvedApiIds;
     }
 
     public VersionChecker getChecker() {
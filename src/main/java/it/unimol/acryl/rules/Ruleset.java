@@ -1,6 +1,7 @@
 package it.unimol.acryl.rules;
 
 import it.unimol.acryl.analysis.VersionChecker;
+import it.unimol.acryl.static_analysis.utils.ApiSymbolTable;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
@@ -18,8 +19,8 @@ import java.util.logging.Logger;
  * @author Simone Scalabrino.
  */
 public class Ruleset {
-    private final HashMap<String, Set<Rule>> hashMap;
     private final Set<Rule> rules;
+    private volatile RuleIndex index;
 
     public Ruleset(File file, int minApps, double minConfidence) throws IOException {
         this();
@@ -28,45 +29,52 @@ public class Ruleset {
     }
 
     public Ruleset() {
-        this.hashMap = new HashMap<>();
-        this.rules   = new HashSet<>();
+        this.rules   = new LinkedHashSet<>();
     }
 
+    /**
+     * Returns the rules that involve all the known APIs among the given ones and whose true APIs or false APIs are all
+     * among the given ones. Rules are returned in the order in which they were added.
+     * @param apis called APIs
+     * @return matching rules
+     */
     public Collection<Rule> matchingRules(Collection<String> apis) {
         if (apis.size() == 0)
             return new ArrayList<>();
 
-        Set<Rule> matchingRules = new HashSet<>(this.rules);
-
-        //Initial selection of potentially matching rules
-        for (String api : apis) {
-            if (hashMap.containsKey(api)) {
-                matchingRules.retainAll(hashMap.get(api));
-            }
-        }
-
-        Set<Rule> result = new HashSet<>();
-        for (Rule matchingRule : matchingRules) {
-            if (apis.containsAll(matchingRule.getTrueApis()))
-                result.add(matchingRule);
+        return this.getIndex().match(apis);
+    }
 
-            if (apis.containsAll(matchingRule.getFalseApis()))
-                result.add(matchingRule);
-        }
+    /**
+     * Same as {@link #matchingRules(Collection)}, with the APIs represented by their ids in the {@link ApiSymbolTable}
+     * @param apiIds ids of the called APIs
+     * @return matching rules
+     */
+    public Collection<Rule> matchingRules(BitSet apiIds) {
+        if (apiIds.isEmpty())
+            return new ArrayList<>();
 
-        return result;
+        return this.getIndex().match(apiIds);
     }
 
-    public void addRule(Rule rule) {
-        this.rules.add(rule);
+    public synchronized void addRule(Rule rule) {
+        if (this.rules.add(rule))
+            this.index = null;
+    }
 
-        for (String apiSignature : rule.getInvolvedApis()) {
-            if (!hashMap.containsKey(apiSignature)) {
-                hashMap.put(apiSignature, new HashSet<>());
+    private RuleIndex getIndex() {
+        RuleIndex result = this.index;
+        if (result == null) {
+            synchronized (this) {
+                result = this.index;
+                if (result == null) {
+                    result = new RuleIndex(this.rules);
+                    this.index = result;
+                }
             }
-
-            hashMap.get(apiSignature).add(rule);
         }
+
+        return result;
     }
 
     private void load(File file, int minConfidenceLevel, double minConfidence) throws IOException {
@@ -109,4 +117,196 @@ public class Ruleset {
             csvParser.close();
         }
     }
+
+    /**
+     * Inverted index from APIs (ids of the {@link ApiSymbolTable}) to the rules involving them. Matching only visits
+     * the posting lists of the given APIs and counts, for each rule, how many of them are involved, true APIs and
+     * false APIs.
+     */
+    private static final class RuleIndex {
+        private static final int[] NO_RULES = new int[0];
+
+        private final Rule[] rules;
+        private final int[][] involvedPostings;
+        private final int[][] truePostings;
+        private final int[][] falsePostings;
+        private final int[] alwaysMatching;
+        private final ThreadLocal<Scratch> scratch;
+
+        private RuleIndex(Collection<Rule> rules) {
+            this.rules  = rules.toArray(new Rule[0]);
+
+            int apis = 0;
+            for (Rule rule : this.rules) {
+                int[] involvedApiIds = rule.getInvolvedApiIds();
+                if (involvedApiIds.length > 0)
+                    apis = Math.max(apis, involvedApiIds[involvedApiIds.length - 1] + 1);
+            }
+
+            List<List<Integer>> involved    = newPostings(apis);
+            List<List<Integer>> trueRules   = newPostings(apis);
+            List<List<Integer>> falseRules  = newPostings(apis);
+            List<Integer> alwaysMatchingRules = new ArrayList<>();
+
+            for (int ruleId = 0; ruleId < this.rules.length; ruleId++) {
+                Rule rule = this.rules[ruleId];
+
+                for (int api : rule.getInvolvedApiIds()) {
+                    addToPosting(involved, api, ruleId);
+                }
+
+                for (int api : rule.getTrueApiIds()) {
+                    addToPosting(trueRules, api, ruleId);
+                }
+
+                for (int api : rule.getFalseApiIds()) {
+                    addToPosting(falseRules, api, ruleId);
+                }
+
+                // When none of the APIs is known, every rule is a candidate and only the ones with a side without APIs match
+                if (rule.getTrueApiIds().length == 0 || rule.getFalseApiIds().length == 0)
+                    alwaysMatchingRules.add(ruleId);
+            }
+
+            this.involvedPostings   = toArrays(involved);
+            this.truePostings       = toArrays(trueRules);
+            this.falsePostings      = toArrays(falseRules);
+            this.alwaysMatching     = alwaysMatchingRules.stream().mapToInt(Integer::intValue).toArray();
+
+            this.scratch = ThreadLocal.withInitial(() -> new Scratch(this.rules.length, this.involvedPostings.length));
+        }
+
+        private boolean isKnown(int api) {
+            return api >= 0 && api < this.involvedPostings.length && this.involvedPostings[api].length > 0;
+        }
+
+        private Collection<Rule> match(Collection<String> apis) {
+            Scratch scratch = this.scratch.get();
+            ApiSymbolTable symbolTable = ApiSymbolTable.getInstance();
+
+            int knownApis = 0;
+            for (String api : apis) {
+                int id = symbolTable.getId(api);
+                if (this.isKnown(id) && !scratch.seenApis[id]) {
+                    scratch.seenApis[id] = true;
+                    scratch.apis[knownApis++] = id;
+                }
+            }
+
+            for (int i = 0; i < knownApis; i++) {
+                scratch.seenApis[scratch.apis[i]] = false;
+            }
+
+            return this.match(scratch, knownApis);
+        }
+
+        private Collection<Rule> match(BitSet apis) {
+            Scratch scratch = this.scratch.get();
+
+            int knownApis = 0;
+            for (int id = apis.nextSetBit(0); id >= 0 && id < this.involvedPostings.length; id = apis.nextSetBit(id + 1)) {
+                if (this.isKnown(id))
+                    scratch.apis[knownApis++] = id;
+            }
+
+            return this.match(scratch, knownApis);
+        }
+
+        private Collection<Rule> match(Scratch scratch, int knownApis) {
+            List<Rule> result = new ArrayList<>();
+            if (knownApis == 0) {
+                for (int ruleId : this.alwaysMatching) {
+                    result.add(this.rules[ruleId]);
+                }
+
+                return result;
+            }
+
+            int touchedRules = 0;
+            for (int i = 0; i < knownApis; i++) {
+                int api = scratch.apis[i];
+
+                for (int ruleId : this.involvedPostings[api]) {
+                    if (scratch.involvedCounts[ruleId]++ == 0)
+                        scratch.touchedRules[touchedRules++] = ruleId;
+                }
+
+                for (int ruleId : this.truePostings[api]) {
+                    scratch.trueCounts[ruleId]++;
+                }
+
+                for (int ruleId : this.falsePostings[api]) {
+                    scratch.falseCounts[ruleId]++;
+                }
+            }
+
+            int matchingRules = 0;
+            for (int i = 0; i < touchedRules; i++) {
+                int ruleId = scratch.touchedRules[i];
+                Rule rule = this.rules[ruleId];
+
+                if (scratch.involvedCounts[ruleId] == knownApis &&
+                        (scratch.trueCounts[ruleId] == rule.getTrueApiIds().length || scratch.falseCounts[ruleId] == rule.getFalseApiIds().length))
+                    scratch.touchedRules[matchingRules++] = ruleId;
+
+                scratch.involvedCounts[ruleId]  = 0;
+                scratch.trueCounts[ruleId]      = 0;
+                scratch.falseCounts[ruleId]     = 0;
+            }
+
+            Arrays.sort(scratch.touchedRules, 0, matchingRules);
+            for (int i = 0; i < matchingRules; i++) {
+                result.add(this.rules[scratch.touchedRules[i]]);
+            }
+
+            return result;
+        }
+
+        private static void addToPosting(List<List<Integer>> postings, int api, int ruleId) {
+            if (postings.get(api) == null)
+                postings.set(api, new ArrayList<>());
+
+            postings.get(api).add(ruleId);
+        }
+
+        private static List<List<Integer>> newPostings(int apis) {
+            List<List<Integer>> result = new ArrayList<>(apis);
+            for (int i = 0; i < apis; i++) {
+                result.add(null);
+            }
+
+            return result;
+        }
+
+        private static int[][] toArrays(List<List<Integer>> lists) {
+            int[][] result = new int[lists.size()][];
+            for (int i = 0; i < lists.size(); i++) {
+                List<Integer> list = lists.get(i);
+                result[i] = list == null ? NO_RULES : list.stream().mapToInt(Integer::intValue).toArray();
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * Per-thread counters used while matching, kept at zero between matches
+     */
+    private static final class Scratch {
+        private final int[] involvedCounts;
+        private final int[] trueCounts;
+        private final int[] falseCounts;
+        private final int[] touchedRules;
+        private final boolean[] seenApis;
+        private final int[] apis;
+
+        private Scratch(int rules, int apis) {
+            this.involvedCounts = new int[rules];
+            this.trueCounts     = new int[rules];
+            this.falseCounts    = new int[rules];
+            this.touchedRules   = new int[rules];
+            this.seenApis       = new boolean[apis];
+            this.apis           = new int[apis];
+        }
+    }
 }
@@ -31,7 +31,7 @@ public class BackwardCompatibilityBadSmellDetector extends PotentialBackwardComp
         if (apk.getMinSDKVersion() > rule.getChecker().getCheckedVersion())
             return false;
 
-        for (String api : rule.getFalseApis()) {
+        for (int api : rule.getFalseApiIds()) {
             APILife apiLife = this.apiLifetime.getLifeFor(api);
 
             if (apiLife.getMinVersion() > apk.getMinSDKVersion())
@@ -38,7 +38,7 @@ public class BackwardCompatibilityImprovementDetector extends PotentialBackwardC
         if (apk.getMinSDKVersion() <= rule.getChecker().getCheckedVersion())
             return false;
 
-        for (String api : rule.getFalseApis()) {
+        for (int api : rule.getFalseApiIds()) {
             APILife apiLife = this.apiLifetime.getLifeFor(api);
 
             // It is an improvement only if it is a potential bug, i.e., at least one of the APIs did not exist in the past
@@ -29,7 +29,7 @@ public class ForwardCompatibilityImprovementDetector extends PotentialForwardCom
         if (!super.violatesRule(apk, methodContext, codeCheck, rule, apisInCode))
             return false;
 
-        for (String api : rule.getTrueApis()) {
+        for (int api : rule.getTrueApiIds()) {
             APILife apiLife = this.apiLifetime.getLifeFor(api);
 
             if (apiLife.getMaxVersion() < apiLevel && apiLife.getMaxVersion() != -1)
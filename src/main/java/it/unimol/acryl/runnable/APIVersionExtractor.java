@@ -7,8 +7,11 @@ import it.unimol.acryl.analysis.VersionDependentInstructionsExtractor;
 import it.unimol.acryl.analysis.VersionMethodCache;
 import it.unimol.acryl.static_analysis.contexts.ClassContext;
 import it.unimol.acryl.static_analysis.contexts.MethodContext;
+import it.unimol.acryl.graphs.APISummaries;
 import it.unimol.acryl.graphs.IPCFG;
 import it.unimol.acryl.graphs.SubCFG;
+import it.unimol.acryl.reports.ReportRow;
+import it.unimol.acryl.static_analysis.utils.ApiSymbolTable;
 import it.unimol.acryl.topic_analysis.MessageAssigner;
 import org.apache.commons.lang3.StringUtils;
 
@@ -49,7 +52,7 @@ public class APIVersionExtractor extends CommonRunner {
         apkContext.setClassNotFoundHandler(className -> Logger.getAnonymousLogger().warning("Class not found: " + className));
 
         Logger.getAnonymousLogger().info("Labeling methods...");
-        VersionMethodCache cache = new VersionMethodCache(apkContext);
+        VersionMethodCache cache = createVersionMethodCache();
         cache.build();
         Logger.getAnonymousLogger().info("All method labeled!");
 
@@ -68,120 +71,113 @@ public class APIVersionExtractor extends CommonRunner {
         Logger.getAnonymousLogger().info("Starting analysis...");
 
         VersionDependentInstructionsExtractor extractor = new VersionDependentInstructionsExtractor(cache);
-
-        IDProvider idProvider = new IDProvider();
-        List<APIUsageReport> reports = new ArrayList<>();
-        for (IClass iClass : apkContext.getClassesInJar(false)) {
-            // Skip classes belonging to the packages under analysis
-            boolean skipClass = false;
-            String className = iClass.getName().toString();
-            for (String packageUnderAnalysis : PACKAGE_UNDER_ANALYSIS) {
-                if (className.startsWith("L" + packageUnderAnalysis.replace('.', '/'))) {
-                    skipClass = true;
-                    break;
-                }
-            }
-            if (skipClass) {
-                continue;
-            }
-
-            ClassContext classContext = apkContext.resolveClassContext(iClass);
-
-            for (IMethod iMethod : classContext.getNonAbstractMethods()) {
-                MethodContext methodContext = classContext.resolveMethodContext(iMethod);
-                methodContext.getAugmentedSymbolTable().update(cache);
-
-                Map<VersionChecker, SubCFG> versionDependentParts = extractor.extractVersionDependentCFG(methodContext);
-
-                if (versionDependentParts == null)
-                    continue;
-
-                for (Map.Entry<VersionChecker, SubCFG> entry : versionDependentParts.entrySet()) {
-                    IPCFG ipcfg = IPCFG.buildIPCFG(apkContext, entry.getValue());
-                    String calledApis = StringUtils.join(ipcfg.getCalledAPIs(PACKAGE_UNDER_ANALYSIS), "&");
-
-                    int id = idProvider.getAndIncrement();
-
-                    APIUsageReport report = new APIUsageReport();
-                    report.setId(idProvider.getAndIncrement());
-                    report.setCheck(entry.getKey().toString());
-                    report.setSignature(methodContext.getIMethod().getSignature());
-                    report.setApis(calledApis);
-                    report.setMethod(methodContext);
-
-                    reports.add(report);
-                    if (forceGraphExport) {
-                        try {
-                            File dotFile = new File(graphDumpDirectory, appVersion + "|" + id + ".dot");
-
-                            ipcfg.exportGraph(dotFile);
-                        } catch (IOException e) {
-                            Logger.getAnonymousLogger().severe("Error exporting graph " + id);
-                        }
-                    }
+        APISummaries apiSummaries = new APISummaries(apkContext);
+
+        MessageAssigner assigner = null;
+        if (repo != null) {
+            File repoFile = new File(repo);
+            if (repoFile.exists() && repoFile.isDirectory()) {
+                try {
+                    assigner = new MessageAssigner(repoFile);
+                } catch (Throwable e) {
+                    Logger.getAnonymousLogger().warning("The message assigner module failed: " + e.getMessage());
                 }
+            } else {
+                Logger.getAnonymousLogger().warning("The specified repository path is not an existing directory. It will be ignored.");
             }
+        } else {
+            Logger.getAnonymousLogger().info("You did not specify any repository. Assigning empty messages.");
         }
 
-        try {
-            if (repo != null) {
-                File repoFile = new File(repo);
-                if (repoFile.exists() && repoFile.isDirectory()) {
-                    MessageAssigner assigner = new MessageAssigner(repoFile);
+        // Reports are written as soon as they are complete, so that no method context is retained until the end
+        IDProvider idProvider = new IDProvider();
+        try (PrintWriter writer = new PrintWriter(outputFile)) {
+            writer.println("id\tapp\tversion\tsdk_min\tsdk_trg\tcheck\tmethod\tapis\tmessage\tmodified_files");
 
-                    for (APIUsageReport report : reports) {
-                        assigner.assign(report, commit);
+            for (IClass iClass : apkContext.getClassesInJar(false)) {
+                // Skip classes belonging to the packages under analysis
+                boolean skipClass = false;
+                String className = iClass.getName().toString();
+                for (String packageUnderAnalysis : PACKAGE_UNDER_ANALYSIS) {
+                    if (className.startsWith("L" + packageUnderAnalysis.replace('.', '/'))) {
+                        skipClass = true;
+                        break;
                     }
-                } else {
-                    Logger.getAnonymousLogger().warning("The specified repository path is not an existing directory. It will be ignored.");
                 }
-            } else {
-                Logger.getAnonymousLogger().info("You did not specify any repository. Assigning empty messages.");
-            }
-        } catch (Throwable e) {
-            Logger.getAnonymousLogger().warning("The message assigner module failed: " + e.getMessage());
-        }
+                if (skipClass) {
+                    continue;
+                }
 
+                ClassContext classContext = apkContext.resolveClassContext(iClass);
 
-        try (PrintWriter writer = new PrintWriter(outputFile)) {
-            writer.println("id\tapp\tversion\tsdk_min\tsdk_trg\tcheck\tmethod\tapis\tmessage\tmodified_files");
-
-            for (APIUsageReport report : reports) {
-                writer.print(report.getId());
-                writer.print("\t");
+                for (IMethod iMethod : classContext.getNonAbstractMethods()) {
+                    MethodContext methodContext = classContext.resolveMethodContext(iMethod);
+                    methodContext.getAugmentedSymbolTable().update(cache);
 
-                writer.print(appName);
-                writer.print("\t");
+                    Map<VersionChecker, SubCFG> versionDependentParts = extractor.extractVersionDependentCFG(methodContext);
 
-                writer.print(appVersion);
-                writer.print("\t");
+                    if (versionDependentParts == null)
+                        continue;
 
-                writer.print(appSdkMin);
-                writer.print("\t");
+                    for (Map.Entry<VersionChecker, SubCFG> entry : versionDependentParts.entrySet()) {
+                        // The inter-procedural graph is built only for exporting it: the APIs come from the summaries
+                        BitSet apiIds = apiSummaries.getCalledAPIIds(entry.getValue(), PACKAGE_UNDER_ANALYSIS);
+                        String calledApis = StringUtils.join(ApiSymbolTable.getInstance().getSignatures(apiIds), "&");
 
-                writer.print(appSdkTrg);
-                writer.print("\t");
+                        int id = idProvider.getAndIncrement();
 
-                writer.print(report.getCheck());
-                writer.print("\t");
+                        APIUsageReport report = new APIUsageReport();
+                        report.setId(idProvider.getAndIncrement());
+                        report.setCheck(entry.getKey().toString());
+                        report.setSignature(methodContext.getIMethod().getSignature());
+                        report.setApis(calledApis);
+                        report.setMethod(methodContext);
 
-                writer.print(report.getSignature());
-                writer.print("\t");
+                        if (assigner != null) {
+                            try {
+                                assigner.assign(report, commit);
+                            } catch (Throwable e) {
+                                Logger.getAnonymousLogger().warning("The message assigner module failed: " + e.getMessage());
+                                assigner = null;
+                            }
+                        }
 
-                writer.print(report.getApis());
-                writer.print("\t");
+                        writer.print(toRow(report, appName, appVersion, appSdkMin, appSdkTrg).getLine());
+                        writer.print("\n");
 
-                writer.print(report.getMessage() != null ? report.getMessage().replaceAll("\\s+", " ") : "");
-                writer.print("\t");
+                        if (forceGraphExport) {
+                            try {
+                                File dotFile = new File(graphDumpDirectory, appVersion + "|" + id + ".dot");
 
-                writer.print(report.getNumberOfModifiedFiles());
-                writer.print("\n");
+                                IPCFG.buildIPCFG(apkContext, entry.getValue()).exportGraph(dotFile);
+                            } catch (IOException e) {
+                                Logger.getAnonymousLogger().severe("Error exporting graph " + id);
+                            }
+                        }
+                    }
+                }
             }
         }
 
+        logCacheStatistics();
         Logger.getAnonymousLogger().info("All done!");
     }
 
+    private static ReportRow toRow(APIUsageReport report, String appName, String appVersion, String appSdkMin, String appSdkTrg) {
+        return new ReportRow(0, 0,
+                report.getId(),
+                appName,
+                appVersion,
+                appSdkMin,
+                appSdkTrg,
+                report.getCheck(),
+                report.getSignature(),
+                report.getApis(),
+                report.getMessage() != null ? report.getMessage().replaceAll("\\s+", " ") : "",
+                report.getNumberOfModifiedFiles()
+        );
+    }
+
     public static void main(String[] args) throws Exception {
         new APIVersionExtractor().run(args);
     }
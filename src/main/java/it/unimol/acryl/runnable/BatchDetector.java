@@ -0,0 +1,206 @@
+package it.unimol.acryl.runnable;
+
+import it.unimol.acryl.analysis.LibraryCache;
+import it.unimol.acryl.analysis.VersionDependentInstructionsExtractor;
+import it.unimol.acryl.lifetime.APILifetime;
+import it.unimol.acryl.rules.Ruleset;
+import it.unimol.acryl.static_analysis.contexts.JarContext;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Detects problems in many APKs within the same process. The ruleset, the API lifetime and the SDK class loaders are
+ * loaded once and shared by all the analyses; each APK produces its own report in the output directory.
+ */
+public class BatchDetector {
+    private static final int API_LEVEL = 27;
+    private static final long WATCH_INTERVAL = 5000;
+
+    private File outputDirectory;
+    private File rulesFile;
+    private File lifetimeFile;
+    private Ruleset ruleset;
+    private APILifetime apiLifetime;
+    private double minConfidence;
+    private int minApps;
+    private int apiLevel;
+    private int workers;
+    private int threadsPerApk;
+    private File labelCacheFile;
+    private LibraryCache libraryCache;
+    private VersionDependentInstructionsExtractor.UncheckedRegions uncheckedRegions = VersionDependentInstructionsExtractor.UncheckedRegions.BLOCKS;
+    private boolean quick;
+    private boolean compress;
+    private boolean forceExtraction;
+    private boolean forceOverwrite;
+
+    public void run(String[] args) throws Exception {
+        if (args.length < 7) {
+            throw new RuntimeException("Illegal arguments. Specify: " +
+                    "(1) path to Android build tools, " +
+                    "(2) path to Android SDK, " +
+                    "(3) path to dex2jar, " +
+                    "(4) directory containing the APKs (or file listing their paths), " +
+                    "(5) output directory, " +
+                    "(6) ruleset file, " +
+                    "(7) lifetime file");
+        }
+
+        File input = new File(args[3]);
+        outputDirectory = new File(args[4]);
+        rulesFile = new File(args[5]);
+        lifetimeFile = new File(args[6]);
+
+        minConfidence = args.length >= 8 && !args[7].startsWith("--") ? Double.parseDouble(args[7]) : 2;
+        minApps = args.length >= 9 && !args[8].startsWith("--") ? Integer.parseInt(args[8]) : 10;
+        apiLevel = args.length >= 10 && !args[9].startsWith("--") ? Integer.parseInt(args[9]) : API_LEVEL;
+
+        workers = 1;
+        threadsPerApk = -1;
+        boolean watch = false;
+        for (int i = 7; i < args.length; i++) {
+            if (args[i].startsWith("--workers="))
+                workers = Math.max(1, Integer.parseInt(args[i].substring(args[i].indexOf('=') + 1)));
+
+            if (args[i].startsWith("--threads="))
+                threadsPerApk = Math.max(1, Integer.parseInt(args[i].substring(args[i].indexOf('=') + 1)));
+
+            if (args[i].startsWith("--label-cache="))
+                labelCacheFile = new File(args[i].substring(args[i].indexOf('=') + 1));
+
+            if (args[i].startsWith("--library-cache="))
+                libraryCache = new LibraryCache(new File(args[i].substring(args[i].indexOf('=') + 1)));
+
+            if (args[i].startsWith("--unchecked-regions="))
+                uncheckedRegions = Detector.parseUncheckedRegions(args[i].substring(args[i].indexOf('=') + 1));
+
+            if (args[i].startsWith("--ir-cache="))
+                JarContext.setIRCacheWeight(Long.parseLong(args[i].substring(args[i].indexOf('=') + 1)));
+
+            if (args[i].equals("--quick"))
+                quick = true;
+
+            if (args[i].equals("--compress"))
+                compress = true;
+
+            if (args[i].equals("--force-extraction"))
+                forceExtraction = true;
+
+            if (args[i].equals("--force-overwrite"))
+                forceOverwrite = true;
+
+            if (args[i].equals("--watch"))
+                watch = true;
+        }
+
+        if (threadsPerApk == -1)
+            threadsPerApk = Math.max(1, Runtime.getRuntime().availableProcessors() / workers);
+
+        if (!outputDirectory.exists() && !outputDirectory.mkdirs())
+            throw new RuntimeException("Unable to create the output directory " + outputDirectory.getPath());
+
+        CommonRunner.configureToolkit(args[0], args[1], args[2]);
+
+        Logger.getAnonymousLogger().info("Loading ruleset and API lifetime...");
+        apiLifetime = APILifetime.load(lifetimeFile);
+        ruleset = new Ruleset(rulesFile, minApps, minConfidence);
+
+        Logger.getAnonymousLogger().info("Analyzing with " + workers + " workers, " + threadsPerApk + " threads each");
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            Set<File> submitted = ConcurrentHashMap.newKeySet();
+            Map<File, String> previousStates = new HashMap<>();
+            do {
+                List<File> apkFiles = listApks(input);
+                submitted.retainAll(apkFiles);
+
+                Map<File, String> states = new HashMap<>();
+                for (File apkFile : apkFiles) {
+                    // While watching, APKs still being copied are skipped until their size stops changing between two polls
+                    if (watch) {
+                        String state = apkFile.length() + ":" + apkFile.lastModified();
+                        states.put(apkFile, state);
+                        if (!state.equals(previousStates.get(apkFile)))
+                            continue;
+                    }
+
+                    // Failed analyses are retried at the next poll
+                    if (submitted.add(apkFile))
+                        pool.submit(() -> {
+                            if (!analyze(apkFile))
+                                submitted.remove(apkFile);
+                        });
+                }
+                previousStates = states;
+
+                if (watch)
+                    Thread.sleep(WATCH_INTERVAL);
+            } while (watch);
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        }
+
+        Logger.getAnonymousLogger().info("All done!");
+    }
+
+    /**
+     * Analyzes an APK and writes its report in the output directory
+     * @return false if the analysis failed
+     */
+    private boolean analyze(File apkFile) {
+        File outputFile = new File(outputDirectory, apkFile.getName().replaceAll("\\.apk$", "") + ".csv");
+        if (outputFile.exists() && !forceOverwrite) {
+            Logger.getAnonymousLogger().info("Skipping " + apkFile.getPath() + ": report already exists");
+            return true;
+        }
+
+        Logger.getAnonymousLogger().info("Analyzing " + apkFile.getPath());
+        Detector detector = new Detector();
+        detector.threads = threadsPerApk;
+        detector.labelCacheFile = labelCacheFile;
+        detector.libraryCache = libraryCache;
+        detector.uncheckedRegions = uncheckedRegions;
+        detector.setAnalysisConfiguration(rulesFile, lifetimeFile, minConfidence, minApps, apiLevel, quick, compress);
+        try {
+            detector.initialize(apkFile, outputFile, forceExtraction, forceOverwrite);
+            detector.detect(ruleset, apiLifetime, apiLevel, quick, compress);
+            return true;
+        } catch (Exception | Error e) {
+            // WALA reports some failures (e.g., a missing jar) as errors, which would otherwise get lost in the pool
+            Logger.getAnonymousLogger().severe("Unable to analyze " + apkFile.getPath() + ": " + e);
+            return false;
+        } finally {
+            detector.release();
+        }
+    }
+
+    private static List<File> listApks(File input) throws IOException {
+        List<File> result = new ArrayList<>();
+        if (input.isDirectory()) {
+            File[] files = input.listFiles((dir, name) -> name.endsWith(".apk"));
+            if (files != null)
+                result.addAll(Arrays.asList(files));
+        } else {
+            for (String line : FileUtils.readLines(input, "UTF-8")) {
+                if (!line.trim().isEmpty())
+                    result.add(new File(line.trim()));
+            }
+        }
+
+        Collections.sort(result);
+        return result;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new BatchDetector().run(args);
+    }
+}
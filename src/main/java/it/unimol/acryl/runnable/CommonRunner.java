@@ -1,6 +1,8 @@
 package it.unimol.acryl.runnable;
 
 import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import it.unimol.acryl.analysis.PersistentVersionMethodCache;
+import it.unimol.acryl.analysis.VersionMethodCache;
 import it.unimol.acryl.android.AndroidToolkit;
 import it.unimol.acryl.android.ApkContainer;
 import it.unimol.acryl.android.Dex2Jar;
@@ -41,6 +43,8 @@ public class CommonRunner {
     protected ApkContainer apk;
     protected File jarFile;
     protected JarContext apkContext;
+    protected int threads;
+    protected File labelCacheFile;
 
     public void checkAndInitialize(String[] args) throws IOException, ClassHierarchyException {
         if (args.length < 5) {
@@ -54,6 +58,25 @@ public class CommonRunner {
 
         boolean forceExtraction = false;
         boolean forceOverwrite = false;
+        threads = Runtime.getRuntime().availableProcessors();
+        labelCacheFile = null;
+        for (int i = 5; i < args.length; i++) {
+            if (args[i].startsWith("--threads=")) {
+                threads = Math.max(1, Integer.parseInt(args[i].substring(args[i].indexOf('=') + 1)));
+                Logger.getAnonymousLogger().info("Using " + threads + " worker threads");
+            }
+
+            if (args[i].startsWith("--label-cache=")) {
+                labelCacheFile = new File(args[i].substring(args[i].indexOf('=') + 1));
+                Logger.getAnonymousLogger().info("Using label cache " + labelCacheFile.getPath());
+            }
+
+            if (args[i].startsWith("--ir-cache=")) {
+                JarContext.setIRCacheWeight(Long.parseLong(args[i].substring(args[i].indexOf('=') + 1)));
+                Logger.getAnonymousLogger().info("Keeping at most " + args[i].substring(args[i].indexOf('=') + 1) + " IR instructions in memory");
+            }
+        }
+
         if (args.length > 6) {
             for (int i = 5; i < args.length; i++) {
                 if (args[i].equals("--force-extraction"))
@@ -64,14 +87,26 @@ public class CommonRunner {
             }
         }
 
+        configureToolkit(args[0], args[1], args[2]);
+
+        initialize(new File(args[3]), new File(args[4]), forceExtraction, forceOverwrite);
+    }
+
+    protected static void configureToolkit(String buildToolsPath, String androidSDKPath, String dex2jarPath) {
         AndroidJarContext.setAndroidPackageNames(PACKAGE_UNDER_ANALYSIS);
+        JarContext.setAPIPackageNames(PACKAGE_UNDER_ANALYSIS);
 
-        AndroidToolkit.setBuildToolsPath(args[0]);
-        AndroidToolkit.setAndroidSDK(args[1]);
-        AndroidToolkit.setDex2jarPath(args[2]);
+        AndroidToolkit.setBuildToolsPath(buildToolsPath);
+        AndroidToolkit.setAndroidSDK(androidSDKPath);
+        AndroidToolkit.setDex2jarPath(dex2jarPath);
+    }
 
-        apkFile = new File(args[3]);
-        outputFile = new File(args[4]);
+    /**
+     * Prepares the analysis of a single APK: extracts the jar (if needed) and builds its context
+     */
+    protected void initialize(File apkFile, File outputFile, boolean forceExtraction, boolean forceOverwrite) throws IOException, ClassHierarchyException {
+        this.apkFile = apkFile;
+        this.outputFile = outputFile;
 
         if (!apkFile.exists())
             throw new RuntimeException("Input file does not exist");
@@ -106,4 +141,29 @@ public class CommonRunner {
         });
         apkContext.warmUp();
     }
+
+    /**
+     * Releases the context of the analyzed APK, so that it can be garbage collected
+     */
+    protected void release() {
+        if (jarFile != null)
+            GlobalContext.release(jarFile.getAbsolutePath());
+
+        apkContext = null;
+    }
+
+    /**
+     * Logs the hit rate and the rebuild cost of the IR and symbol table caches of the analyzed APK
+     */
+    protected void logCacheStatistics() {
+        Logger.getAnonymousLogger().info(apkContext.getIRCache().toString());
+        Logger.getAnonymousLogger().info(apkContext.getSymbolTableCache().toString());
+    }
+
+    protected VersionMethodCache createVersionMethodCache() {
+        if (labelCacheFile != null)
+            return new PersistentVersionMethodCache(apkContext, threads, labelCacheFile);
+        else
+            return new VersionMethodCache(apkContext, threads);
+    }
 }
@@ -2,22 +2,33 @@ package it.unimol.acryl.runnable;
 
 import com.ibm.wala.classLoader.IClass;
 import com.ibm.wala.classLoader.IMethod;
+import it.unimol.acryl.analysis.AnalysisState;
+import it.unimol.acryl.analysis.IncrementalVersionMethodCache;
+import it.unimol.acryl.analysis.LibraryCache;
 import it.unimol.acryl.analysis.VersionChecker;
 import it.unimol.acryl.analysis.VersionDependentInstructionsExtractor;
 import it.unimol.acryl.analysis.VersionMethodCache;
+import it.unimol.acryl.android.AndroidToolkit;
 import it.unimol.acryl.graphs.IPCFG;
 import it.unimol.acryl.graphs.SubCFG;
 import it.unimol.acryl.lifetime.APILifetime;
+import it.unimol.acryl.reports.ReportRow;
+import it.unimol.acryl.reports.SortedReportWriter;
 import it.unimol.acryl.rules.Rule;
 import it.unimol.acryl.rules.CombinedViolationDetector;
 import it.unimol.acryl.rules.Ruleset;
+import it.unimol.acryl.static_analysis.contexts.BytecodeSummary;
 import it.unimol.acryl.static_analysis.contexts.ClassContext;
 import it.unimol.acryl.static_analysis.contexts.MethodContext;
+import it.unimol.acryl.static_analysis.utils.ApiSymbolTable;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.File;
-import java.io.PrintWriter;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 /**
@@ -27,6 +38,12 @@ import java.util.logging.Logger;
 public class Detector extends CommonRunner {
     private static final int API_LEVEL = 27;
 
+    File incrementalStateFile;
+    LibraryCache libraryCache;
+    VersionDependentInstructionsExtractor.UncheckedRegions uncheckedRegions = VersionDependentInstructionsExtractor.UncheckedRegions.BLOCKS;
+    private String analysisConfiguration;
+    private final AtomicInteger detectionRounds = new AtomicInteger();
+
     public void run(String[] args) throws Exception {
         checkAndInitialize(args);
 
@@ -73,13 +90,95 @@ public class Detector extends CommonRunner {
                 Logger.getAnonymousLogger().info("Running in compression mode. Some warnings may be omitted.");
                 compress = true;
             }
+
+            if (args[i].startsWith("--incremental=")) {
+                incrementalStateFile = new File(args[i].substring(args[i].indexOf('=') + 1));
+                Logger.getAnonymousLogger().info("Using incremental analysis state " + incrementalStateFile.getPath());
+            }
+
+            if (args[i].startsWith("--library-cache=")) {
+                libraryCache = new LibraryCache(new File(args[i].substring(args[i].indexOf('=') + 1)));
+                Logger.getAnonymousLogger().info("Using library cache " + args[i].substring(args[i].indexOf('=') + 1));
+            }
+
+            if (args[i].startsWith("--unchecked-regions="))
+                uncheckedRegions = parseUncheckedRegions(args[i].substring(args[i].indexOf('=') + 1));
+        }
+
+        setAnalysisConfiguration(rulesFile, lifetimeFile, minConfidence, minApps, apiLevel, quick, compress);
+
+        APILifetime apiLifetime = APILifetime.load(lifetimeFile);
+        Ruleset ruleset = new Ruleset(rulesFile, minApps, minConfidence);
+
+        detect(ruleset, apiLifetime, apiLevel, quick, compress);
+    }
+
+    /**
+     * Parses the grouping of unchecked blocks ("blocks", "connected" or "method")
+     */
+    static VersionDependentInstructionsExtractor.UncheckedRegions parseUncheckedRegions(String value) {
+        for (VersionDependentInstructionsExtractor.UncheckedRegions regions : VersionDependentInstructionsExtractor.UncheckedRegions.values()) {
+            if (regions.name().equalsIgnoreCase(value))
+                return regions;
         }
 
+        throw new RuntimeException("Unknown unchecked regions: " + value + " (use blocks, connected or method)");
+    }
+
+    /**
+     * Sets the parameters of the analysis, so that stored results are reused only if they were computed with the same
+     * parameters
+     */
+    void setAnalysisConfiguration(File rulesFile, File lifetimeFile, double minConfidence, int minApps, int apiLevel, boolean quick, boolean compress) {
+        analysisConfiguration = StringUtils.join(new Object[] {
+                fileKey(rulesFile), fileKey(lifetimeFile), minConfidence, minApps, apiLevel, quick, compress, uncheckedRegions,
+                fileKey(new File(AndroidToolkit.getAndroidSDK(), "android.jar")),
+                fileKey(new File(AndroidToolkit.getAndroidSDK(), "uiautomator.jar")),
+                new TreeSet<>(PACKAGE_UNDER_ANALYSIS)
+        }, ";");
+    }
+
+    /**
+     * Detects the problems in the APK the runner was initialized with and writes the report in the output file
+     */
+    public void detect(Ruleset ruleset, APILifetime apiLifetime, int apiLevel, boolean quick, boolean compress) throws IOException {
         apkContext.setClassNotFoundHandler(
                 className -> Logger.getAnonymousLogger().warning("Class not found: " + className)
         );
 
-        VersionMethodCache cache = new VersionMethodCache(apkContext);
+        String appName      = apk.getPackageName();
+        String appVersion   = apk.getVersion();
+        String appSdkMin    = String.valueOf(apk.getMinSDKVersion());
+        String appSdkTrg    = String.valueOf(apk.getTargetSDKVersion());
+
+        // Stored results are used only if they were computed with the same configuration (the detectors also depend on
+        // the SDK versions of the app)
+        String configuration            = analysisConfiguration + ";" + appSdkMin + ";" + appSdkTrg;
+        Map<String, String> classKeys   = null;
+        AnalysisState previousState     = null;
+        AnalysisState nextState         = null;
+        Set<String> changedClasses      = Collections.emptySet();
+        if (incrementalStateFile != null || libraryCache != null) {
+            classKeys = AnalysisState.computeClassKeys(apkContext.getClassesInJar(false));
+            nextState = new AnalysisState(configuration);
+            nextState.setClassKeys(classKeys);
+        }
+
+        if (incrementalStateFile != null) {
+            previousState   = AnalysisState.load(incrementalStateFile, configuration);
+            changedClasses  = previousState.getChangedClasses(classKeys);
+            Logger.getAnonymousLogger().info(previousState.isEmpty() ?
+                    "No previous analysis state: running a full analysis" :
+                    changedClasses.size() + " classes changed since the previous version");
+        }
+
+        // The labels of the previous version already cover the unchanged classes, so the label cache is not used
+        if (previousState != null && labelCacheFile != null)
+            Logger.getAnonymousLogger().warning("Ignoring the label cache " + labelCacheFile.getPath() + " in an incremental analysis");
+
+        VersionMethodCache cache = previousState != null ?
+                new IncrementalVersionMethodCache(apkContext, threads, previousState, changedClasses) :
+                createVersionMethodCache();
         if (!quick) {
             Logger.getAnonymousLogger().info("Labeling methods...");
             cache.build();
@@ -87,21 +186,44 @@ public class Detector extends CommonRunner {
         } else {
             Logger.getAnonymousLogger().info("Quick execution: skipped method labeling.");
         }
+        Set<String> changedLabels = cache instanceof IncrementalVersionMethodCache ?
+                ((IncrementalVersionMethodCache) cache).getChangedLabels() : Collections.emptySet();
+
+        // Packages not belonging to the app are looked up in the library cache
+        Map<String, String> libraryFingerprints     = new HashMap<>();
+        Map<String, AnalysisState> libraryEntries   = new HashMap<>();
+        if (libraryCache != null) {
+            String appPackage = appName != null ? "L" + appName.replace('.', '/') + "/" : null;
+            for (Map.Entry<String, List<IClass>> entry : LibraryCache.groupByPackage(apkContext.getClassesInJar(false)).entrySet()) {
+                // The default package is not a library, whatever its classes
+                if (entry.getKey().isEmpty() || (appPackage != null && entry.getKey().startsWith(appPackage)))
+                    continue;
 
-        String appName      = apk.getPackageName();
-        String appVersion   = apk.getVersion();
-        String appSdkMin    = String.valueOf(apk.getMinSDKVersion());
-        String appSdkTrg    = String.valueOf(apk.getTargetSDKVersion());
+                String fingerprint = LibraryCache.fingerprint(entry.getKey(), entry.getValue(), classKeys);
+                if (fingerprint == null)
+                    continue;
 
-        APILifetime apiLifetime = APILifetime.load(lifetimeFile);
+                libraryFingerprints.put(entry.getKey(), fingerprint);
+                AnalysisState libraryEntry = libraryCache.load(fingerprint, configuration);
+                if (libraryEntry != null && LibraryCache.isValid(libraryEntry, classKeys, cache))
+                    libraryEntries.put(entry.getKey(), libraryEntry);
+            }
+            Logger.getAnonymousLogger().info("Found " + libraryEntries.size() + " of " + libraryFingerprints.size() + " library packages in the library cache");
+        }
 
-        Ruleset ruleset = new Ruleset(rulesFile, minApps, minConfidence);
         CombinedViolationDetector detector = new CombinedViolationDetector(apk, apiLevel, apiLifetime, apkContext);
 
         Logger.getAnonymousLogger().info("Starting analysis...");
+        long analysisStart = System.currentTimeMillis();
         VersionDependentInstructionsExtractor extractor = new VersionDependentInstructionsExtractor(cache);
 
-        List<CombinedViolationDetector.RuleViolationReport> allReports = new ArrayList<>();
+        final boolean compressReports = compress;
+        final AnalysisState state = nextState;
+        Deque<Supplier<List<ReportRow>>> tasks = new ArrayDeque<>();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        int reusedMethods = 0;
+        int libraryMethods = 0;
+        Map<String, List<String>> packagesToStore = new LinkedHashMap<>();
 
         for (IClass iClass : apkContext.getClassesInJar(false)) {
             ClassContext classContext = apkContext.resolveClassContext(iClass);
@@ -124,125 +246,253 @@ public class Detector extends CommonRunner {
                 continue;
             }
 
-            for (IMethod iMethod : classContext.getNonAbstractMethods()) {
-                MethodContext methodContext = classContext.resolveMethodContext(iMethod);
-                if (methodContext.getIntermediateRepresentation() == null)
-                    continue;
+            String packageName = LibraryCache.getPackage(className);
+            AnalysisState libraryEntry = libraryEntries.get(packageName);
+            if (libraryEntry == null && libraryFingerprints.containsKey(packageName))
+                packagesToStore.computeIfAbsent(packageName, key -> new ArrayList<>());
 
-                if (methodContext.isForcingDetectionSkip()) {
-                    Logger.getAnonymousLogger().info("Forced detection skipped for method " + iMethod.getSignature());
-                    continue;
+            for (IMethod iMethod : classContext.getNonAbstractMethods()) {
+                AnalysisState.MethodState previous = previousState != null ? previousState.getMethod(iMethod.getSignature()) : null;
+                AnalysisState.MethodState cached = libraryEntry != null ? libraryEntry.getMethod(iMethod.getSignature()) : null;
+                if (packagesToStore.containsKey(packageName))
+                    packagesToStore.get(packageName).add(iMethod.getSignature());
+
+                if (previous != null && !isAffected(previous, className, changedClasses, changedLabels)) {
+                    state.getOrCreateMethod(iMethod.getSignature()).setAnalysisResult(previous);
+                    tasks.add(previous::getRows);
+                    reusedMethods++;
+                } else if (cached != null && cached.getRows() != null) {
+                    state.getOrCreateMethod(iMethod.getSignature()).setAnalysisResult(cached);
+                    tasks.add(cached::getRows);
+                    libraryMethods++;
+                } else {
+                    tasks.add(pool.submit(() -> {
+                        List<ReportRow> rows = analyzeMethod(classContext, iMethod, cache, extractor, ruleset, detector, compressReports);
+                        if (state != null)
+                            state.getOrCreateMethod(iMethod.getSignature()).setAnalysisResult(classContext.resolveMethodContext(iMethod), rows);
+                        return rows;
+                    })::join);
                 }
+            }
+        }
 
-                methodContext.getAugmentedSymbolTable().update(cache);
+        if (previousState != null)
+            Logger.getAnonymousLogger().info("Reusing the reports of " + reusedMethods + " methods, analyzing " + (tasks.size() - reusedMethods - libraryMethods) + " methods");
 
-                Map<VersionChecker, SubCFG> versionDependentParts   = extractor.extractVersionDependentCFG(methodContext);
-                Set<SubCFG> uncheckedBlocks                         = extractor.extractVersionIndependentCFGs(methodContext, versionDependentParts.values());
-                for (SubCFG uncheckedBlock : uncheckedBlocks) {
-                    versionDependentParts.put(new VersionChecker.NullChecker(), uncheckedBlock);
-                }
+        if (libraryCache != null)
+            Logger.getAnonymousLogger().info("Reusing the reports of " + libraryMethods + " methods from the library cache");
 
-                for (Map.Entry<VersionChecker, SubCFG> entry : versionDependentParts.entrySet()) {
-                    IPCFG ipcfg = IPCFG.buildIPCFG(apkContext, entry.getValue(), false);
-                    entry.getValue().setMethodContext(methodContext);
-
-                    Collection<String> apis = ipcfg.getCalledAPIs(CommonRunner.PACKAGE_UNDER_ANALYSIS);
-                    List<CombinedViolationDetector.RuleViolationReport> reports = new ArrayList<>();
-                    for (Rule rule : ruleset.matchingRules(apis)) {
-                        CombinedViolationDetector.RuleViolationReport report = detector.violatesRule(methodContext, entry.getKey(), rule, apis);
-                        if (report != null)
-                            reports.add(report);
-                    }
-
-                    if (compress) {
-                        CombinedViolationDetector.RuleViolationReport bestReport = reports.stream().min((v1, v2) -> {
-                            int comparison = Integer.compare(v1.getViolationPriority(), v2.getViolationPriority());
-
-                            if (comparison == 0)
-                                comparison = -Double.compare(v1.getConfidence(), v2.getConfidence());
-
-                            return comparison;
-                        }).orElse(null);
-
-                        if (bestReport != null) {
-                            bestReport.setMethodContext(methodContext);
-                            bestReport.setMinLine(entry.getValue().getMinLine());
-                            bestReport.setMaxLine(entry.getValue().getMaxLine());
-
-                            allReports.add(bestReport);
-                            Logger.getAnonymousLogger().finest("Skipped " + (reports.size()-1) + " warnings thanks to compression");
-                        }
-                    } else {
-                        for (CombinedViolationDetector.RuleViolationReport report : reports) {
-                            report.setMethodContext(methodContext);
-                            report.setMinLine(entry.getValue().getMinLine());
-                            report.setMaxLine(entry.getValue().getMaxLine());
-
-                            allReports.add(report);
-                        }
-                    }
+        // Rows are added following the order of the methods, so that the output does not depend on the scheduling.
+        // Tasks are removed once done, as each of them keeps its rows.
+        SortedReportWriter writer = new SortedReportWriter(outputFile,
+                "app\tversion\tsdk_min\tsdk_trg\tmethod\tfromLine\ttoLine\tapis\talternative\truleCheck\twarning\tmessage\tconfidence");
+        try {
+            for (Supplier<List<ReportRow>> task = tasks.poll(); task != null; task = tasks.poll()) {
+                for (ReportRow row : task.get()) {
+                    writer.add(row.withLeadingColumns(appName, appVersion, appSdkMin, appSdkTrg));
                 }
             }
+            writer.close();
+        } finally {
+            pool.shutdownNow();
+            writer.discard();
+        }
+
+        Logger.getAnonymousLogger().info("Ran " + detectionRounds.get() + " detection rounds (unchecked regions: " +
+                uncheckedRegions.name().toLowerCase() + ") in " + (System.currentTimeMillis() - analysisStart) + " ms");
+
+        if (libraryCache != null)
+            storeLibraryEntries(packagesToStore, libraryFingerprints, nextState, classKeys, cache, configuration,
+                    appName != null ? appName : apk.getFile().getAbsolutePath());
+
+        if (incrementalStateFile != null) {
+            storeLabels(nextState, cache);
+            nextState.store(incrementalStateFile);
+        }
+
+        logCacheStatistics();
+        Logger.getAnonymousLogger().info("All done!");
+    }
+
+    /**
+     * Checks whether the reports of a method analyzed in the previous version may be different in the current one,
+     * i.e., if its class changed, if the classes it calls changed or if the labels of the methods it uses changed
+     */
+    private static boolean isAffected(AnalysisState.MethodState previous, String className, Set<String> changedClasses, Set<String> changedLabels) {
+        if (previous.getRows() == null || changedClasses.contains(className))
+            return true;
+
+        for (String referencedClass : previous.getReferencedClasses()) {
+            if (changedClasses.contains(referencedClass))
+                return true;
+        }
+
+        for (String dependency : previous.getLabelDependencies()) {
+            if (changedLabels.contains(dependency))
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Stores the labels of all the labeled methods (including the ones not analyzed) in the state
+     */
+    private void storeLabels(AnalysisState state, VersionMethodCache cache) throws IOException {
+        for (IClass iClass : apkContext.getClassesInJar(true)) {
+            for (IMethod iMethod : apkContext.resolveClassContext(iClass).getNonAbstractMethods()) {
+                AnalysisState.MethodState methodState = state.getOrCreateMethod(iMethod.getSignature());
+                methodState.setLabel(cache.getVersionNumbers(iMethod.getSignature()));
+
+                if (methodState.getLabelDependencies() == null && cache instanceof IncrementalVersionMethodCache)
+                    methodState.setLabelDependencies(((IncrementalVersionMethodCache) cache).getLabelDependencies(iMethod.getSignature()));
+            }
+        }
+    }
+
+    /**
+     * Stores in the library cache the results of the library packages that were analyzed, if they were already seen in
+     * another app
+     */
+    private void storeLibraryEntries(Map<String, List<String>> packagesToStore, Map<String, String> libraryFingerprints, AnalysisState state,
+                                     Map<String, String> classKeys, VersionMethodCache cache, String configuration, String appName) {
+        Map<String, Set<String>> packageClasses = new HashMap<>();
+        for (String className : classKeys.keySet()) {
+            packageClasses.computeIfAbsent(LibraryCache.getPackage(className), key -> new HashSet<>()).add(className);
         }
 
-        allReports.sort((r1, r2) -> {
-            int order = Integer.compare(r1.getViolationPriority(), r2.getViolationPriority());
+        int stored = 0;
+        for (Map.Entry<String, List<String>> entry : packagesToStore.entrySet()) {
+            String fingerprint = libraryFingerprints.get(entry.getKey());
+            try {
+                if (!libraryCache.markEmbeddedBy(fingerprint, configuration, appName))
+                    continue;
+            } catch (IOException e) {
+                Logger.getAnonymousLogger().warning("Unable to record " + entry.getKey() + " in the library cache: " + e.getMessage());
+                continue;
+            }
 
-            if (order == 0) {
-                order = -Double.compare(r1.getConfidence(), r2.getConfidence());
+            Map<String, AnalysisState.MethodState> methods = new HashMap<>();
+            for (String signature : entry.getValue()) {
+                methods.put(signature, state.getMethod(signature));
             }
 
-            return order;
-        });
+            AnalysisState libraryEntry = LibraryCache.buildEntry(packageClasses.get(entry.getKey()), methods, classKeys, cache, configuration);
+            if (libraryEntry == null)
+                continue;
 
+            try {
+                libraryCache.store(fingerprint, configuration, libraryEntry);
+                stored++;
+            } catch (IOException e) {
+                Logger.getAnonymousLogger().warning("Unable to store the results of " + entry.getKey() + " in the library cache: " + e.getMessage());
+            }
+        }
 
-        try (PrintWriter writer = new PrintWriter(outputFile)) {
-            writer.println("app\tversion\tsdk_min\tsdk_trg\tmethod\tfromLine\ttoLine\tapis\talternative\truleCheck\twarning\tmessage\tconfidence");
+        Logger.getAnonymousLogger().info("Stored " + stored + " library packages in the library cache");
+    }
 
-            for (CombinedViolationDetector.RuleViolationReport report : allReports) {
-                //For each report...
-                writer.print(appName);
-                writer.print("\t");
+    private static String fileKey(File file) {
+        return file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+    }
 
-                writer.print(appVersion);
-                writer.print("\t");
+    private static ReportRow toRow(CombinedViolationDetector.RuleViolationReport report) {
+        return new ReportRow(report.getViolationPriority(), report.getConfidence(),
+                report.getMethodContext().getIMethod().getSignature(),
+                report.getMinLine(),
+                report.getMaxLine(),
+                StringUtils.join(report.getRuleApisMismatch(), "&"),
+                StringUtils.join(report.getAlternativeApis(), "&"),
+                report.getCheck(),
+                report.getViolation().toString(),
+                "\"" + report.getMessage() + "\"",
+                report.getConfidence()
+        );
+    }
 
-                writer.print(appSdkMin);
-                writer.print("\t");
+    private List<ReportRow> analyzeMethod(
+            ClassContext classContext,
+            IMethod iMethod,
+            VersionMethodCache cache,
+            VersionDependentInstructionsExtractor extractor,
+            Ruleset ruleset,
+            CombinedViolationDetector detector,
+            boolean compress) throws IOException {
+        List<ReportRow> methodReports = new ArrayList<>();
+
+        MethodContext methodContext = classContext.resolveMethodContext(iMethod);
+        if (methodContext.isForcingDetectionSkip()) {
+            Logger.getAnonymousLogger().info("Forced detection skipped for method " + iMethod.getSignature());
+            return methodReports;
+        }
 
-                writer.print(appSdkTrg);
-                writer.print("\t");
+        // No rule matches a method that does not call any API, so its IR is not even built
+        BytecodeSummary summary = methodContext.getBytecodeSummary();
+        if (summary.isAvailable() && IPCFG.filterAPIIds((BitSet) summary.getCalledAPIIds(apkContext).clone(), CommonRunner.PACKAGE_UNDER_ANALYSIS).isEmpty())
+            return methodReports;
 
-                writer.print(report.getMethodContext().getIMethod().getSignature());
-                writer.print("\t");
+        if (methodContext.getIntermediateRepresentation() == null)
+            return methodReports;
 
-                writer.print(report.getMinLine());
-                writer.print("\t");
+        // Methods that do not read SDK_INT nor call labeled methods have no checked part
+        Map<VersionChecker, SubCFG> versionDependentParts;
+        if (methodContext.getBytecodeSummary().isVersionDependent(cache))
+            versionDependentParts = extractor.extractVersionDependentCFG(methodContext);
+        else
+            versionDependentParts = new LinkedHashMap<>();
 
-                writer.print(report.getMaxLine());
-                writer.print("\t");
+        Set<SubCFG> uncheckedBlocks                         = extractor.extractVersionIndependentCFGs(methodContext, versionDependentParts.values(), uncheckedRegions);
+        for (SubCFG uncheckedBlock : uncheckedBlocks) {
+            versionDependentParts.put(new VersionChecker.NullChecker(), uncheckedBlock);
+        }
+
+        for (Map.Entry<VersionChecker, SubCFG> entry : versionDependentParts.entrySet()) {
+            entry.getValue().setMethodContext(methodContext);
+            detectionRounds.incrementAndGet();
+
+            BitSet apiIds = IPCFG.getCalledAPIIds(apkContext, entry.getValue(), CommonRunner.PACKAGE_UNDER_ANALYSIS);
+            Collection<Rule> matchingRules = ruleset.matchingRules(apiIds);
+            Collection<String> apis = matchingRules.isEmpty() ? Collections.emptySet() : ApiSymbolTable.getInstance().getSignatures(apiIds);
+
+            List<CombinedViolationDetector.RuleViolationReport> reports = new ArrayList<>();
+            for (Rule rule : matchingRules) {
+                CombinedViolationDetector.RuleViolationReport report = detector.violatesRule(methodContext, entry.getKey(), rule, apis);
+                if (report != null)
+                    reports.add(report);
+            }
 
-                writer.print(StringUtils.join(report.getRuleApisMismatch(), "&"));
-                writer.print("\t");
+            if (compress) {
+                CombinedViolationDetector.RuleViolationReport bestReport = reports.stream().min((v1, v2) -> {
+                    int comparison = Integer.compare(v1.getViolationPriority(), v2.getViolationPriority());
 
-                writer.print(StringUtils.join(report.getAlternativeApis(), "&"));
-                writer.print("\t");
+                    if (comparison == 0)
+                        comparison = -Double.compare(v1.getConfidence(), v2.getConfidence());
 
-                writer.print(report.getCheck());
-                writer.print("\t");
+                    return comparison;
+                }).orElse(null);
 
-                writer.print(report.getViolation().toString());
-                writer.print("\t");
+                if (bestReport != null) {
+                    bestReport.setMethodContext(methodContext);
+                    bestReport.setMinLine(entry.getValue().getMinLine());
+                    bestReport.setMaxLine(entry.getValue().getMaxLine());
 
-                writer.print("\"" + report.getMessage() + "\"");
-                writer.print("\t");
+                    methodReports.add(toRow(bestReport));
+                    Logger.getAnonymousLogger().finest("Skipped " + (reports.size()-1) + " warnings thanks to compression");
+                }
+            } else {
+                for (CombinedViolationDetector.RuleViolationReport report : reports) {
+                    report.setMethodContext(methodContext);
+                    report.setMinLine(entry.getValue().getMinLine());
+                    report.setMaxLine(entry.getValue().getMaxLine());
 
-                writer.print(report.getConfidence());
-                writer.print("\n");
+                    methodReports.add(toRow(report));
+                }
             }
         }
-        Logger.getAnonymousLogger().info("All done!");
+
+        return methodReports;
     }
+
     public static void main(String[] args) throws Exception {
         new Detector().run(args);
     }
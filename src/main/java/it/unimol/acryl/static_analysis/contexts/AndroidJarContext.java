@@ -1,26 +1,20 @@
 package it.unimol.acryl.static_analysis.contexts;
 
-import com.ibm.wala.classLoader.IClass;
 import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import it.unimol.acryl.static_analysis.utils.PrefixTrie;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
 import java.util.Set;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
 
 /**
  * @author Simone Scalabrino.
  */
 public class AndroidJarContext extends JarContext {
-    private static Set<String> androidPackageNames;
+    private static volatile PrefixTrie androidPackages;
 
     public static void setAndroidPackageNames(Set<String> androidPackageNames) {
-        AndroidJarContext.androidPackageNames = androidPackageNames;
+        AndroidJarContext.androidPackages = new PrefixTrie(androidPackageNames);
     }
 
     public AndroidJarContext(String jarPath) throws IOException, ClassHierarchyException {
@@ -35,32 +29,12 @@ public class AndroidJarContext extends JarContext {
         super(classpath, jarPath, withCallGraph);
     }
 
+    /**
+     * Ignores the entries starting with any of the Android package names. Note that entry names are compared as they
+     * are (i.e., with slashes as separators).
+     */
     @Override
-    protected Collection<IClass> internalGetClassesInJar(boolean useClassFilter) throws IOException {
-        List<IClass> resultingClasses = new ArrayList<>();
-        ZipInputStream zip = new ZipInputStream(new FileInputStream(super.jarPath));
-        for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
-            boolean isSystemPackage = false;
-            for (String androidPackageName : androidPackageNames) {
-                if (entry.getName().startsWith(androidPackageName))
-                    isSystemPackage = true;
-            }
-
-            if (isSystemPackage)
-                continue;
-
-            if (!entry.isDirectory() && entry.getName().endsWith(".class")) {
-                String className = entry.getName().replace('/', '.'); // including ".class"
-                className = className.substring(0, className.length() - ".class".length());
-
-                if (!useClassFilter || className.startsWith(this.classFilter)) {
-                    ClassContext classContext = this.resolveClassContext(className);
-                    if (classContext != null)
-                        resultingClasses.add(classContext.getIClass());
-                }
-            }
-        }
-
-        return resultingClasses;
+    protected boolean isIgnoredEntry(String entryName) {
+        return androidPackages != null && androidPackages.matchesPrefixOf(entryName);
     }
 }
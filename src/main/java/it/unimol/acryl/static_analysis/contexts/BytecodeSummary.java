@@ -0,0 +1,153 @@
+package it.unimol.acryl.static_analysis.contexts;
+
+import com.ibm.wala.classLoader.CallSiteReference;
+import com.ibm.wala.classLoader.CodeScanner;
+import com.ibm.wala.classLoader.IBytecodeMethod;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.shrikeCT.InvalidClassFileException;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.SSAAbstractInvokeInstruction;
+import com.ibm.wala.ssa.SSAInstruction;
+import com.ibm.wala.types.FieldReference;
+import com.ibm.wala.types.MethodReference;
+import it.unimol.acryl.analysis.IVersionMethodCache;
+import it.unimol.acryl.static_analysis.utils.ApiSymbolTable;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Summary of the calls and of the reads of the SDK version of a method, computed by scanning its bytecode (i.e.,
+ * without building the IR). It is used to skip the methods that can not depend on the SDK version or that do not call
+ * any API. Since the bytecode may contain unreachable instructions that are not in the IR, the summary may contain more
+ * calls than the IR, never less.
+ */
+public class BytecodeSummary {
+    private static final String VERSION_CLASS = "Landroid/os/Build$VERSION";
+    private static final String VERSION_FIELD = "SDK_INT";
+
+    private final boolean available;
+    private final boolean readingSDKVersion;
+    private final List<MethodReference> calledMethods;
+    private final List<String> calledSignatures;
+    private final List<String> calledClasses;
+    private volatile BitSet calledAPIIds;
+
+    private BytecodeSummary(boolean available, boolean readingSDKVersion, List<MethodReference> calledMethods) {
+        this.available          = available;
+        this.readingSDKVersion  = readingSDKVersion;
+        this.calledMethods      = calledMethods;
+
+        Set<String> calledSignatures    = new LinkedHashSet<>();
+        Set<String> calledClasses       = new LinkedHashSet<>();
+        for (MethodReference calledMethod : calledMethods) {
+            calledSignatures.add(calledMethod.getSignature());
+            calledClasses.add(calledMethod.getDeclaringClass().getName().toString());
+        }
+
+        this.calledSignatures   = new ArrayList<>(calledSignatures);
+        this.calledClasses      = new ArrayList<>(calledClasses);
+    }
+
+    /**
+     * Scans the bytecode of the method. If the bytecode can not be read, the calls are taken from the IR and the
+     * summary is not available (see {@link #isAvailable()}).
+     */
+    static BytecodeSummary scan(MethodContext methodContext) {
+        IMethod method = methodContext.getIMethod();
+        if (method instanceof IBytecodeMethod) {
+            try {
+                List<MethodReference> calledMethods = new ArrayList<>();
+                for (CallSiteReference callSite : CodeScanner.getCallSites(method)) {
+                    calledMethods.add(callSite.getDeclaredTarget());
+                }
+
+                boolean readingSDKVersion = false;
+                for (FieldReference field : CodeScanner.getFieldsRead(method)) {
+                    if (field.getName().toString().equals(VERSION_FIELD) && field.getDeclaringClass().getName().toString().equals(VERSION_CLASS))
+                        readingSDKVersion = true;
+                }
+
+                return new BytecodeSummary(true, readingSDKVersion, calledMethods);
+            } catch (InvalidClassFileException | RuntimeException ignored) {
+            }
+        }
+
+        List<MethodReference> calledMethods = new ArrayList<>();
+        IR ir = methodContext.getIntermediateRepresentation();
+        if (ir != null) {
+            for (SSAInstruction instruction : ir.getInstructions()) {
+                if (instruction instanceof SSAAbstractInvokeInstruction)
+                    calledMethods.add(((SSAAbstractInvokeInstruction) instruction).getDeclaredTarget());
+            }
+        }
+
+        return new BytecodeSummary(false, true, calledMethods);
+    }
+
+    /**
+     * Returns false if the bytecode could not be scanned: in this case, the method should not be skipped
+     */
+    public boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * Returns true if the method reads Build.VERSION.SDK_INT
+     */
+    public boolean isReadingSDKVersion() {
+        return readingSDKVersion;
+    }
+
+    /**
+     * Returns true if the result of the analysis of the method may depend on the SDK version, i.e., if the method
+     * reads it or if it calls a labeled method
+     * @param methodLabels current labels of the methods
+     */
+    public boolean isVersionDependent(IVersionMethodCache methodLabels) {
+        if (!this.available || this.readingSDKVersion)
+            return true;
+
+        for (String dependency : this.calledSignatures) {
+            if (methodLabels.getVersionNumbers(dependency) != null)
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the signatures of the methods called (i.e., of the declared targets), without duplicates. In the IR,
+     * every call defines at least the exception value, so they are also the methods whose labels are used.
+     */
+    public List<String> getCalledSignatures() {
+        return calledSignatures;
+    }
+
+    /**
+     * Returns the names of the classes declaring the methods called
+     */
+    public List<String> getCalledClasses() {
+        return calledClasses;
+    }
+
+    /**
+     * Returns the ids of the methods called (including the ones in the jar that have an id), resolved through
+     * {@link JarContext#resolveCall}
+     */
+    public BitSet getCalledAPIIds(JarContext context) throws IOException {
+        BitSet result = this.calledAPIIds;
+        if (result == null) {
+            result = new BitSet();
+            for (MethodReference calledMethod : this.calledMethods) {
+                int apiId = context.resolveCall(calledMethod).getApiId();
+                if (apiId != ApiSymbolTable.UNKNOWN)
+                    result.set(apiId);
+            }
+
+            this.calledAPIIds = result;
+        }
+
+        return result;
+    }
+}
@@ -5,8 +5,10 @@ import com.ibm.wala.classLoader.IMethod;
 import com.ibm.wala.shrikeCT.AnnotationsReader;
 import com.ibm.wala.types.Selector;
 import com.ibm.wala.types.annotations.Annotation;
+import it.unimol.acryl.static_analysis.utils.WalaUtils;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Simone Scalabrino.
@@ -22,7 +24,7 @@ public class ClassContext {
         this.iClass = iClass;
         this.context = context;
 
-        this.methodMap = new HashMap<>();
+        this.methodMap = new ConcurrentHashMap<>();
     }
 
     public JarContext getJarContext() {
@@ -30,7 +32,16 @@ public class ClassContext {
     }
 
     public MethodContext resolveMethodContext(String selector) {
-        IMethod method = iClass.getMethod(Selector.make(selector));
+        Selector parsedSelector;
+        synchronized (WalaUtils.TYPE_SYSTEM_LOCK) {
+            parsedSelector = Selector.make(selector);
+        }
+
+        return this.resolveMethodContext(parsedSelector);
+    }
+
+    public MethodContext resolveMethodContext(Selector selector) {
+        IMethod method = WalaUtils.getMethod(iClass, selector);
 
         return this.resolveMethodContext(method);
     }
@@ -64,13 +75,7 @@ public class ClassContext {
 
     public MethodContext resolveMethodContext(IMethod method) {
         if (method != null) {
-            if (!methodMap.containsKey(method)) {
-                MethodContext context = new MethodContext(method, this);
-                this.methodMap.put(method, context);
-                return context;
-            } else {
-                return this.methodMap.get(method);
-            }
+            return this.methodMap.computeIfAbsent(method, key -> new MethodContext(key, this));
         } else
             throw new RuntimeException("No such a method");
     }
@@ -14,6 +14,7 @@ import java.util.logging.Logger;
  */
 public class GlobalContext {
     private static final Map<String, JarContext> contexts;
+    private static File exclusionsFile;
 
     static {
         contexts = new HashMap<>();
@@ -23,7 +24,7 @@ public class GlobalContext {
         return getContext(jarPath, new File[] {});
     }
 
-    public static JarContext getContext(String jarPath, File[] classpath) throws ClassHierarchyException, IOException {
+    public static synchronized JarContext getContext(String jarPath, File[] classpath) throws ClassHierarchyException, IOException {
         if (!contexts.containsKey(jarPath))
             contexts.put(jarPath, new JarContext(classpath, jarPath, false));
 
@@ -45,7 +46,7 @@ public class GlobalContext {
         return getAndroidContext(jarPath, new File[] {});
     }
 
-    public static JarContext getAndroidContext(String jarPath, File[] classpath) throws ClassHierarchyException, IOException {
+    public static synchronized JarContext getAndroidContext(String jarPath, File[] classpath) throws ClassHierarchyException, IOException {
         if (!contexts.containsKey(jarPath))
             contexts.put(jarPath, new AndroidJarContext(classpath, jarPath, false));
 
@@ -63,12 +64,27 @@ public class GlobalContext {
         return getAndroidContext(jarPath, arrayClasspath);
     }
 
-    public static File getExclusionsFile() {
+    /**
+     * Removes the context of a jar, so that it can be garbage collected. Long-running processes analyzing several jars
+     * should release each context once done with it.
+     * @param jarPath path of the jar
+     */
+    public static synchronized void release(String jarPath) {
+        contexts.remove(jarPath);
+    }
+
+    public static synchronized File getExclusionsFile() {
+        if (exclusionsFile != null && exclusionsFile.exists())
+            return exclusionsFile;
+
         try {
-            return File.createTempFile("voidExclusion", ".txt");
+            exclusionsFile = File.createTempFile("voidExclusion", ".txt");
+            exclusionsFile.deleteOnExit();
         } catch (IOException e) {
             Logger.getAnonymousLogger().severe("Cannot create a temporary void exclusion file. Trying with the existing one, if any...");
-            return new File("voidExclusion.txt");
+            exclusionsFile = new File("voidExclusion.txt");
         }
+
+        return exclusionsFile;
     }
 }
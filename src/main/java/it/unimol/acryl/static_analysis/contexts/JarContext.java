@@ -3,30 +3,43 @@ package it.unimol.acryl.static_analysis.contexts;
 import com.ibm.wala.classLoader.IClass;
 import com.ibm.wala.classLoader.IMethod;
 import com.ibm.wala.ipa.callgraph.*;
+import com.ibm.wala.ipa.callgraph.impl.Everywhere;
 import com.ibm.wala.ipa.callgraph.impl.Util;
 import com.ibm.wala.ipa.callgraph.propagation.PointerAnalysis;
 import com.ibm.wala.ipa.cha.ClassHierarchy;
 import com.ibm.wala.ipa.cha.ClassHierarchyException;
 import com.ibm.wala.ipa.cha.ClassHierarchyFactory;
 import com.ibm.wala.ssa.*;
+import com.ibm.wala.types.MethodReference;
+import com.ibm.wala.types.TypeName;
 import com.ibm.wala.util.MonitorUtil;
+import it.unimol.acryl.analysis.AugmentedSymbolTable;
+import it.unimol.acryl.static_analysis.utils.ApiSymbolTable;
+import it.unimol.acryl.static_analysis.utils.BoundedCache;
+import it.unimol.acryl.static_analysis.utils.PrefixTrie;
+import it.unimol.acryl.static_analysis.utils.SharedClassLoaderFactory;
 import it.unimol.acryl.static_analysis.utils.WalaUtils;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.zip.ZipFile;
 
 /**
  * @author Simone Scalabrino.
  */
 public class JarContext {
+    private static long irCacheWeight = 500_000;
+    private static long symbolTableCacheSize = 20_000;
+    private static volatile PrefixTrie apiPackages;
+
     private final AnalysisCache analysisCache;
     private final AnalysisOptions analysisOptions;
     private final Map<Boolean, Collection<IClass>> classesInJar;
+    private final Map<Boolean, Set<IClass>> classesInJarIndex;
     protected final String jarPath;
     private final File[] dependencies;
     private ClassHierarchy fullHierarchy;
@@ -38,6 +51,11 @@ public class JarContext {
     private boolean warmedUp;
 
     private Map<String, ClassContext> classMap;
+    private volatile Map<TypeName, IClass> classIndex;
+    private final Set<String> missingClasses;
+    private final Map<MethodReference, ResolvedCall> resolvedCalls;
+    private final BoundedCache<IMethod, IR> irCache;
+    private final BoundedCache<MethodContext, AugmentedSymbolTable> symbolTableCache;
 
     public JarContext(String jarPath) throws IOException, ClassHierarchyException {
         this(jarPath, false);
@@ -53,12 +71,15 @@ public class JarContext {
         this.jarPath = jarPath;
         this.dependencies = classpath;
 
-        this.classesInJar = new HashMap<>();
+        this.classesInJar = new ConcurrentHashMap<>();
+        this.classesInJarIndex = new ConcurrentHashMap<>();
 
         this.classFilter = "";
 
         this.analysisScope = WalaUtils.getAnalysisScope(file, GlobalContext.getExclusionsFile(), classpath);
-        this.fullHierarchy = ClassHierarchyFactory.make(analysisScope);
+        synchronized (WalaUtils.TYPE_SYSTEM_LOCK) {
+            this.fullHierarchy = ClassHierarchyFactory.make(analysisScope, new SharedClassLoaderFactory(analysisScope.getExclusions()));
+        }
 
         Iterable<Entrypoint> entryPoints = com.ibm.wala.ipa.callgraph.impl.Util.makeMainEntrypoints(this.analysisScope, this.fullHierarchy);
         this.analysisOptions = new AnalysisOptions(this.analysisScope, entryPoints);
@@ -121,7 +142,35 @@ public class JarContext {
                 throw new RuntimeException("Call graph canceled");
             }
         }
-        this.classMap = new HashMap<>();
+        this.classMap = new ConcurrentHashMap<>();
+        this.missingClasses = ConcurrentHashMap.newKeySet();
+        this.resolvedCalls = new ConcurrentHashMap<>();
+        this.irCache = new BoundedCache<>("IR", irCacheWeight, ir -> ir.getInstructions().length);
+        this.symbolTableCache = new BoundedCache<>("Symbol table", symbolTableCacheSize, symbolTable -> 1);
+    }
+
+    /**
+     * Sets the maximum number of instructions of the IRs kept in memory by the contexts created afterwards
+     */
+    public static void setIRCacheWeight(long irCacheWeight) {
+        JarContext.irCacheWeight = irCacheWeight;
+    }
+
+    /**
+     * Sets the prefixes of the APIs looked for in the jars (e.g., the Android packages). Methods of the jar are interned
+     * in the {@link ApiSymbolTable} only if they match one of them or if they are already there (e.g., because of a
+     * rule), so that the table does not grow with the methods of every analyzed jar. If not set (or null), all of them
+     * are.
+     */
+    public static void setAPIPackageNames(Set<String> apiPackageNames) {
+        JarContext.apiPackages = apiPackageNames != null ? new PrefixTrie(apiPackageNames) : null;
+    }
+
+    /**
+     * Sets the maximum number of augmented symbol tables kept in memory by the contexts created afterwards
+     */
+    public static void setSymbolTableCacheSize(long symbolTableCacheSize) {
+        JarContext.symbolTableCacheSize = symbolTableCacheSize;
     }
 
     public AnalysisScope getAnalysisScope() {
@@ -148,6 +197,41 @@ public class JarContext {
         return callGraph;
     }
 
+    /**
+     * Builds (or retrieves from the cache) the IR of a method. Safe to be called from multiple threads.
+     * @param method method
+     * @return IR of the method, or null if the method has no body
+     */
+    public IR findOrCreateIR(IMethod method) {
+        return this.irCache.get(method, this::buildIR);
+    }
+
+    /**
+     * Builds the IR of a method, bypassing the cache. IRs are not cached by WALA either, so that the only cache that
+     * keeps them in memory is the bounded one of this context.
+     * @param method method
+     * @return IR of the method, or null if the method has no body
+     */
+    IR buildIR(IMethod method) {
+        if (method.isAbstract() || method.isNative())
+            return null;
+
+        synchronized (WalaUtils.TYPE_SYSTEM_LOCK) {
+            return this.analysisCache.getIRFactory().makeIR(
+                    method,
+                    Everywhere.EVERYWHERE,
+                    this.analysisOptions.getSSAOptions());
+        }
+    }
+
+    public BoundedCache<IMethod, IR> getIRCache() {
+        return irCache;
+    }
+
+    public BoundedCache<MethodContext, AugmentedSymbolTable> getSymbolTableCache() {
+        return symbolTableCache;
+    }
+
     public ClassContext resolveClassContext(IClass iClass) {
         return this.resolveClassContext(iClass.getName().toString());
     }
@@ -175,12 +259,10 @@ public class JarContext {
             }
         } else {
             if (!this.classMap.containsKey(signature)) {
-                for (IClass iClass : this.fullHierarchy) {
-                    if (iClass.getName().toString().equals(signature)) {
-                        ClassContext context = new ClassContext(iClass, this);
-                        this.classMap.put(signature, context);
-                        return context;
-                    }
+                IClass iClass = this.lookupClass(signature);
+                if (iClass != null) {
+                    ClassContext context = this.classMap.putIfAbsent(signature, new ClassContext(iClass, this));
+                    return context != null ? context : this.classMap.get(signature);
                 }
             } else
                 return this.classMap.get(signature);
@@ -198,6 +280,50 @@ public class JarContext {
         }
     }
 
+    /**
+     * Finds a class of the hierarchy by name through an index built on first use. Names that are not found are
+     * remembered, so that they are not looked up again.
+     * @param signature name of the class (e.g., Ljava/lang/Object)
+     * @return the class, or null if it does not exist
+     */
+    private IClass lookupClass(String signature) {
+        if (this.missingClasses.contains(signature))
+            return null;
+
+        TypeName typeName;
+        try {
+            synchronized (WalaUtils.TYPE_SYSTEM_LOCK) {
+                typeName = TypeName.findOrCreate(signature);
+            }
+        } catch (IllegalArgumentException e) {
+            typeName = null;
+        }
+
+        IClass iClass = typeName != null ? this.getClassIndex().get(typeName) : null;
+        if (iClass == null)
+            this.missingClasses.add(signature);
+
+        return iClass;
+    }
+
+    private Map<TypeName, IClass> getClassIndex() {
+        if (this.classIndex == null) {
+            synchronized (this) {
+                if (this.classIndex == null) {
+                    // If several loaders define the same class, the first one in the hierarchy wins
+                    Map<TypeName, IClass> index = new HashMap<>();
+                    for (IClass iClass : this.fullHierarchy) {
+                        index.putIfAbsent(iClass.getName(), iClass);
+                    }
+
+                    this.classIndex = index;
+                }
+            }
+        }
+
+        return this.classIndex;
+    }
+
     public MethodContext resolveMethodContext(String completeMethodSignature) {
         int parameterStart = completeMethodSignature.lastIndexOf('(');
         if (parameterStart == -1)
@@ -215,6 +341,42 @@ public class JarContext {
         return classContext.resolveMethodContext(methodSignature);
     }
 
+    private static boolean isAPI(String signature) {
+        PrefixTrie packages = apiPackages;
+        return packages == null || packages.matchesPrefixOf(signature);
+    }
+
+    /**
+     * Resolves the declared target of a call site. Results (including unresolved targets) are cached, and no
+     * {@link MethodContext} is created for the called method, so resolving calls towards the SDK is cheap.
+     * @param declaredTarget declared target of the call
+     * @return resolved call
+     */
+    public ResolvedCall resolveCall(MethodReference declaredTarget) throws IOException {
+        ResolvedCall resolvedCall = this.resolvedCalls.get(declaredTarget);
+        if (resolvedCall != null)
+            return resolvedCall;
+
+        ClassContext classContext = this.resolveClassContext(declaredTarget.getDeclaringClass().getName().toString());
+        try {
+            IMethod method = WalaUtils.getMethod(classContext.getIClass(), declaredTarget.getSelector());
+            if (method == null)
+                throw new RuntimeException("No such a method: " + declaredTarget.getSelector());
+
+            boolean inJar = this.isClassInJar(this.resolveClassContext(method.getDeclaringClass()), false);
+            String signature = method.getSignature();
+            int apiId = inJar && !isAPI(signature) ?
+                    ApiSymbolTable.getInstance().getId(signature) :
+                    ApiSymbolTable.getInstance().getOrCreateId(signature);
+            resolvedCall = new ResolvedCall(method, signature, apiId, inJar);
+        } catch (RuntimeException e) {
+            resolvedCall = ResolvedCall.NOT_RESOLVED;
+        }
+
+        ResolvedCall previous = this.resolvedCalls.putIfAbsent(declaredTarget, resolvedCall);
+        return previous != null ? previous : resolvedCall;
+    }
+
     public Collection<IClass> getClassesInContext(boolean keepIgnored) {
         Collection<IClass> result = new HashSet<>();
         for (IClass iClass : this.fullHierarchy) {
@@ -225,7 +387,7 @@ public class JarContext {
         return result;
     }
 
-    public Collection<IClass> getClassesInJar(boolean useClassFilter) throws IOException {
+    public synchronized Collection<IClass> getClassesInJar(boolean useClassFilter) throws IOException {
         if (classesInJar.containsKey(useClassFilter))
             return classesInJar.get(useClassFilter);
 
@@ -236,11 +398,19 @@ public class JarContext {
         return resultingClasses;
     }
 
+    /**
+     * Enumerates the classes in jar in a single pass over the central directory of the jar, following the order of
+     * the entries
+     */
     protected Collection<IClass> internalGetClassesInJar(boolean useClassFilter) throws IOException {
         List<IClass> resultingClasses = new ArrayList<>();
-        ZipInputStream zip = new ZipInputStream(new FileInputStream(this.jarPath));
-        for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
-            if (!entry.isDirectory() && entry.getName().endsWith(".class")) {
+        try (ZipFile zip = new ZipFile(this.jarPath)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory() || !entry.getName().endsWith(".class") || this.isIgnoredEntry(entry.getName()))
+                    continue;
+
                 // This ZipEntry represents a class. Now, what class does it represent?
                 String className = entry.getName().replace('/', '.'); // including ".class"
                 className = className.substring(0, className.length() - ".class".length());
@@ -255,15 +425,32 @@ public class JarContext {
         return resultingClasses;
     }
 
+    /**
+     * Checks whether an entry of the jar must not be considered as a class of the jar
+     * @param entryName name of the entry (e.g., com/example/Main.class)
+     */
+    protected boolean isIgnoredEntry(String entryName) {
+        return false;
+    }
+
     public boolean isClassInJar(ClassContext context, boolean useClassFilter) throws IOException {
-        Collection<IClass> classesInJar = this.getClassesInJar(useClassFilter);
+        return this.getClassesInJarIndex(useClassFilter).contains(context.getIClass());
+    }
 
-        for (IClass iClass : classesInJar) {
-            if (iClass.equals(context.getIClass()))
-                return true;
-        }
+    /**
+     * Returns the classes in jar as an identity set (classes are never equal unless they are the same object), so
+     * that membership can be checked in constant time
+     */
+    private Set<IClass> getClassesInJarIndex(boolean useClassFilter) throws IOException {
+        Set<IClass> index = this.classesInJarIndex.get(useClassFilter);
+        if (index != null)
+            return index;
 
-        return false;
+        index = Collections.newSetFromMap(new IdentityHashMap<>());
+        index.addAll(this.getClassesInJar(useClassFilter));
+
+        Set<IClass> previous = this.classesInJarIndex.putIfAbsent(useClassFilter, index);
+        return previous != null ? previous : index;
     }
 
     public Collection<IClass> getClassesInContext() {
@@ -2,7 +2,6 @@ package it.unimol.acryl.static_analysis.contexts;
 
 import com.ibm.wala.classLoader.IBytecodeMethod;
 import com.ibm.wala.classLoader.IMethod;
-import com.ibm.wala.ipa.callgraph.AnalysisOptions;
 import com.ibm.wala.ipa.callgraph.CGNode;
 import com.ibm.wala.ipa.callgraph.impl.Everywhere;
 import com.ibm.wala.shrikeCT.AnnotationsReader;
@@ -10,43 +9,60 @@ import com.ibm.wala.shrikeCT.InvalidClassFileException;
 import com.ibm.wala.ssa.*;
 import com.ibm.wala.types.annotations.Annotation;
 import it.unimol.acryl.analysis.AugmentedSymbolTable;
+import it.unimol.acryl.static_analysis.utils.ApiSymbolTable;
 
+import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Simone Scalabrino.
  */
 public class MethodContext {
     private final IMethod method;
-    private final IR intermediateRepresentation;
-    private AugmentedSymbolTable augmentedSymbolTable;
+    private volatile WeakReference<IR> intermediateRepresentation;
+    private volatile WeakReference<AugmentedSymbolTable> augmentedSymbolTable;
+    private volatile boolean withoutBody;
+    private final Map<Integer, int[][]> calledAPIsByBlock;
+    private volatile BytecodeSummary bytecodeSummary;
 
     private final ClassContext context;
 
     public MethodContext(IMethod method, ClassContext context) {
         this.method = method;
         this.context = context;
+        this.calledAPIsByBlock = new ConcurrentHashMap<>();
 
-
-        this.intermediateRepresentation = this.getJarContext().getAnalysisCache().getSSACache().findOrCreateIR(
-                method,
-                Everywhere.EVERYWHERE,
-                this.getJarContext().getAnalysisOptions().getSSAOptions());
-
-        AnalysisOptions options = new AnalysisOptions();
-        IRFactory<IMethod> factory = new DefaultIRFactory();
+        this.intermediateRepresentation = new WeakReference<>(null);
+        this.augmentedSymbolTable = new WeakReference<>(null);
     }
 
+    /**
+     * Returns the augmented symbol table of the method. Tables are kept in the bounded cache of the jar context: if
+     * the table was evicted and nobody else references it, it is built again.
+     */
     public AugmentedSymbolTable getAugmentedSymbolTable() {
-        if (this.augmentedSymbolTable == null)
-            this.buildAugmentedSymbolTable();
+        AugmentedSymbolTable result = this.getJarContext().getSymbolTableCache().get(this, key -> {
+            AugmentedSymbolTable alive = this.augmentedSymbolTable.get();
+            if (alive != null)
+                return alive;
+
+            AugmentedSymbolTable symbolTable = new AugmentedSymbolTable(this);
+            symbolTable.update();
+            return symbolTable;
+        });
 
-        return augmentedSymbolTable;
+        this.augmentedSymbolTable = new WeakReference<>(result);
+        return result;
     }
 
     public void buildAugmentedSymbolTable() {
-        this.augmentedSymbolTable = new AugmentedSymbolTable(this);
-        this.augmentedSymbolTable.update();
+        AugmentedSymbolTable symbolTable = new AugmentedSymbolTable(this);
+        symbolTable.update();
+
+        this.getJarContext().getSymbolTableCache().put(this, symbolTable);
+        this.augmentedSymbolTable = new WeakReference<>(symbolTable);
     }
 
     public ClassContext getClassContext() {
@@ -57,12 +73,72 @@ public class MethodContext {
         return context.getJarContext();
     }
 
+    /**
+     * Returns the IR of the method, building it lazily. IRs are kept in the bounded cache of the jar context: if the
+     * IR was evicted and nobody else references it, it is built again.
+     * @return IR of the method, or null if the method has no body
+     */
     public IR getIntermediateRepresentation() {
-        return intermediateRepresentation;
+        if (this.withoutBody)
+            return null;
+
+        JarContext jarContext = this.getJarContext();
+        IR result = jarContext.getIRCache().get(this.method, key -> {
+            IR alive = this.intermediateRepresentation.get();
+            return alive != null ? alive : jarContext.buildIR(key);
+        });
+
+        if (result == null)
+            this.withoutBody = true;
+        else if (this.intermediateRepresentation.get() != result)
+            this.intermediateRepresentation = new WeakReference<>(result);
+
+        return result;
+    }
+
+    /**
+     * Returns the summary of the bytecode of the method, computed only once
+     */
+    public BytecodeSummary getBytecodeSummary() {
+        BytecodeSummary result = this.bytecodeSummary;
+        if (result == null) {
+            result = BytecodeSummary.scan(this);
+            this.bytecodeSummary = result;
+        }
+
+        return result;
     }
 
     public boolean isConcrete() {
-        return this.intermediateRepresentation != null;
+        return this.getIntermediateRepresentation() != null;
+    }
+
+    /**
+     * Returns the ids (in the {@link ApiSymbolTable}) of the methods called in
+     * a basic block of this method. Calls are resolved through {@link JarContext#resolveCall} and the summary of each
+     * block is computed only once.
+     * @param block basic block of this method
+     * @param includeCallsInJar if false, calls towards methods of the jar are ignored; otherwise, the ones without an id
+     *                          (see {@link ResolvedCall#getApiId()}) are still ignored
+     * @return ids of the called methods, possibly with duplicates
+     */
+    public int[] getCalledAPIIds(ISSABasicBlock block, boolean includeCallsInJar) throws IOException {
+        int[][] summary = this.calledAPIsByBlock.get(block.getNumber());
+        if (summary == null) {
+            List<ResolvedCall> calls = new ArrayList<>();
+            for (SSAInstruction instruction : block) {
+                if (instruction instanceof SSAAbstractInvokeInstruction)
+                    calls.add(this.getJarContext().resolveCall(((SSAAbstractInvokeInstruction) instruction).getDeclaredTarget()));
+            }
+
+            summary = new int[][] {
+                    calls.stream().filter(call -> !call.isInJar()).mapToInt(ResolvedCall::getApiId).toArray(),
+                    calls.stream().mapToInt(ResolvedCall::getApiId).filter(id -> id != ApiSymbolTable.UNKNOWN).toArray()
+            };
+            this.calledAPIsByBlock.putIfAbsent(block.getNumber(), summary);
+        }
+
+        return summary[includeCallsInJar ? 1 : 0];
     }
 
     public CGNode getCGNode() {
@@ -110,7 +186,7 @@ public class MethodContext {
     }
 
     public int getJavaLineForInstruction(SSAInstruction instruction) throws InvalidClassFileException {
-        IBytecodeMethod bytecodeMethod = (IBytecodeMethod) this.intermediateRepresentation.getMethod();
+        IBytecodeMethod bytecodeMethod = (IBytecodeMethod) this.method;
         try {
             int bytecodeIndex = bytecodeMethod.getBytecodeIndex(instruction.iindex);
             return bytecodeMethod.getLineNumber(bytecodeIndex);
@@ -120,7 +196,7 @@ public class MethodContext {
     }
 
     public List<SSAInstruction> getInstructionsForJavaLine(int targetSourceLine) throws InvalidClassFileException {
-        Iterator<SSAInstruction> instructionIterator = this.intermediateRepresentation.iterateAllInstructions();
+        Iterator<SSAInstruction> instructionIterator = this.getIntermediateRepresentation().iterateAllInstructions();
 
         List<SSAInstruction> result = new ArrayList<>();
         while (instructionIterator.hasNext()) {
@@ -136,8 +212,8 @@ public class MethodContext {
     }
 
     public SSAInstruction getInstructionForBytecodeLine(int targetBytecodeLine) throws InvalidClassFileException {
-        IBytecodeMethod bytecodeMethod = (IBytecodeMethod) this.intermediateRepresentation.getMethod();
-        Iterator<SSAInstruction> instructionIterator = this.intermediateRepresentation.iterateAllInstructions();
+        IBytecodeMethod bytecodeMethod = (IBytecodeMethod) this.method;
+        Iterator<SSAInstruction> instructionIterator = this.getIntermediateRepresentation().iterateAllInstructions();
 
         while (instructionIterator.hasNext()) {
             SSAInstruction instruction = instructionIterator.next();
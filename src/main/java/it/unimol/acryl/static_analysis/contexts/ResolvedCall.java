@@ -0,0 +1,52 @@
+package it.unimol.acryl.static_analysis.contexts;
+
+import com.ibm.wala.classLoader.IMethod;
+import it.unimol.acryl.static_analysis.utils.ApiSymbolTable;
+
+/**
+ * Outcome of the resolution of the declared target of a call site (see {@link JarContext#resolveCall}).
+ */
+public class ResolvedCall {
+    public static final String NOT_RESOLVED_SIGNATURE = "<??? Not resolved ???>";
+    public static final ResolvedCall NOT_RESOLVED = new ResolvedCall(null, NOT_RESOLVED_SIGNATURE,
+            ApiSymbolTable.getInstance().getOrCreateId(NOT_RESOLVED_SIGNATURE), false);
+
+    private final IMethod method;
+    private final String signature;
+    private final int apiId;
+    private final boolean inJar;
+
+    ResolvedCall(IMethod method, String signature, int apiId, boolean inJar) {
+        this.method    = method;
+        this.signature = signature;
+        this.apiId     = apiId;
+        this.inJar     = inJar;
+    }
+
+    /**
+     * Returns the called method, or null if the target was not resolved
+     */
+    public IMethod getMethod() {
+        return method;
+    }
+
+    public String getSignature() {
+        return signature;
+    }
+
+    /**
+     * Returns the id of the signature in the {@link ApiSymbolTable}, or {@link ApiSymbolTable#UNKNOWN} for methods of
+     * the jar that are not APIs (see {@link JarContext#setAPIPackageNames})
+     */
+    public int getApiId() {
+        return apiId;
+    }
+
+    public boolean isInJar() {
+        return inJar;
+    }
+
+    public boolean isResolved() {
+        return method != null;
+    }
+}
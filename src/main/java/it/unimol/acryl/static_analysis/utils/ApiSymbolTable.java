@@ -0,0 +1,89 @@
+package it.unimol.acryl.static_analysis.utils;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Global table assigning dense integer ids to API signatures, so that sets of APIs can be represented as bitsets and
+ * per-API data can be stored in arrays. Ids are never released. Safe to be used from multiple threads.
+ */
+public class ApiSymbolTable {
+    public static final int UNKNOWN = -1;
+
+    private static final ApiSymbolTable instance = new ApiSymbolTable();
+
+    private final Map<String, Integer> ids;
+    private volatile String[] signatures;
+    private int size;
+
+    private ApiSymbolTable() {
+        this.ids        = new ConcurrentHashMap<>();
+        this.signatures = new String[1024];
+        this.size       = 0;
+    }
+
+    public static ApiSymbolTable getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns the id of the signature, assigning a new one if needed
+     * @param signature API signature
+     * @return id of the signature
+     */
+    public int getOrCreateId(String signature) {
+        Integer id = this.ids.get(signature);
+        if (id != null)
+            return id;
+
+        synchronized (this) {
+            id = this.ids.get(signature);
+            if (id == null) {
+                if (this.size == this.signatures.length)
+                    this.signatures = Arrays.copyOf(this.signatures, this.size * 2);
+
+                id = this.size;
+                this.signatures[id] = signature;
+                this.size++;
+                this.ids.put(signature, id);
+            }
+
+            return id;
+        }
+    }
+
+    /**
+     * Returns the id of the signature, or {@link #UNKNOWN} if no id was assigned to it
+     * @param signature API signature
+     * @return id of the signature
+     */
+    public int getId(String signature) {
+        return this.ids.getOrDefault(signature, UNKNOWN);
+    }
+
+    public String getSignature(int id) {
+        return this.signatures[id];
+    }
+
+    /**
+     * Returns the (distinct) ids of the signatures in ascending order, assigning new ids if needed
+     * @param signatures API signatures
+     * @return sorted ids
+     */
+    public int[] getSortedIds(Collection<String> signatures) {
+        return signatures.stream().mapToInt(this::getOrCreateId).sorted().distinct().toArray();
+    }
+
+    public Set<String> getSignatures(BitSet ids) {
+        Set<String> result = new HashSet<>();
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            result.add(this.getSignature(id));
+        }
+
+        return result;
+    }
+
+    public synchronized int size() {
+        return this.size;
+    }
+}
@@ -0,0 +1,161 @@
+package it.unimol.acryl.static_analysis.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Cache bounded by the total weight of its values, evicting the least recently used entries. Values are loaded
+ * outside the lock of the cache: if two threads load the same key, the value loaded first is kept and returned to
+ * both. Null values are never cached. Safe to be used from multiple threads.
+ * @param <K> type of the keys
+ * @param <V> type of the values
+ */
+public class BoundedCache<K, V> {
+    private final String name;
+    private final long maxWeight;
+    private final ToIntFunction<V> weigher;
+    private final LinkedHashMap<K, Entry<V>> entries;
+    private long weight;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long loadTime;
+
+    public BoundedCache(String name, long maxWeight, ToIntFunction<V> weigher) {
+        this.name      = name;
+        this.maxWeight = maxWeight;
+        this.weigher   = weigher;
+        this.entries   = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Returns the value of the key, loading it if it is not in the cache
+     * @param key key
+     * @param loader function that computes the value of the key
+     * @return value of the key (possibly null, if the loader returns null)
+     */
+    public V get(K key, Function<K, V> loader) {
+        synchronized (this) {
+            Entry<V> entry = this.entries.get(key);
+            if (entry != null) {
+                this.hits++;
+                return entry.value;
+            }
+
+            this.misses++;
+        }
+
+        long start = System.nanoTime();
+        V value = loader.apply(key);
+        long elapsed = System.nanoTime() - start;
+
+        synchronized (this) {
+            this.loadTime += elapsed;
+
+            if (value == null)
+                return null;
+
+            Entry<V> entry = this.entries.get(key);
+            if (entry != null)
+                return entry.value;
+
+            this.insert(key, value);
+            return value;
+        }
+    }
+
+    public synchronized V getIfPresent(K key) {
+        Entry<V> entry = this.entries.get(key);
+
+        return entry != null ? entry.value : null;
+    }
+
+    public synchronized void put(K key, V value) {
+        Entry<V> previous = this.entries.remove(key);
+        if (previous != null)
+            this.weight -= previous.weight;
+
+        if (value != null)
+            this.insert(key, value);
+    }
+
+    public synchronized void invalidate(K key) {
+        Entry<V> previous = this.entries.remove(key);
+        if (previous != null)
+            this.weight -= previous.weight;
+    }
+
+    public synchronized void clear() {
+        this.entries.clear();
+        this.weight = 0;
+    }
+
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    public synchronized long getWeight() {
+        return this.weight;
+    }
+
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    public synchronized long getEvictions() {
+        return this.evictions;
+    }
+
+    /**
+     * Returns the total time spent loading values, in milliseconds
+     */
+    public synchronized long getLoadTime() {
+        return this.loadTime / 1_000_000;
+    }
+
+    public synchronized double getHitRate() {
+        long requests = this.hits + this.misses;
+
+        return requests == 0 ? 0 : (double) this.hits / requests;
+    }
+
+    private void insert(K key, V value) {
+        int valueWeight = Math.max(1, this.weigher.applyAsInt(value));
+        this.entries.put(key, new Entry<>(value, valueWeight));
+        this.weight += valueWeight;
+
+        // The entry just inserted is never evicted, even if it exceeds the maximum weight alone
+        Iterator<Map.Entry<K, Entry<V>>> iterator = this.entries.entrySet().iterator();
+        while (this.weight > this.maxWeight && this.entries.size() > 1) {
+            Map.Entry<K, Entry<V>> eldest = iterator.next();
+            this.weight -= eldest.getValue().weight;
+            iterator.remove();
+            this.evictions++;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s cache: %d entries (weight %d/%d), hit rate %.1f%% (%d hits, %d misses), %d evictions, %d ms spent loading",
+                this.name, this.entries.size(), this.weight, this.maxWeight, this.getHitRate() * 100,
+                this.hits, this.misses, this.evictions, this.getLoadTime());
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final int weight;
+
+        private Entry(V value, int weight) {
+            this.value  = value;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package it.unimol.acryl.static_analysis.utils;
+
+import it.unimol.acryl.graphs.CompactCFG;
+
+import java.util.*;
+
+/**
+ * Reachability among the basic blocks of a CFG (following both normal and exceptional edges), computed once per
+ * method. The blocks reachable from each strongly connected component are stored as a bitset of block numbers, built
+ * bottom-up on the condensation of the CFG, so each query is a lookup and regions are bitset intersections.
+ */
+public class CFGReachability {
+    private final CompactCFG graph;
+    private final int[] componentOf;
+    private final List<BitSet> reachableFrom;
+    private final Map<Integer, BitSet> reachingCache;
+
+    public CFGReachability(CompactCFG graph) {
+        this.graph          = graph;
+        this.componentOf    = new int[graph.size()];
+        this.reachableFrom  = new ArrayList<>();
+        this.reachingCache  = new HashMap<>();
+
+        this.computeComponents();
+    }
+
+    /**
+     * Computes the strongly connected components (Tarjan's algorithm, iterative version). Components are found in
+     * reverse topological order, so the ones reached by a component are already closed when it is found.
+     */
+    private void computeComponents() {
+        int size = this.graph.size();
+        int[] index = new int[size];
+        Arrays.fill(index, -1);
+        int[] lowLink = new int[size];
+        int[] next = new int[size];
+        int[] visitStack = new int[size];
+        int[] componentStack = new int[size];
+        boolean[] onComponentStack = new boolean[size];
+        int counter = 0;
+        int visitTop = 0;
+        int componentTop = 0;
+
+        for (int root = 0; root < size; root++) {
+            if (index[root] != -1 || this.graph.getBlock(root) == null)
+                continue;
+
+            index[root] = lowLink[root] = counter++;
+            next[root] = this.graph.getSuccessorStart(root);
+            visitStack[visitTop++] = root;
+            componentStack[componentTop++] = root;
+            onComponentStack[root] = true;
+
+            while (visitTop > 0) {
+                int block = visitStack[visitTop - 1];
+                if (next[block] < this.graph.getSuccessorEnd(block)) {
+                    int successor = this.graph.getSuccessor(next[block]++);
+                    if (index[successor] == -1) {
+                        index[successor] = lowLink[successor] = counter++;
+                        next[successor] = this.graph.getSuccessorStart(successor);
+                        visitStack[visitTop++] = successor;
+                        componentStack[componentTop++] = successor;
+                        onComponentStack[successor] = true;
+                    } else if (onComponentStack[successor]) {
+                        lowLink[block] = Math.min(lowLink[block], index[successor]);
+                    }
+                    continue;
+                }
+
+                visitTop--;
+                if (visitTop > 0) {
+                    int parent = visitStack[visitTop - 1];
+                    lowLink[parent] = Math.min(lowLink[parent], lowLink[block]);
+                }
+
+                if (lowLink[block] == index[block]) {
+                    int component = this.reachableFrom.size();
+                    BitSet reachable = new BitSet();
+                    int componentEnd = componentTop;
+                    int member;
+                    do {
+                        member = componentStack[--componentTop];
+                        onComponentStack[member] = false;
+                        this.componentOf[member] = component;
+                        reachable.set(member);
+                    } while (member != block);
+
+                    for (int i = componentTop; i < componentEnd; i++) {
+                        int source = componentStack[i];
+                        for (int j = this.graph.getSuccessorStart(source); j < this.graph.getSuccessorEnd(source); j++) {
+                            int successorComponent = this.componentOf[this.graph.getSuccessor(j)];
+                            if (successorComponent != component)
+                                reachable.or(this.reachableFrom.get(successorComponent));
+                        }
+                    }
+
+                    this.reachableFrom.add(reachable);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if there is a path from a block to another one (a block always reaches itself)
+     */
+    public boolean reaches(int from, int to) {
+        return this.reachableFrom.get(this.componentOf[from]).get(to);
+    }
+
+    /**
+     * Returns the numbers of the blocks reachable from the given block, including itself. The result must not be
+     * modified.
+     */
+    public BitSet getReachableFrom(int from) {
+        return this.reachableFrom.get(this.componentOf[from]);
+    }
+
+    /**
+     * Returns the numbers of the blocks from which the given block is reachable, including itself. The result is
+     * computed once per block and must not be modified.
+     */
+    public BitSet getReaching(int to) {
+        return this.reachingCache.computeIfAbsent(to, number -> {
+            BitSet result = new BitSet();
+            for (int block = 0; block < this.graph.size(); block++) {
+                if (this.graph.getBlock(block) != null && this.reaches(block, number))
+                    result.set(block);
+            }
+
+            return result;
+        });
+    }
+}
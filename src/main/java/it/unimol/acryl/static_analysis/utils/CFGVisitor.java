@@ -1,10 +1,9 @@
 package it.unimol.acryl.static_analysis.utils;
 
 import com.ibm.wala.ssa.*;
+import it.unimol.acryl.graphs.CompactCFG;
 import it.unimol.acryl.static_analysis.contexts.MethodContext;
 import it.unimol.acryl.graphs.SubCFG;
-import org.jgrapht.alg.shortestpath.DijkstraShortestPath;
-import org.jgrapht.graph.DefaultEdge;
 
 import java.util.*;
 
@@ -13,9 +12,9 @@ import java.util.*;
  */
 public class CFGVisitor {
     private final SSACFG cfg;
-    @SuppressWarnings("unused")
     private final MethodContext context;
-    private GraphUtils.BackDominators<ISSABasicBlock> backDominators;
+    private CompactCFG graph;
+    private CFGReachability reachability;
 
     public CFGVisitor(MethodContext context) {
         this.context = context;
@@ -33,37 +32,53 @@ public class CFGVisitor {
 
     @SuppressWarnings("unused")
     public void visit(ISSABasicBlock from, CFGVisitorAction action) {
-        SubCFG subCFG = new SubCFG(cfg);
+        this.visit(this.getReachability().getReachableFrom(from.getNumber()), action);
+    }
+
+    /**
+     * Visits the blocks that are on a path from a block to another one (excluding the latter)
+     */
+    public void visit(ISSABasicBlock from, ISSABasicBlock to, CFGVisitorAction action) {
+        this.visit(this.getBlocksBetween(from, to), action);
+    }
+
+    private BitSet getBlocksBetween(ISSABasicBlock from, ISSABasicBlock to) {
+        BitSet blocks = (BitSet) this.getReachability().getReachableFrom(from.getNumber()).clone();
+        blocks.and(this.getReachability().getReaching(to.getNumber()));
+        blocks.clear(to.getNumber());
+        blocks.clear(this.cfg.entry().getNumber());
+        blocks.clear(this.cfg.exit().getNumber());
 
-        DijkstraShortestPath<ISSABasicBlock, DefaultEdge> pathGenerator = new DijkstraShortestPath<>(subCFG);
+        return blocks;
+    }
 
+    private void visit(BitSet blocks, CFGVisitorAction action) {
         for (ISSABasicBlock basicBlock : cfg) {
             if (basicBlock.isEntryBlock() || basicBlock.isExitBlock())
                 continue;
 
-            if (pathGenerator.getPath(from, basicBlock) != null) {
+            if (blocks.get(basicBlock.getNumber()))
                 action.visit(basicBlock);
-            }
         }
     }
 
-    public void visit(ISSABasicBlock from, ISSABasicBlock to, CFGVisitorAction action) {
-        SubCFG subCFG = new SubCFG(cfg);
-
-        DijkstraShortestPath<ISSABasicBlock, DefaultEdge> pathGenerator = new DijkstraShortestPath<>(subCFG);
-
-        for (ISSABasicBlock basicBlock : cfg) {
-            if (basicBlock.isEntryBlock() || basicBlock.isExitBlock())
-                continue;
+    /**
+     * Returns the compact representation of the CFG, shared by all the parts extracted by this visitor
+     */
+    public CompactCFG getGraph() {
+        if (graph == null) {
+            graph = new CompactCFG(this.cfg);
+        }
 
-            if (basicBlock == to)
-                continue;
+        return graph;
+    }
 
-            if (pathGenerator.getPath(from, basicBlock) != null &&
-                    pathGenerator.getPath(basicBlock, to) != null) {
-                action.visit(basicBlock);
-            }
+    private CFGReachability getReachability() {
+        if (reachability == null) {
+            reachability = new CFGReachability(this.getGraph());
         }
+
+        return reachability;
     }
 
     public void visitConditionalBranchingBlock(ISSABasicBlock branchingBlock, CFGSubGraphVisitorAction actionOnTrue, CFGSubGraphVisitorAction actionOnFalse)
@@ -71,22 +86,17 @@ public class CFGVisitor {
         assert this.cfg.getNormalSuccessors(branchingBlock).size() > 1;
         assert branchingBlock.getLastInstruction() instanceof SSAConditionalBranchInstruction;
 
-        if (backDominators == null) {
-            backDominators = GraphUtils.buildBackDominators(this.cfg);
-        }
-
         SSAConditionalBranchInstruction branchInstruction = (SSAConditionalBranchInstruction) branchingBlock.getLastInstruction();
 
-        ISSABasicBlock endingBlock  = GraphUtils.getBackDominator(this.backDominators, branchingBlock);
+        int endingBlockNumber = this.getGraph().getImmediatePostDominator(branchingBlock.getNumber());
 
-        if (endingBlock == null)
+        if (endingBlockNumber < 0)
             throw new NoEndingBlockException();
 
+        ISSABasicBlock endingBlock = this.getGraph().getBlock(endingBlockNumber);
         for (ISSABasicBlock normalSuccessor : this.cfg.getNormalSuccessors(branchingBlock)) {
-            List<ISSABasicBlock> involvedBlocks = new ArrayList<>();
-            this.visit(normalSuccessor, endingBlock, involvedBlocks::add);
-
-            SubCFG subCFG = new SubCFG(this.cfg, involvedBlocks);
+            SubCFG subCFG = new SubCFG(this.getGraph(), this.getBlocksBetween(normalSuccessor, endingBlock), true);
+            subCFG.setMethodContext(this.context);
 
             int successorNumber = cfg.getNumber(normalSuccessor);
             SSACFG.BasicBlock targetBlock = cfg.getBlockForInstruction(branchInstruction.getTarget());
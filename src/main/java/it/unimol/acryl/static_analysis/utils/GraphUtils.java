@@ -9,6 +9,7 @@ import org.jgrapht.graph.SimpleDirectedGraph;
 import org.jgrapht.traverse.DepthFirstIterator;
 
 import java.util.*;
+import java.util.function.Function;
 import java.util.logging.Logger;
 
 /**
@@ -18,7 +19,7 @@ public class GraphUtils {
     public static BackDominators<ISSABasicBlock> buildBackDominators(SSACFG cfg) {
         SubCFG realCFG = new SubCFG(cfg, false);
 
-        return new BackDominators<>(realCFG, cfg.exit());
+        return new BackDominators<>(realCFG.toGraph(), cfg.exit());
     }
 
     @SuppressWarnings("LoopStatementThatDoesntLoop")
@@ -32,6 +33,77 @@ public class GraphUtils {
         return null;
     }
 
+    /**
+     * Computes the strongly connected components of a graph (Tarjan's algorithm, iterative version).
+     * Components are returned in reverse topological order: each component comes after all the components it reaches.
+     *
+     * @param vertices vertices of the graph
+     * @param successors function returning the successors of a vertex; successors must belong to vertices
+     * @param <V> vertex type
+     * @return list of strongly connected components
+     */
+    public static <V> List<List<V>> getStronglyConnectedComponents(Collection<V> vertices, Function<V, ? extends Collection<V>> successors) {
+        Map<V, Integer> indexes = new HashMap<>();
+        Map<V, Integer> lowLinks = new HashMap<>();
+        Deque<V> componentStack = new ArrayDeque<>();
+        Set<V> onComponentStack = new HashSet<>();
+        List<List<V>> components = new ArrayList<>();
+
+        Deque<V> visitStack = new ArrayDeque<>();
+        Deque<Iterator<V>> iteratorStack = new ArrayDeque<>();
+        for (V root : vertices) {
+            if (indexes.containsKey(root))
+                continue;
+
+            visitStack.push(root);
+            iteratorStack.push(successors.apply(root).iterator());
+            indexes.put(root, indexes.size());
+            lowLinks.put(root, indexes.get(root));
+            componentStack.push(root);
+            onComponentStack.add(root);
+
+            while (!visitStack.isEmpty()) {
+                V vertex = visitStack.peek();
+                Iterator<V> iterator = iteratorStack.peek();
+
+                if (iterator.hasNext()) {
+                    V successor = iterator.next();
+                    if (!indexes.containsKey(successor)) {
+                        visitStack.push(successor);
+                        iteratorStack.push(successors.apply(successor).iterator());
+                        indexes.put(successor, indexes.size());
+                        lowLinks.put(successor, indexes.get(successor));
+                        componentStack.push(successor);
+                        onComponentStack.add(successor);
+                    } else if (onComponentStack.contains(successor)) {
+                        lowLinks.put(vertex, Math.min(lowLinks.get(vertex), indexes.get(successor)));
+                    }
+                    continue;
+                }
+
+                visitStack.pop();
+                iteratorStack.pop();
+                if (!visitStack.isEmpty()) {
+                    V parent = visitStack.peek();
+                    lowLinks.put(parent, Math.min(lowLinks.get(parent), lowLinks.get(vertex)));
+                }
+
+                if (lowLinks.get(vertex).equals(indexes.get(vertex))) {
+                    List<V> component = new ArrayList<>();
+                    V member;
+                    do {
+                        member = componentStack.pop();
+                        onComponentStack.remove(member);
+                        component.add(member);
+                    } while (!member.equals(vertex));
+                    components.add(component);
+                }
+            }
+        }
+
+        return components;
+    }
+
     private static <V> DirectedGraph<V, DefaultEdge> reverseGraph(DirectedGraph<V, DefaultEdge> graph) {
         DirectedGraph<V, DefaultEdge> result = new SimpleDirectedGraph<>(DefaultEdge.class);
 
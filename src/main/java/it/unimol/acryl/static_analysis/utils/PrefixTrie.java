@@ -0,0 +1,49 @@
+package it.unimol.acryl.static_analysis.utils;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Set of prefixes compiled into a trie, so that checking whether a string starts with any of them takes time
+ * proportional to the length of the matched prefix, regardless of the number of prefixes. Not modifiable once built.
+ */
+public class PrefixTrie {
+    private final Node root;
+
+    public PrefixTrie(Collection<String> prefixes) {
+        this.root = new Node();
+
+        for (String prefix : prefixes) {
+            Node node = this.root;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.children.computeIfAbsent(prefix.charAt(i), key -> new Node());
+            }
+            node.terminal = true;
+        }
+    }
+
+    /**
+     * Checks whether the string starts with (or is equal to) any of the prefixes
+     * @param string string to check
+     * @return true if one of the prefixes matches
+     */
+    public boolean matchesPrefixOf(String string) {
+        Node node = this.root;
+        for (int i = 0; !node.terminal; i++) {
+            if (i == string.length())
+                return false;
+
+            node = node.children.get(string.charAt(i));
+            if (node == null)
+                return false;
+        }
+
+        return true;
+    }
+
+    private static class Node {
+        private final Map<Character, Node> children = new HashMap<>();
+        private boolean terminal;
+    }
+}
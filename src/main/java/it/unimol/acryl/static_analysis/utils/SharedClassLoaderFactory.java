@@ -0,0 +1,87 @@
+package it.unimol.acryl.static_analysis.utils;
+
+import com.ibm.wala.classLoader.ClassLoaderFactoryImpl;
+import com.ibm.wala.classLoader.IClassLoader;
+import com.ibm.wala.classLoader.Module;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.ipa.cha.ClassHierarchyFactory;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.util.config.SetOfClasses;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Class loader factory that shares the Primordial and Extension loaders (i.e., the JRE and the Android SDK) among all
+ * the class hierarchies built in the process with the same modules. Only the Application loader (i.e., the app under
+ * analysis) is built from scratch for every hierarchy, so the SDK is parsed only once. The shared loaders belong to a
+ * hierarchy of their own, which contains only their classes, so that they do not keep alive the hierarchy of the first
+ * app that used them.
+ */
+public class SharedClassLoaderFactory extends ClassLoaderFactoryImpl {
+    private static final List<ClassLoaderReference> SHARED_LOADERS = Arrays.asList(ClassLoaderReference.Primordial, ClassLoaderReference.Extension);
+    private static final Map<String, IClassLoader> sharedLoaders = new HashMap<>();
+
+    public SharedClassLoaderFactory(SetOfClasses exclusions) {
+        super(exclusions);
+    }
+
+    @Override
+    protected IClassLoader makeNewClassLoader(ClassLoaderReference classLoaderReference, IClassHierarchy cha, IClassLoader parent, AnalysisScope scope) throws IOException {
+        if (!SHARED_LOADERS.contains(classLoaderReference))
+            return super.makeNewClassLoader(classLoaderReference, cha, parent, scope);
+
+        String key = getKey(classLoaderReference, scope);
+        synchronized (sharedLoaders) {
+            IClassLoader loader = sharedLoaders.get(key);
+            if (loader == null) {
+                IClassHierarchy sharedHierarchy = makeSharedHierarchy(scope);
+                for (ClassLoaderReference reference : SHARED_LOADERS) {
+                    sharedLoaders.put(getKey(reference, scope), sharedHierarchy.getLoader(reference));
+                }
+                loader = sharedLoaders.get(key);
+            }
+
+            return loader;
+        }
+    }
+
+    /**
+     * Builds a hierarchy with the same Primordial and Extension modules of a scope and without the Application ones
+     */
+    private IClassHierarchy makeSharedHierarchy(AnalysisScope scope) throws IOException {
+        AnalysisScope sharedScope = AnalysisScope.createJavaAnalysisScope();
+        sharedScope.setExclusions(scope.getExclusions());
+        for (ClassLoaderReference reference : SHARED_LOADERS) {
+            for (Module module : scope.getModules(reference)) {
+                sharedScope.addToScope(reference, module);
+            }
+        }
+
+        try {
+            return ClassHierarchyFactory.make(sharedScope, new ClassLoaderFactoryImpl(this.getExclusions()));
+        } catch (ClassHierarchyException e) {
+            throw new RuntimeException("Unable to load the classpath: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Releases the shared loaders. Hierarchies built afterwards will parse the SDK again.
+     */
+    public static void clear() {
+        synchronized (sharedLoaders) {
+            sharedLoaders.clear();
+        }
+    }
+
+    private static String getKey(ClassLoaderReference classLoaderReference, AnalysisScope scope) {
+        StringBuilder key = new StringBuilder();
+        for (ClassLoaderReference reference = classLoaderReference; reference != null; reference = reference.getParent()) {
+            key.append(reference.getName()).append(scope.getModules(reference)).append(';');
+        }
+
+        return key.toString();
+    }
+}
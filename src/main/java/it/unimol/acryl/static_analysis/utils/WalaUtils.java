@@ -1,23 +1,49 @@
 package it.unimol.acryl.static_analysis.utils;
 
+import com.ibm.wala.classLoader.IClass;
 import com.ibm.wala.classLoader.IMethod;
 import com.ibm.wala.classLoader.Language;
 import com.ibm.wala.ipa.callgraph.*;
 import com.ibm.wala.ipa.callgraph.impl.Everywhere;
 import com.ibm.wala.ipa.cha.ClassHierarchy;
 import com.ibm.wala.ssa.*;
+import com.ibm.wala.types.ClassLoaderReference;
 import com.ibm.wala.types.MethodReference;
+import com.ibm.wala.types.Selector;
 import com.ibm.wala.util.config.AnalysisScopeReader;
 import com.ibm.wala.util.io.FileProvider;
 import com.ibm.wala.util.strings.StringStuff;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.*;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 /**
  * @author Simone Scalabrino.
  */
 public class WalaUtils {
+    /**
+     * WALA interns descriptors in an unsynchronized static map. Every operation that may create new descriptors
+     * (IR construction, selector parsing) has to hold this lock when analyses run on multiple threads.
+     */
+    public static final Object TYPE_SYSTEM_LOCK = new Object();
+
+    private static final Map<String, Set<String>> classpathEntries = new HashMap<>();
+
+    /**
+     * Looks up a method of a class, including the inherited ones. WALA caches the inherited methods of each class in an
+     * unsynchronized map, and the classes of the SDK are shared by all the hierarchies, so lookups from multiple threads
+     * have to hold {@link #TYPE_SYSTEM_LOCK}.
+     */
+    public static IMethod getMethod(IClass iClass, Selector selector) {
+        synchronized (TYPE_SYSTEM_LOCK) {
+            return iClass.getMethod(selector);
+        }
+    }
+
     public static IR getIR(ClassHierarchy classHierarchy, String methodSignature) {
         MethodReference methodReference = StringStuff.makeMethodReference(Language.JAVA, methodSignature);
 
@@ -42,12 +68,59 @@ public class WalaUtils {
         return cache.getSSACache().findOrCreateIR(m, Everywhere.EVERYWHERE, options.getSSAOptions());
     }
 
+    /**
+     * Builds the analysis scope of a jar. The classpath (e.g., the Android SDK) is loaded by the Extension loader, so
+     * that it can be shared among hierarchies through {@link SharedClassLoaderFactory}. WALA gives precedence to the
+     * parent loaders, though: if the jar bundles its own copy of a class of the classpath (e.g., org.json), the
+     * classpath is loaded by the Application loader after the jar, as the copy in the jar has to be used.
+     */
     public static AnalysisScope getAnalysisScope(File jarPath, File exclusionPath, File[] classpath) throws IOException {
         File exFile=new FileProvider().getFile(exclusionPath.getPath());
         AnalysisScope scope = AnalysisScopeReader.makeJavaBinaryAnalysisScope(jarPath.getAbsolutePath(),exFile);
+
+        ClassLoaderReference classpathLoader = scope.getLoader(AnalysisScope.EXTENSION);
+        Set<String> classesInJar = getClassEntries(jarPath);
+        for (File file : classpath) {
+            if (!Collections.disjoint(classesInJar, getClasspathEntries(file))) {
+                Logger.getAnonymousLogger().info(jarPath.getName() + " bundles classes of " + file.getName() + ": the classpath is not shared");
+                classpathLoader = scope.getLoader(AnalysisScope.APPLICATION);
+                break;
+            }
+        }
+
         for (File file : classpath) {
-            AnalysisScopeReader.addClassPathToScope(file.getAbsolutePath(), scope, scope.getLoader(AnalysisScope.APPLICATION));
+            AnalysisScopeReader.addClassPathToScope(file.getAbsolutePath(), scope, classpathLoader);
         }
         return scope;
     }
+
+    private static Set<String> getClasspathEntries(File file) throws IOException {
+        String path = file.getAbsolutePath();
+        synchronized (classpathEntries) {
+            Set<String> entries = classpathEntries.get(path);
+            if (entries == null) {
+                entries = getClassEntries(file);
+                classpathEntries.put(path, entries);
+            }
+
+            return entries;
+        }
+    }
+
+    private static Set<String> getClassEntries(File file) throws IOException {
+        Set<String> entries = new HashSet<>();
+        if (!file.isFile())
+            return entries;
+
+        try (ZipFile zip = new ZipFile(file)) {
+            Enumeration<? extends ZipEntry> zipEntries = zip.entries();
+            while (zipEntries.hasMoreElements()) {
+                ZipEntry entry = zipEntries.nextElement();
+                if (!entry.isDirectory() && entry.getName().endsWith(".class"))
+                    entries.add(entry.getName());
+            }
+        }
+
+        return entries;
+    }
 }
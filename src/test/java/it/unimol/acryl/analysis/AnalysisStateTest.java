@@ -0,0 +1,46 @@
+package it.unimol.acryl.analysis;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnalysisStateTest {
+    @Test
+    void testStoredStateIsLoaded() throws IOException {
+        AnalysisState state = new AnalysisState("config");
+        Map<String, String> classKeys = new HashMap<>();
+        classKeys.put("La/A", "1");
+        classKeys.put("La/B", "2");
+        state.setClassKeys(classKeys);
+
+        SDKInfo label = new SDKInfo();
+        label.addChecker(true, new VersionChecker.NullChecker());
+        AnalysisState.MethodState methodState = state.getOrCreateMethod("a.A.m()Z");
+        methodState.setLabel(label);
+        methodState.setLabelDependencies(Collections.singletonList("a.B.n()I"));
+
+        File file = File.createTempFile("state", ".bin");
+        try {
+            state.store(file);
+
+            AnalysisState loaded = AnalysisState.load(file, "config");
+            assertTrue(AnalysisState.sameLabel(label, loaded.getMethod("a.A.m()Z").getLabel()));
+            assertEquals(Collections.singletonList("a.B.n()I"), loaded.getMethod("a.A.m()Z").getLabelDependencies());
+            assertNull(loaded.getMethod("a.A.m()Z").getRows());
+
+            Map<String, String> newKeys = new HashMap<>();
+            newKeys.put("La/A", "1");
+            newKeys.put("La/B", "3");
+            newKeys.put("La/C", "4");
+            assertEquals(new HashSet<>(Arrays.asList("La/B", "La/C")), loaded.getChangedClasses(newKeys));
+
+            assertTrue(AnalysisState.load(file, "other config").isEmpty());
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+}
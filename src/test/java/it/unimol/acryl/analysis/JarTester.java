@@ -3,9 +3,14 @@ package it.unimol.acryl.analysis;
 import com.ibm.wala.ipa.cha.ClassHierarchyException;
 import it.unimol.acryl.static_analysis.contexts.GlobalContext;
 import it.unimol.acryl.static_analysis.contexts.JarContext;
+import org.apache.commons.io.IOUtils;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 /**
  * @author Simone Scalabrino.
@@ -21,4 +26,24 @@ public class JarTester {
     protected JarContext getTestJar() throws ClassHierarchyException, IOException {
         return GlobalContext.getAndroidContext(JAR, CLASSPATH);
     }
+
+    /**
+     * Writes the given compiled classes (e.g., nested fixtures of a test) into a temporary jar, to be deleted by the
+     * caller
+     */
+    public static File writeJar(Class<?>... classes) throws IOException {
+        File jar = File.createTempFile("fixture", ".jar");
+        try (ZipOutputStream stream = new ZipOutputStream(new FileOutputStream(jar))) {
+            for (Class<?> fixture : classes) {
+                String entryName = fixture.getName().replace('.', '/') + ".class";
+                try (InputStream classFile = fixture.getClassLoader().getResourceAsStream(entryName)) {
+                    stream.putNextEntry(new ZipEntry(entryName));
+                    IOUtils.copy(classFile, stream);
+                    stream.closeEntry();
+                }
+            }
+        }
+
+        return jar;
+    }
 }
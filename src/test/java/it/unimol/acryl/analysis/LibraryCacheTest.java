@@ -0,0 +1,113 @@
+package it.unimol.acryl.analysis;
+
+import it.unimol.acryl.reports.ReportRow;
+import it.unimol.acryl.static_analysis.contexts.MethodContext;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LibraryCacheTest {
+    @Test
+    void testStoredEntryIsReusedOnlyWithSameDependencies() throws IOException {
+        Map<String, String> classKeys = new HashMap<>();
+        classKeys.put("Lcom/lib/A", "1");
+        classKeys.put("Lcom/util/U", "2");
+
+        SDKInfo label = new SDKInfo();
+        label.addChecker(true, new VersionChecker.NullChecker());
+        MapLabels labels = new MapLabels();
+        labels.labels.put("com.util.U.check()Z", label);
+
+        AnalysisState.MethodState methodState = new AnalysisState.MethodState();
+        methodState.setAnalysisResult(
+                Collections.singletonList("com.util.U.check()Z"),
+                Arrays.asList("Lcom/util/U", "Landroid/app/Notification"),
+                Collections.singletonList(new ReportRow(1, 0.5, "com.lib.A.m()V", 3)));
+
+        AnalysisState entry = LibraryCache.buildEntry(Collections.singleton("Lcom/lib/A"),
+                Collections.singletonMap("com.lib.A.m()V", methodState), classKeys, labels, "config");
+        assertNotNull(entry);
+
+        File directory = Files.createTempDirectory("library-cache").toFile();
+        try {
+            LibraryCache cache = new LibraryCache(directory);
+            assertNull(cache.load("fingerprint", "config"));
+            cache.store("fingerprint", "config", entry);
+            assertNull(cache.load("fingerprint", "other config"));
+
+            AnalysisState loaded = cache.load("fingerprint", "config");
+            assertNotNull(loaded);
+            assertEquals(1, loaded.getMethod("com.lib.A.m()V").getRows().size());
+            assertTrue(LibraryCache.isValid(loaded, classKeys, labels));
+
+            labels.labels.put("com.util.U.check()Z", null);
+            assertFalse(LibraryCache.isValid(loaded, classKeys, labels));
+            labels.labels.put("com.util.U.check()Z", label);
+
+            classKeys.put("Lcom/util/U", "3");
+            assertFalse(LibraryCache.isValid(loaded, classKeys, labels));
+        } finally {
+            for (File file : Objects.requireNonNull(directory.listFiles())) {
+                for (File entryFile : Objects.requireNonNull(file.listFiles())) {
+                    assertTrue(entryFile.delete());
+                }
+                assertTrue(file.delete());
+            }
+            assertTrue(directory.delete());
+        }
+    }
+
+    @Test
+    void testPackagesAreStoredOnlyOnceEmbeddedByTwoApps() throws IOException {
+        File directory = Files.createTempDirectory("library-cache").toFile();
+        try {
+            LibraryCache cache = new LibraryCache(directory);
+            assertFalse(cache.markEmbeddedBy("fingerprint", "config", "com.first"));
+            assertFalse(cache.markEmbeddedBy("fingerprint", "config", "com.first"));
+            assertFalse(cache.markEmbeddedBy("fingerprint", "other config", "com.second"));
+            assertTrue(cache.markEmbeddedBy("fingerprint", "config", "com.second"));
+        } finally {
+            for (File file : Objects.requireNonNull(directory.listFiles())) {
+                for (File entryFile : Objects.requireNonNull(file.listFiles())) {
+                    assertTrue(entryFile.delete());
+                }
+                assertTrue(file.delete());
+            }
+            assertTrue(directory.delete());
+        }
+    }
+
+    @Test
+    void testPackageOfClass() {
+        assertEquals("Lcom/lib/", LibraryCache.getPackage("Lcom/lib/A"));
+        assertEquals("", LibraryCache.getPackage("LA"));
+    }
+
+    private static class MapLabels implements IVersionMethodCache {
+        private final Map<String, SDKInfo> labels = new HashMap<>();
+
+        @Override
+        public void build() {
+        }
+
+        @Override
+        public SDKInfo getVersionNumbers(MethodContext context) {
+            return this.getVersionNumbers(context.getIMethod().getSignature());
+        }
+
+        @Override
+        public SDKInfo getVersionNumbers(String signature) {
+            return labels.get(signature);
+        }
+
+        @Override
+        public void saveEntry(MethodContext methodContext, SDKInfo sdkInfo) {
+            labels.put(methodContext.getIMethod().getSignature(), sdkInfo);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package it.unimol.acryl.analysis;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VersionCheckerTest {
+    @Test
+    void testSharedCheckersAreImmutable() {
+        VersionChecker checker = VersionChecker.of(VersionChecker.Comparator.GE, 21);
+        assertSame(checker, VersionChecker.of(VersionChecker.Comparator.GE, 21));
+        assertThrows(RuntimeException.class, () -> checker.setCheckedVersion(23));
+
+        VersionChecker inverted = checker.inverted(true);
+        assertSame(VersionChecker.of(VersionChecker.Comparator.LT, 21), inverted);
+        assertEquals(VersionChecker.Comparator.GE, checker.getComparator());
+
+        VersionChecker copy = checker.copy();
+        copy.setCheckedVersion(23);
+        assertEquals(23, copy.getCheckedVersion());
+        assertEquals(21, checker.getCheckedVersion());
+    }
+
+    @Test
+    void testDerivedCheckersKeepNullness() {
+        VersionChecker checker = new VersionChecker.NullChecker().withComparator(VersionChecker.Comparator.EQ);
+        assertTrue(checker.isNull());
+        assertEquals(VersionChecker.Comparator.EQ, checker.getComparator());
+    }
+
+    @Test
+    void testSharedDirectInfoIsImmutable() {
+        SDKInfo direct = SDKInfo.directInfo();
+        assertTrue(direct.isDirect());
+        assertThrows(RuntimeException.class, () -> direct.addChecker(true, VersionChecker.of(VersionChecker.Comparator.LT, 21)));
+        assertFalse(direct.copy().isActuallyNull());
+    }
+}
@@ -0,0 +1,201 @@
+package it.unimol.acryl.android;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AndroidManifestTest {
+    private static final List<String> STRINGS = Arrays.asList(
+            "versionName", "minSdkVersion", "targetSdkVersion", "maxSdkVersion", "name",
+            "http://schemas.android.com/apk/res/android", "package", "manifest", "uses-sdk", "application", "activity",
+            "com.example.app", "1.0-beta", ".MainActivity", "com.example.app.Other"
+    );
+    private static final int[] RESOURCE_IDS = {0x0101021c, 0x0101020c, 0x01010270, 0x01010271, 0x01010003};
+
+    private static final int ANDROID = 5;
+    private static final int NONE = -1;
+
+    @Test
+    void testUtf16Manifest() throws IOException {
+        checkManifest(AndroidManifest.parse(buildManifest(false)));
+    }
+
+    @Test
+    void testUtf8Manifest() throws IOException {
+        checkManifest(AndroidManifest.parse(buildManifest(true)));
+    }
+
+    @Test
+    void testMalformedManifest() {
+        byte[] manifest = Arrays.copyOf(buildManifest(false), 100);
+
+        assertThrows(IOException.class, () -> AndroidManifest.parse(manifest));
+        assertThrows(IOException.class, () -> AndroidManifest.parse("<manifest/>".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void testOversizedLengths() {
+        // The string pool starts after the XML header, the first string after its header and the offsets
+        int stringPool = 8;
+        int firstString = stringPool + 28 + STRINGS.size() * 4;
+
+        ByteBuffer stringCount = ByteBuffer.wrap(buildManifest(false)).order(ByteOrder.LITTLE_ENDIAN);
+        stringCount.putInt(stringPool + 8, Integer.MAX_VALUE);
+        assertThrows(IOException.class, () -> AndroidManifest.parse(stringCount.array()));
+
+        ByteBuffer utf16Length = ByteBuffer.wrap(buildManifest(false)).order(ByteOrder.LITTLE_ENDIAN);
+        utf16Length.putInt(firstString, 0xFFFFFFFF);
+        assertThrows(IOException.class, () -> AndroidManifest.parse(utf16Length.array()));
+
+        ByteBuffer utf8Length = ByteBuffer.wrap(buildManifest(true)).order(ByteOrder.LITTLE_ENDIAN);
+        utf8Length.putShort(firstString + 1, (short) 0xFFFF);
+        assertThrows(IOException.class, () -> AndroidManifest.parse(utf8Length.array()));
+    }
+
+    private static void checkManifest(AndroidManifest manifest) {
+        assertEquals("com.example.app", manifest.getPackageName());
+        assertEquals("1.0-beta", manifest.getVersion());
+        assertEquals(15, manifest.getMinSDKVersion());
+        assertEquals(26, manifest.getTargetSDKVersion());
+        assertEquals(28, manifest.getMaxSDKVersion());
+        assertEquals(Arrays.asList(".MainActivity", "com.example.app.Other"), manifest.getActivities());
+    }
+
+    private static byte[] buildManifest(boolean utf8) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        write(body, stringPool(utf8));
+        write(body, resourceMap());
+
+        write(body, startElement(7,
+                attribute(ANDROID, 0, 0x03, 12),
+                attribute(NONE, 6, 0x03, 11)));
+        write(body, startElement(8,
+                attribute(ANDROID, 1, 0x10, 15),
+                attribute(ANDROID, 2, 0x11, 26),
+                attribute(ANDROID, 3, 0x10, 28)));
+        write(body, endElement(8));
+        write(body, startElement(9));
+        write(body, startElement(10, attribute(ANDROID, 4, 0x03, 13)));
+        write(body, endElement(10));
+        write(body, startElement(10, attribute(ANDROID, 4, 0x03, 14)));
+        write(body, endElement(10));
+        write(body, endElement(9));
+        write(body, endElement(7));
+
+        return chunk(0x0003, 8, new byte[0], body.toByteArray());
+    }
+
+    private static byte[] stringPool(boolean utf8) {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        ByteBuffer offsets = buffer(STRINGS.size() * 4);
+        for (String string : STRINGS) {
+            offsets.putInt(data.size());
+            if (utf8) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                data.write(string.length());
+                data.write(bytes.length);
+                write(data, bytes);
+                data.write(0);
+            } else {
+                ByteBuffer chars = buffer(2 + string.length() * 2 + 2);
+                chars.putShort((short) string.length());
+                for (char character : string.toCharArray()) {
+                    chars.putChar(character);
+                }
+                write(data, chars.array());
+            }
+        }
+        while (data.size() % 4 != 0) {
+            data.write(0);
+        }
+
+        ByteBuffer header = buffer(20);
+        header.putInt(STRINGS.size());
+        header.putInt(0);
+        header.putInt(utf8 ? 1 << 8 : 0);
+        header.putInt(28 + offsets.capacity());
+        header.putInt(0);
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        write(body, offsets.array());
+        write(body, data.toByteArray());
+        return chunk(0x0001, 28, header.array(), body.toByteArray());
+    }
+
+    private static byte[] resourceMap() {
+        ByteBuffer ids = buffer(RESOURCE_IDS.length * 4);
+        for (int id : RESOURCE_IDS) {
+            ids.putInt(id);
+        }
+        return chunk(0x0180, 8, new byte[0], ids.array());
+    }
+
+    private static byte[] startElement(int name, byte[]... attributes) {
+        ByteBuffer body = buffer(28 + attributes.length * 20);
+        body.putInt(1);
+        body.putInt(-1);
+        body.putInt(-1);
+        body.putInt(name);
+        body.putShort((short) 20);
+        body.putShort((short) 20);
+        body.putShort((short) attributes.length);
+        body.putShort((short) 0);
+        body.putShort((short) 0);
+        body.putShort((short) 0);
+        for (byte[] attribute : attributes) {
+            body.put(attribute);
+        }
+
+        byte[] bytes = body.array();
+        return chunk(0x0102, 16, Arrays.copyOf(bytes, 8), Arrays.copyOfRange(bytes, 8, bytes.length));
+    }
+
+    private static byte[] endElement(int name) {
+        ByteBuffer body = buffer(16);
+        body.putInt(1);
+        body.putInt(-1);
+        body.putInt(-1);
+        body.putInt(name);
+
+        byte[] bytes = body.array();
+        return chunk(0x0103, 16, Arrays.copyOf(bytes, 8), Arrays.copyOfRange(bytes, 8, bytes.length));
+    }
+
+    private static byte[] attribute(int namespace, int name, int type, int value) {
+        ByteBuffer attribute = buffer(20);
+        attribute.putInt(namespace);
+        attribute.putInt(name);
+        attribute.putInt(type == 0x03 ? value : -1);
+        attribute.putShort((short) 8);
+        attribute.put((byte) 0);
+        attribute.put((byte) type);
+        attribute.putInt(value);
+        return attribute.array();
+    }
+
+    private static byte[] chunk(int type, int headerSize, byte[] header, byte[] body) {
+        ByteBuffer chunk = buffer(8 + header.length + body.length);
+        chunk.putShort((short) type);
+        chunk.putShort((short) headerSize);
+        chunk.putInt(chunk.capacity());
+        chunk.put(header);
+        chunk.put(body);
+        return chunk.array();
+    }
+
+    private static ByteBuffer buffer(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void write(ByteArrayOutputStream stream, byte[] bytes) {
+        stream.write(bytes, 0, bytes.length);
+    }
+}
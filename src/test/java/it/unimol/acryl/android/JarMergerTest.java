@@ -0,0 +1,67 @@
+package it.unimol.acryl.android;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JarMergerTest {
+    @Test
+    void testEntriesAreCopiedInOrder() throws IOException {
+        File first  = File.createTempFile("first", ".jar");
+        File second = File.createTempFile("second", ".jar");
+        File merged = File.createTempFile("merged", ".jar");
+        try {
+            writeJar(first, "com/", null, "com/A.class", "first A", "com/B.class", "first B");
+            writeJar(second, "com/A.class", "second A", "com/C.class", "second C");
+
+            assertTrue(JarMerger.merge(Arrays.asList(first, second), merged));
+
+            try (ZipFile zip = new ZipFile(merged)) {
+                List<String> names = new ArrayList<>();
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    names.add(entries.nextElement().getName());
+                }
+
+                assertEquals(Arrays.asList("com/", "com/A.class", "com/B.class", "com/C.class"), names);
+                assertEquals("first A", read(zip, "com/A.class"));
+                assertEquals("first B", read(zip, "com/B.class"));
+                assertEquals("second C", read(zip, "com/C.class"));
+            }
+        } finally {
+            assertTrue(first.delete());
+            assertTrue(second.delete());
+            assertTrue(merged.delete());
+        }
+    }
+
+    private static void writeJar(File file, String... namesAndContents) throws IOException {
+        try (ZipOutputStream stream = new ZipOutputStream(new FileOutputStream(file))) {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                stream.putNextEntry(new ZipEntry(namesAndContents[i]));
+                if (namesAndContents[i + 1] != null) {
+                    // Deflated entries written to a stream use data descriptors, which the merger has to drop
+                    stream.write(namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8));
+                }
+                stream.closeEntry();
+            }
+        }
+    }
+
+    private static String read(ZipFile zip, String name) throws IOException {
+        try (InputStream stream = zip.getInputStream(zip.getEntry(name))) {
+            return IOUtils.toString(stream, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package it.unimol.acryl.android;
+
+import java.io.File;
+
+/**
+ * Compares the time needed to read the manifest of an APK with {@link AndroidManifest} and with "aapt l -a" (which
+ * was used before). Run it with the APK and the directory of the Android build tools.
+ */
+public class ManifestBenchmark {
+    private static final int WARMUP_ROUNDS      = 5;
+    private static final int MEASURED_ROUNDS    = 20;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2)
+            throw new RuntimeException("Specify the APK and the directory of the Android build tools");
+
+        File apk = new File(args[0]);
+        Aapt aapt = new Aapt(args[1]);
+        ApkContainer container = new ApkContainer(apk);
+
+        AndroidManifest manifest = AndroidManifest.read(apk);
+        System.out.println("Package: " + manifest.getPackageName() + ", version: " + manifest.getVersion() +
+                ", SDK: " + manifest.getMinSDKVersion() + "-" + manifest.getTargetSDKVersion() +
+                ", activities: " + manifest.getActivities().size());
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            AndroidManifest.read(apk);
+            aapt.extractManifest(container);
+        }
+
+        long parserTime = 0;
+        long aaptTime = 0;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            AndroidManifest.read(apk);
+            parserTime += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            aapt.extractManifest(container);
+            aaptTime += System.nanoTime() - start;
+        }
+
+        System.out.printf("Binary manifest parser: %,d us/op%n", parserTime / MEASURED_ROUNDS / 1000);
+        System.out.printf("aapt l -a:              %,d us/op%n", aaptTime / MEASURED_ROUNDS / 1000);
+    }
+}
@@ -0,0 +1,142 @@
+package it.unimol.acryl.graphs;
+
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import it.unimol.acryl.analysis.JarTester;
+import it.unimol.acryl.static_analysis.contexts.ClassContext;
+import it.unimol.acryl.static_analysis.contexts.JarContext;
+import it.unimol.acryl.static_analysis.contexts.MethodContext;
+import it.unimol.acryl.static_analysis.utils.ApiSymbolTable;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class APISummariesTest extends JarTester {
+    private static final List<Collection<String>> FILTERS = Arrays.asList(
+            Collections.emptyList(),
+            Arrays.asList("android.", "dalvik.", "com.android", "com.google"));
+
+    @Test
+    void testSummariesMatchIPCFG() throws ClassHierarchyException, IOException {
+        File jar = writeJar(Fixture.class, Recursive.class);
+        try {
+            JarContext context = new JarContext(jar.getPath());
+            APISummaries summaries = new APISummaries(context);
+
+            int checkedMethods = 0;
+            for (IClass iClass : context.getClassesInJar(true)) {
+                ClassContext classContext = context.resolveClassContext(iClass);
+                for (IMethod iMethod : classContext.getNonAbstractMethods()) {
+                    if (assertSameAPIs(context, summaries, classContext.resolveMethodContext(iMethod)))
+                        checkedMethods++;
+                }
+            }
+
+            assertTrue(checkedMethods >= 8);
+        } finally {
+            assertTrue(jar.delete());
+        }
+    }
+
+    @Test
+    void testRecursiveMethodsShareSummary() throws ClassHierarchyException, IOException {
+        File jar = writeJar(Recursive.class);
+        try {
+            JarContext context = new JarContext(jar.getPath());
+            APISummaries summaries = new APISummaries(context);
+            ClassContext classContext = context.resolveClassContext(Recursive.class.getName());
+            MethodContext even = classContext.resolveMethodContext("even(I)Z");
+            MethodContext odd = classContext.resolveMethodContext("odd(I)Z");
+            MethodContext count = classContext.resolveMethodContext("count(I)I");
+
+            for (MethodContext methodContext : Arrays.asList(count, even, odd)) {
+                assertTrue(assertSameAPIs(context, summaries, methodContext));
+            }
+
+            assertEquals(summaries.getSummary(even), summaries.getSummary(odd));
+            Set<String> apis = ApiSymbolTable.getInstance().getSignatures(summaries.getSummary(even));
+            assertTrue(apis.contains("java.lang.Integer.parseInt(Ljava/lang/String;)I"));
+            assertTrue(apis.contains("java.lang.Boolean.parseBoolean(Ljava/lang/String;)Z"));
+            assertTrue(ApiSymbolTable.getInstance().getSignatures(summaries.getSummary(count)).containsAll(apis));
+        } finally {
+            assertTrue(jar.delete());
+        }
+    }
+
+    /**
+     * Checks that the APIs of the whole method are the same as the ones of the inter-procedural graph
+     * @return false if the method has no IR
+     */
+    private static boolean assertSameAPIs(JarContext context, APISummaries summaries, MethodContext methodContext) throws IOException {
+        if (methodContext.getIntermediateRepresentation() == null)
+            return false;
+
+        SubCFG subCFG = new SubCFG(methodContext.getIntermediateRepresentation().getControlFlowGraph());
+        subCFG.setMethodContext(methodContext);
+        for (Collection<String> filters : FILTERS) {
+            assertEquals(IPCFG.buildIPCFG(context, subCFG, true).getCalledAPIIds(filters),
+                    summaries.getCalledAPIIds(subCFG, filters),
+                    "APIs of " + methodContext.getIMethod().getSignature() + " with filters " + filters);
+        }
+
+        return true;
+    }
+
+    static class Fixture {
+        private final List<String> values = new ArrayList<>();
+
+        Fixture(String value) {
+            values.add(value);
+        }
+
+        int parseAll() {
+            int sum = 0;
+            for (String value : values) {
+                try {
+                    sum += Integer.parseInt(value);
+                } catch (NumberFormatException e) {
+                    sum += fallback(value);
+                }
+            }
+
+            return sum;
+        }
+
+        String describe(Runnable callback) {
+            callback.run();
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < values.size(); i++) {
+                builder.append(values.get(i)).append(',');
+            }
+
+            return builder.toString() + parseAll();
+        }
+
+        static int fallback(String value) {
+            return value.isEmpty() ? 0 : value.trim().length();
+        }
+
+        static Fixture create(String value) {
+            return value == null ? null : new Fixture(value.toLowerCase());
+        }
+    }
+
+    static class Recursive {
+        static int count(int n) {
+            return even(n) ? n / 2 : Integer.valueOf(n);
+        }
+
+        static boolean even(int n) {
+            return n == 0 ? Boolean.parseBoolean("true") : odd(n - 1);
+        }
+
+        static boolean odd(int n) {
+            return n != 0 && Integer.parseInt("0") == 0 && even(n - 1);
+        }
+    }
+}
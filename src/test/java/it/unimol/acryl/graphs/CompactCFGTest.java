@@ -0,0 +1,112 @@
+package it.unimol.acryl.graphs;
+
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.ISSABasicBlock;
+import com.ibm.wala.ssa.SSACFG;
+import it.unimol.acryl.analysis.JarTester;
+import it.unimol.acryl.static_analysis.contexts.ClassContext;
+import it.unimol.acryl.static_analysis.contexts.JarContext;
+import it.unimol.acryl.static_analysis.utils.GraphUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactCFGTest extends JarTester {
+    @Test
+    void testPostDominatorsMatchBackDominators() throws ClassHierarchyException, IOException {
+        File jar = writeJar(Fixture.class);
+        try {
+            JarContext context = new JarContext(jar.getPath());
+
+            int checkedBlocks = 0;
+            for (IClass iClass : context.getClassesInJar(true)) {
+                ClassContext classContext = context.resolveClassContext(iClass);
+                for (IMethod iMethod : classContext.getNonAbstractMethods()) {
+                    IR ir = classContext.resolveMethodContext(iMethod).getIntermediateRepresentation();
+                    if (ir == null)
+                        continue;
+
+                    SSACFG cfg = ir.getControlFlowGraph();
+                    GraphUtils.BackDominators<ISSABasicBlock> backDominators = GraphUtils.buildBackDominators(cfg);
+                    CompactCFG graph = new CompactCFG(cfg);
+                    for (ISSABasicBlock block : cfg) {
+                        if (block.isExitBlock())
+                            continue;
+
+                        ISSABasicBlock expected = GraphUtils.getBackDominator(backDominators, block);
+                        assertEquals(expected != null ? expected.getNumber() : -1, graph.getImmediatePostDominator(block.getNumber()),
+                                "Post-dominator of block " + block.getNumber() + " of " + iMethod.getSignature());
+                        checkedBlocks++;
+                    }
+                    assertEquals(-1, graph.getImmediatePostDominator(cfg.exit().getNumber()));
+                }
+            }
+
+            assertTrue(checkedBlocks > 0);
+        } finally {
+            assertTrue(jar.delete());
+        }
+    }
+
+    static class Fixture {
+        static int branches(int value) {
+            int result;
+            if (value > 10)
+                result = value * 2;
+            else if (value < 0)
+                result = -value;
+            else
+                result = 0;
+
+            return result + 1;
+        }
+
+        static int earlyReturns(int[] values) {
+            for (int value : values) {
+                if (value == 0)
+                    return 0;
+                if (value < 0)
+                    break;
+            }
+
+            return values.length;
+        }
+
+        static int handlers(String value) {
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                return value.length();
+            } finally {
+                System.gc();
+            }
+        }
+
+        static void infiniteLoop(Runnable callback) {
+            while (true) {
+                callback.run();
+            }
+        }
+
+        static int switches(int value) {
+            switch (value) {
+                case 1:
+                    return 10;
+                case 2:
+                case 3:
+                    value++;
+                    break;
+                default:
+                    throw new IllegalArgumentException();
+            }
+
+            return value;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package it.unimol.acryl.reports;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SortedReportWriterTest {
+    @Test
+    void testSpilledRunsAreMerged() throws IOException {
+        Random random = new Random(1);
+        List<ReportRow> rows = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            rows.add(new ReportRow(random.nextInt(5), random.nextInt(4) / 2.0, "row", i));
+        }
+
+        File outputFile = File.createTempFile("report", ".tsv");
+        try {
+            SortedReportWriter writer = new SortedReportWriter(outputFile, "header", 64);
+            writer.addAll(rows);
+            assertTrue(writer.getNumberOfRuns() > 1);
+            writer.close();
+
+            List<String> expected = new ArrayList<>();
+            expected.add("header");
+            rows.stream()
+                    .sorted((r1, r2) -> {
+                        int order = Integer.compare(r1.getPriority(), r2.getPriority());
+                        if (order == 0)
+                            order = -Double.compare(r1.getConfidence(), r2.getConfidence());
+
+                        return order;
+                    })
+                    .forEach(row -> expected.add(row.getLine()));
+
+            assertEquals(expected, FileUtils.readLines(outputFile, "UTF-8"));
+        } finally {
+            assertTrue(outputFile.delete());
+        }
+    }
+
+    @Test
+    void testDiscardedReportIsNotWritten() throws IOException {
+        File outputFile = new File(FileUtils.getTempDirectory(), "discarded-" + System.nanoTime() + ".tsv");
+
+        SortedReportWriter writer = new SortedReportWriter(outputFile, "header", 1);
+        writer.add(new ReportRow(0, 1.0, "a"));
+        writer.add(new ReportRow(1, 1.0, "b"));
+        writer.discard();
+        writer.close();
+
+        assertFalse(outputFile.exists());
+    }
+
+    @Test
+    void testRowsAreSerialized() throws IOException {
+        ReportRow row = new ReportRow(2, 0.5, "a.A.m()V", 3, 4).withLeadingColumns("app", "1.0");
+        assertEquals("app\t1.0\ta.A.m()V\t3\t4", row.getLine());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        row.write(new DataOutputStream(bytes));
+        ReportRow read = ReportRow.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(row.getPriority(), read.getPriority());
+        assertEquals(row.getConfidence(), read.getConfidence());
+        assertEquals(row.getLine(), read.getLine());
+    }
+}
@@ -0,0 +1,146 @@
+package it.unimol.acryl.rules;
+
+import it.unimol.acryl.analysis.VersionChecker;
+
+import java.util.*;
+
+/**
+ * Compares the inverted index of {@link Ruleset} with the previous implementation of the matching, based on set
+ * intersections. Run it with the number of rules and the number of distinct APIs as (optional) arguments.
+ */
+public class RulesetBenchmark {
+    private static final int WARMUP_ROUNDS      = 5;
+    private static final int MEASURED_ROUNDS    = 10;
+    private static final int QUERIES            = 2_000;
+
+    public static void main(String[] args) {
+        int rulesNumber = args.length > 0 ? Integer.parseInt(args[0]) : 30_000;
+        int apisNumber  = args.length > 1 ? Integer.parseInt(args[1]) : 8_000;
+
+        Random random = new Random(42);
+        List<Rule> rules = generateRules(random, rulesNumber, apisNumber);
+        List<Collection<String>> queries = generateQueries(random, QUERIES, apisNumber);
+
+        Ruleset ruleset = new Ruleset();
+        LegacyRuleset legacyRuleset = new LegacyRuleset();
+        for (Rule rule : rules) {
+            ruleset.addRule(rule);
+            legacyRuleset.addRule(rule);
+        }
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            run(ruleset::matchingRules, queries);
+            run(legacyRuleset::matchingRules, queries);
+        }
+
+        long indexTime = 0;
+        long legacyTime = 0;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            indexTime   += run(ruleset::matchingRules, queries);
+            legacyTime  += run(legacyRuleset::matchingRules, queries);
+        }
+
+        long operations = (long) MEASURED_ROUNDS * QUERIES;
+        System.out.println("Rules: " + rulesNumber + ", APIs: " + apisNumber);
+        System.out.printf("Inverted index: %,d ns/op%n", indexTime / operations);
+        System.out.printf("Legacy:         %,d ns/op%n", legacyTime / operations);
+    }
+
+    private static long run(Matcher matcher, List<Collection<String>> queries) {
+        long matches = 0;
+        long start = System.nanoTime();
+        for (Collection<String> query : queries) {
+            matches += matcher.match(query).size();
+        }
+        long time = System.nanoTime() - start;
+
+        if (matches < 0)
+            System.out.println("Unreachable");
+
+        return time;
+    }
+
+    static List<Rule> generateRules(Random random, int rulesNumber, int apisNumber) {
+        List<Rule> rules = new ArrayList<>();
+        for (int i = 0; i < rulesNumber; i++) {
+            VersionChecker checker = new VersionChecker();
+            checker.setComparator(random.nextBoolean() ? ">=" : "<");
+            checker.setCheckedVersion(14 + random.nextInt(14));
+
+            Rule rule = new Rule(checker, randomApis(random, apisNumber, random.nextInt(4)), randomApis(random, apisNumber, random.nextInt(3)));
+            rule.setConfidence(random.nextInt(100));
+            rules.add(rule);
+        }
+
+        return rules;
+    }
+
+    static List<Collection<String>> generateQueries(Random random, int queriesNumber, int apisNumber) {
+        List<Collection<String>> queries = new ArrayList<>();
+        for (int i = 0; i < queriesNumber; i++) {
+            Set<String> query = randomApis(random, apisNumber, 1 + random.nextInt(4));
+            if (random.nextBoolean())
+                query.add("com.example.Unknown.method" + random.nextInt(10) + "()V");
+            queries.add(query);
+        }
+
+        return queries;
+    }
+
+    /**
+     * Skewed choice of the APIs: few APIs are involved in many rules, as it happens in real rulesets
+     */
+    private static Set<String> randomApis(Random random, int apisNumber, int size) {
+        Set<String> apis = new HashSet<>();
+        for (int i = 0; i < size; i++) {
+            int api = (int) (apisNumber * Math.pow(random.nextDouble(), 3));
+            apis.add("android.app.Api" + api + ".method()V");
+        }
+
+        return apis;
+    }
+
+    private interface Matcher {
+        Collection<Rule> match(Collection<String> apis);
+    }
+
+    /**
+     * Matching based on set intersections, as implemented before the inverted index
+     */
+    static class LegacyRuleset {
+        private final HashMap<String, Set<Rule>> hashMap = new HashMap<>();
+        private final Set<Rule> rules = new LinkedHashSet<>();
+
+        void addRule(Rule rule) {
+            this.rules.add(rule);
+
+            for (String apiSignature : rule.getInvolvedApis()) {
+                hashMap.computeIfAbsent(apiSignature, k -> new HashSet<>()).add(rule);
+            }
+        }
+
+        Collection<Rule> matchingRules(Collection<String> apis) {
+            if (apis.size() == 0)
+                return new ArrayList<>();
+
+            Set<Rule> matchingRules = new LinkedHashSet<>(this.rules);
+
+            for (String api : apis) {
+                if (hashMap.containsKey(api)) {
+                    matchingRules.retainAll(hashMap.get(api));
+                }
+            }
+
+            Set<Rule> result = new LinkedHashSet<>();
+            for (Rule matchingRule : matchingRules) {
+                if (apis.containsAll(matchingRule.getTrueApis()))
+                    result.add(matchingRule);
+
+                if (apis.containsAll(matchingRule.getFalseApis()))
+                    result.add(matchingRule);
+            }
+
+            return result;
+        }
+    }
+}
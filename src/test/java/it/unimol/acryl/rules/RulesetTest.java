@@ -0,0 +1,60 @@
+package it.unimol.acryl.rules;
+
+import it.unimol.acryl.analysis.VersionChecker;
+import it.unimol.acryl.static_analysis.utils.ApiSymbolTable;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RulesetTest {
+    @Test
+    void testMatchingRules() {
+        Rule newApi         = rule(Collections.singletonList("a.New()V"), Collections.singletonList("a.Old()V"));
+        Rule onlyNewApi     = rule(Collections.singletonList("a.New()V"), Collections.emptyList());
+        Rule otherApi       = rule(Collections.singletonList("b.New()V"), Collections.singletonList("b.Old()V"));
+
+        Ruleset ruleset = new Ruleset();
+        ruleset.addRule(newApi);
+        ruleset.addRule(onlyNewApi);
+        ruleset.addRule(otherApi);
+
+        assertEquals(Arrays.asList(newApi, onlyNewApi), new ArrayList<>(ruleset.matchingRules(Collections.singletonList("a.New()V"))));
+        assertEquals(Collections.singletonList(newApi), new ArrayList<>(ruleset.matchingRules(Collections.singletonList("a.Old()V"))));
+        assertEquals(Collections.singletonList(onlyNewApi), new ArrayList<>(ruleset.matchingRules(Collections.singletonList("x.Unknown()V"))));
+        assertTrue(ruleset.matchingRules(Arrays.asList("a.New()V", "b.New()V")).isEmpty());
+        assertTrue(ruleset.matchingRules(Collections.emptyList()).isEmpty());
+    }
+
+    @Test
+    void testEquivalentToLegacyMatching() {
+        Random random = new Random(1);
+        List<Rule> rules = RulesetBenchmark.generateRules(random, 2_000, 300);
+
+        Ruleset ruleset = new Ruleset();
+        RulesetBenchmark.LegacyRuleset legacyRuleset = new RulesetBenchmark.LegacyRuleset();
+        for (Rule rule : rules) {
+            ruleset.addRule(rule);
+            legacyRuleset.addRule(rule);
+        }
+
+        for (Collection<String> query : RulesetBenchmark.generateQueries(random, 2_000, 300)) {
+            assertEquals(new ArrayList<>(legacyRuleset.matchingRules(query)), new ArrayList<>(ruleset.matchingRules(query)));
+
+            BitSet queryIds = new BitSet();
+            for (String api : query) {
+                queryIds.set(ApiSymbolTable.getInstance().getOrCreateId(api));
+            }
+            assertEquals(new ArrayList<>(ruleset.matchingRules(query)), new ArrayList<>(ruleset.matchingRules(queryIds)));
+        }
+    }
+
+    private static Rule rule(Collection<String> trueApis, Collection<String> falseApis) {
+        VersionChecker checker = new VersionChecker();
+        checker.setComparator(">=");
+        checker.setCheckedVersion(21);
+
+        return new Rule(checker, new HashSet<>(trueApis), new HashSet<>(falseApis));
+    }
+}
@@ -0,0 +1,100 @@
+package it.unimol.acryl.static_analysis.contexts;
+
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.SSAAbstractInvokeInstruction;
+import com.ibm.wala.ssa.SSAInstruction;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Compares the membership index used by {@link JarContext#isClassInJar} with the previous linear scan of the classes
+ * in jar, checking the declaring class of every call of the app (as done when building the IPCFGs). Run it with the
+ * jar extracted from an APK (possibly a large multi-dex one) and the directory of the Android platform.
+ */
+public class ClassInJarBenchmark {
+    private static final int WARMUP_ROUNDS      = 2;
+    private static final int MEASURED_ROUNDS    = 5;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2)
+            throw new RuntimeException("Specify the jar to analyze and the directory of the Android platform");
+
+        AndroidJarContext.setAndroidPackageNames(new HashSet<>(Arrays.asList("android.", "dalvik.", "com.android", "com.google")));
+        JarContext context = GlobalContext.getAndroidContext(args[0], new File[] {
+                new File(args[1], "android.jar"),
+                new File(args[1], "uiautomator.jar")
+        });
+
+        List<ClassContext> calledClasses = new ArrayList<>();
+        for (IClass iClass : context.getClassesInJar(false)) {
+            for (IMethod iMethod : iClass.getDeclaredMethods()) {
+                IR ir = context.findOrCreateIR(iMethod);
+                if (ir == null)
+                    continue;
+
+                for (SSAInstruction instruction : ir.getInstructions()) {
+                    if (instruction instanceof SSAAbstractInvokeInstruction) {
+                        ClassContext calledClass = context.resolveClassContext(((SSAAbstractInvokeInstruction) instruction).getDeclaredTarget().getDeclaringClass().getName().toString());
+                        if (calledClass != null)
+                            calledClasses.add(calledClass);
+                    }
+                }
+            }
+        }
+
+        Collection<IClass> classesInJar = context.getClassesInJar(false);
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            runIndex(context, calledClasses);
+            runLinearScan(classesInJar, calledClasses);
+        }
+
+        long indexTime = 0;
+        long scanTime = 0;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            indexTime   += runIndex(context, calledClasses);
+            scanTime    += runLinearScan(classesInJar, calledClasses);
+        }
+
+        long operations = (long) MEASURED_ROUNDS * calledClasses.size();
+        System.out.println("Classes in jar: " + classesInJar.size() + ", calls: " + calledClasses.size());
+        System.out.printf("Index:       %,d ns/op%n", indexTime / Math.max(1, operations));
+        System.out.printf("Linear scan: %,d ns/op%n", scanTime / Math.max(1, operations));
+    }
+
+    private static long runIndex(JarContext context, List<ClassContext> calledClasses) throws Exception {
+        long inJar = 0;
+        long start = System.nanoTime();
+        for (ClassContext calledClass : calledClasses) {
+            if (context.isClassInJar(calledClass, false))
+                inJar++;
+        }
+        long time = System.nanoTime() - start;
+
+        if (inJar < 0)
+            System.out.println("Unreachable");
+
+        return time;
+    }
+
+    private static long runLinearScan(Collection<IClass> classesInJar, List<ClassContext> calledClasses) {
+        long inJar = 0;
+        long start = System.nanoTime();
+        for (ClassContext calledClass : calledClasses) {
+            for (IClass iClass : classesInJar) {
+                if (iClass.equals(calledClass.getIClass())) {
+                    inJar++;
+                    break;
+                }
+            }
+        }
+        long time = System.nanoTime() - start;
+
+        if (inJar < 0)
+            System.out.println("Unreachable");
+
+        return time;
+    }
+}
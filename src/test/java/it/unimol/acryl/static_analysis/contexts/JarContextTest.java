@@ -0,0 +1,163 @@
+package it.unimol.acryl.static_analysis.contexts;
+
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.shrikeCT.ClassConstants;
+import com.ibm.wala.shrikeCT.ClassWriter;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.types.MethodReference;
+import com.ibm.wala.types.Selector;
+import it.unimol.acryl.static_analysis.utils.ApiSymbolTable;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JarContextTest {
+    @Test
+    void testBundledClassesTakePrecedenceOverClasspath() throws IOException, ClassHierarchyException {
+        File sdk = File.createTempFile("sdk", ".jar");
+        File app = File.createTempFile("app", ".jar");
+        File otherApp = File.createTempFile("other", ".jar");
+        try {
+            writeJar(sdk, "org/json/JSONObject", "sdkMethod", "android/app/Activity", "onCreate");
+            writeJar(app, "org/json/JSONObject", "appMethod", "com/example/Main", "main");
+            writeJar(otherApp, "com/example/Other", "other");
+
+            JarContext context = new JarContext(new File[] {sdk}, app.getPath(), false);
+            ClassContext bundled = context.resolveClassContext("org.json.JSONObject");
+            assertNotNull(bundled.getIClass().getMethod(Selector.make("appMethod()V")));
+            assertNull(bundled.getIClass().getMethod(Selector.make("sdkMethod()V")));
+            assertTrue(context.isClassInJar(bundled, false));
+            assertFalse(context.isClassInJar(context.resolveClassContext("android.app.Activity"), false));
+
+            // Apps without copies of the classpath still see it, outside of the jar
+            JarContext otherContext = new JarContext(new File[] {sdk}, otherApp.getPath(), false);
+            ClassContext sdkClass = otherContext.resolveClassContext("org.json.JSONObject");
+            assertNotNull(sdkClass.getIClass().getMethod(Selector.make("sdkMethod()V")));
+            assertFalse(otherContext.isClassInJar(sdkClass, false));
+            assertNotSame(otherContext.getHierarchy(), sdkClass.getIClass().getClassHierarchy());
+            assertNotSame(context.getHierarchy(), sdkClass.getIClass().getClassHierarchy());
+            assertTrue(otherContext.isClassInJar(otherContext.resolveClassContext("com.example.Other"), false));
+        } finally {
+            assertTrue(sdk.delete());
+            assertTrue(app.delete());
+            assertTrue(otherApp.delete());
+        }
+    }
+
+    @Test
+    void testOnlyAPIsInJarAreInterned() throws IOException, ClassHierarchyException {
+        File sdk = File.createTempFile("sdk", ".jar");
+        File app = File.createTempFile("app", ".jar");
+        try {
+            writeJar(sdk, "android/app/Activity", "onCreate");
+            writeJar(app, "com/example/Main", "main", "android/support/Compat", "compat");
+
+            JarContext.setAPIPackageNames(Collections.singleton("android."));
+            JarContext context = new JarContext(new File[] {sdk}, app.getPath(), false);
+
+            ResolvedCall sdkCall = context.resolveCall(MethodReference.findOrCreate(ClassLoaderReference.Application, "Landroid/app/Activity", "onCreate", "()V"));
+            ResolvedCall apiInJarCall = context.resolveCall(MethodReference.findOrCreate(ClassLoaderReference.Application, "Landroid/support/Compat", "compat", "()V"));
+            ResolvedCall inJarCall = context.resolveCall(MethodReference.findOrCreate(ClassLoaderReference.Application, "Lcom/example/Main", "main", "()V"));
+
+            assertFalse(sdkCall.isInJar());
+            assertEquals(sdkCall.getSignature(), ApiSymbolTable.getInstance().getSignature(sdkCall.getApiId()));
+            assertTrue(apiInJarCall.isInJar());
+            assertEquals(apiInJarCall.getSignature(), ApiSymbolTable.getInstance().getSignature(apiInJarCall.getApiId()));
+            assertTrue(inJarCall.isInJar());
+            assertEquals(ApiSymbolTable.UNKNOWN, inJarCall.getApiId());
+            assertEquals(ApiSymbolTable.UNKNOWN, ApiSymbolTable.getInstance().getId(inJarCall.getSignature()));
+        } finally {
+            JarContext.setAPIPackageNames(null);
+            assertTrue(sdk.delete());
+            assertTrue(app.delete());
+        }
+    }
+
+    @Test
+    void testConcurrentLookupsOfInheritedMethods() throws Exception {
+        File sdk = File.createTempFile("sdk", ".jar");
+        File app = File.createTempFile("app", ".jar");
+        String[] methods = new String[200];
+        for (int i = 0; i < methods.length; i++) {
+            methods[i] = "method" + i;
+        }
+
+        try {
+            try (ZipOutputStream stream = new ZipOutputStream(new FileOutputStream(sdk))) {
+                writeClass(stream, "android/app/Activity", "java/lang/Object", methods);
+            }
+            try (ZipOutputStream stream = new ZipOutputStream(new FileOutputStream(app))) {
+                writeClass(stream, "com/example/Main", "android/app/Activity", "main");
+            }
+
+            JarContext context = new JarContext(new File[] {sdk}, app.getPath(), false);
+            ClassContext subclass = context.resolveClassContext("com.example.Main");
+            ExecutorService pool = Executors.newFixedThreadPool(8);
+            try {
+                List<Future<IMethod>> lookups = new ArrayList<>();
+                for (int round = 0; round < 8; round++) {
+                    for (String method : methods) {
+                        Selector selector = Selector.make(method + "()V");
+                        MethodReference reference = MethodReference.findOrCreate(ClassLoaderReference.Application,
+                                "Lcom/example/Main", method, "()V");
+                        lookups.add(pool.submit(() -> subclass.resolveMethodContext(selector).getIMethod()));
+                        lookups.add(pool.submit(() -> context.resolveCall(reference).getMethod()));
+                    }
+                }
+
+                for (Future<IMethod> lookup : lookups) {
+                    IMethod method = lookup.get();
+                    assertNotNull(method);
+                    assertEquals("Landroid/app/Activity", method.getDeclaringClass().getName().toString());
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+        } finally {
+            assertTrue(sdk.delete());
+            assertTrue(app.delete());
+        }
+    }
+
+    /**
+     * Writes a jar with empty classes, each one with a native method
+     */
+    private static void writeJar(File file, String... namesAndMethods) throws IOException {
+        try (ZipOutputStream stream = new ZipOutputStream(new FileOutputStream(file))) {
+            for (int i = 0; i < namesAndMethods.length; i += 2) {
+                writeClass(stream, namesAndMethods[i], "java/lang/Object", namesAndMethods[i + 1]);
+            }
+        }
+    }
+
+    /**
+     * Writes an empty class with the given native methods
+     */
+    private static void writeClass(ZipOutputStream stream, String name, String superName, String... methods) throws IOException {
+        ClassWriter writer = new ClassWriter();
+        writer.setMajorVersion(50);
+        writer.setAccessFlags(ClassConstants.ACC_PUBLIC | ClassConstants.ACC_SUPER);
+        writer.setName(name);
+        writer.setSuperName(superName);
+        for (String method : methods) {
+            writer.addMethod(ClassConstants.ACC_PUBLIC | ClassConstants.ACC_NATIVE, method, "()V", new ClassWriter.Element[0]);
+        }
+
+        stream.putNextEntry(new ZipEntry(name + ".class"));
+        stream.write(writer.makeBytes());
+        stream.closeEntry();
+    }
+}
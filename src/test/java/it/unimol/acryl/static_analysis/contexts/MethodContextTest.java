@@ -1,11 +1,18 @@
 package it.unimol.acryl.static_analysis.contexts;
 
+import com.ibm.wala.classLoader.IMethod;
 import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.ssa.SSAAbstractInvokeInstruction;
+import com.ibm.wala.ssa.SSAInstruction;
 import it.unimol.acryl.analysis.JarTester;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 /**
  * @author Simone Scalabrino.
@@ -53,4 +60,50 @@ class MethodContextTest extends JarTester {
         } catch (RuntimeException ignored) {
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void testBytecodeSummaryMatchesIR() throws ClassHierarchyException, IOException {
+        File jar = writeJar(Fixture.class);
+        try {
+            JarContext context = new JarContext(jar.getPath());
+            ClassContext classContext = context.resolveClassContext(Fixture.class.getName());
+
+            int checkedMethods = 0;
+            for (IMethod iMethod : classContext.getNonAbstractMethods()) {
+                MethodContext methodContext = classContext.resolveMethodContext(iMethod);
+                BytecodeSummary summary = methodContext.getBytecodeSummary();
+                assertTrue(summary.isAvailable());
+                assertFalse(summary.isReadingSDKVersion());
+
+                Set<String> invoked = new LinkedHashSet<>();
+                for (SSAInstruction instruction : methodContext.getIntermediateRepresentation().getInstructions()) {
+                    if (instruction instanceof SSAAbstractInvokeInstruction)
+                        invoked.add(((SSAAbstractInvokeInstruction) instruction).getDeclaredTarget().getSignature());
+                }
+
+                assertEquals(new ArrayList<>(invoked), summary.getCalledSignatures(), iMethod.getSignature());
+                checkedMethods++;
+            }
+
+            assertEquals(3, checkedMethods);
+        } finally {
+            assertTrue(jar.delete());
+        }
+    }
+
+    static class Fixture {
+        private final StringBuilder builder = new StringBuilder();
+
+        boolean isShown(Object view) {
+            return view != null && view.hashCode() != 0 && builder.append(view).length() > 0;
+        }
+
+        static int parse(String value) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                return Integer.parseInt("0");
+            }
+        }
+    }
+}
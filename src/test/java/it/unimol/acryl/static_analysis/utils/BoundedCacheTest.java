@@ -0,0 +1,38 @@
+package it.unimol.acryl.static_analysis.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoundedCacheTest {
+    @Test
+    void testLeastRecentlyUsedEntriesAreEvicted() {
+        BoundedCache<String, String> cache = new BoundedCache<>("Test", 6, String::length);
+
+        assertEquals("aa", cache.get("a", key -> "aa"));
+        assertEquals("bb", cache.get("b", key -> "bb"));
+        assertEquals("aa", cache.get("a", key -> "reloaded"));
+        assertEquals("ccc", cache.get("c", key -> "ccc"));
+
+        assertEquals(2, cache.size());
+        assertEquals(5, cache.getWeight());
+        assertEquals("aa", cache.getIfPresent("a"));
+        assertNull(cache.getIfPresent("b"));
+
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    void testHeavyAndNullValues() {
+        BoundedCache<String, String> cache = new BoundedCache<>("Test", 2, String::length);
+
+        assertEquals("heavy", cache.get("a", key -> "heavy"));
+        assertEquals("heavy", cache.getIfPresent("a"));
+
+        assertNull(cache.get("b", key -> null));
+        assertNull(cache.getIfPresent("b"));
+        assertEquals(1, cache.size());
+    }
+}
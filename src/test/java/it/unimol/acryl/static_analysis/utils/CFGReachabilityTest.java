@@ -0,0 +1,101 @@
+package it.unimol.acryl.static_analysis.utils;
+
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.ssa.ISSABasicBlock;
+import com.ibm.wala.ssa.SSACFG;
+import it.unimol.acryl.graphs.CompactCFG;
+import it.unimol.acryl.static_analysis.contexts.JarContext;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CFGReachabilityTest {
+    @Test
+    void testLoopWithExceptionalEdge() throws IOException, ClassHierarchyException {
+        File jar = File.createTempFile("fixture", ".jar");
+        try {
+            String entryName = Fixture.class.getName().replace('.', '/') + ".class";
+            try (ZipOutputStream stream = new ZipOutputStream(new FileOutputStream(jar));
+                 InputStream classFile = Fixture.class.getClassLoader().getResourceAsStream(entryName)) {
+                stream.putNextEntry(new ZipEntry(entryName));
+                IOUtils.copy(classFile, stream);
+                stream.closeEntry();
+            }
+
+            JarContext context = new JarContext(jar.getPath());
+            SSACFG cfg = context.resolveClassContext(Fixture.class.getName())
+                    .resolveMethodContext("sumUntilFailure([Ljava/lang/String;)I")
+                    .getIntermediateRepresentation().getControlFlowGraph();
+            CFGReachability reachability = new CFGReachability(new CompactCFG(cfg));
+
+            for (ISSABasicBlock from : cfg) {
+                Set<ISSABasicBlock> reachable = visit(cfg, from, true);
+                for (ISSABasicBlock to : cfg) {
+                    assertEquals(reachable.contains(to), reachability.reaches(from.getNumber(), to.getNumber()),
+                            "Path from " + from.getNumber() + " to " + to.getNumber());
+                    assertEquals(reachable.contains(to), reachability.getReachableFrom(from.getNumber()).get(to.getNumber()));
+                    assertEquals(reachable.contains(to), reachability.getReaching(to.getNumber()).get(from.getNumber()));
+                }
+            }
+
+            // The handler is reached only through an exceptional edge, and it goes back to the loop that throws
+            ISSABasicBlock handler = null;
+            for (ISSABasicBlock block : cfg) {
+                if (block.isCatchBlock())
+                    handler = block;
+            }
+            assertNotNull(handler);
+            assertFalse(visit(cfg, cfg.entry(), false).contains(handler));
+            assertTrue(reachability.reaches(cfg.entry().getNumber(), handler.getNumber()));
+            assertFalse(cfg.getExceptionalPredecessors(handler).isEmpty());
+            for (ISSABasicBlock thrower : cfg.getExceptionalPredecessors(handler)) {
+                assertTrue(reachability.reaches(handler.getNumber(), thrower.getNumber()));
+            }
+            assertTrue(reachability.reaches(handler.getNumber(), cfg.exit().getNumber()));
+            assertFalse(reachability.reaches(cfg.exit().getNumber(), handler.getNumber()));
+        } finally {
+            assertTrue(jar.delete());
+        }
+    }
+
+    private static Set<ISSABasicBlock> visit(SSACFG cfg, ISSABasicBlock from, boolean exceptionalEdges) {
+        Set<ISSABasicBlock> visited = new HashSet<>();
+        Deque<ISSABasicBlock> toVisit = new ArrayDeque<>();
+        toVisit.add(from);
+        while (!toVisit.isEmpty()) {
+            ISSABasicBlock block = toVisit.poll();
+            if (!visited.add(block))
+                continue;
+
+            toVisit.addAll(cfg.getNormalSuccessors(block));
+            if (exceptionalEdges)
+                toVisit.addAll(cfg.getExceptionalSuccessors(block));
+        }
+
+        return visited;
+    }
+
+    static class Fixture {
+        static int sumUntilFailure(String[] values) {
+            int sum = 0;
+            for (String value : values) {
+                try {
+                    sum += Integer.parseInt(value);
+                } catch (NumberFormatException e) {
+                    sum = -1;
+                }
+            }
+
+            return sum;
+        }
+    }
+}
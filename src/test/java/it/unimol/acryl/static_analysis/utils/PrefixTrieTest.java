@@ -0,0 +1,29 @@
+package it.unimol.acryl.static_analysis.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrefixTrieTest {
+    @Test
+    void testMatchesPrefixOf() {
+        PrefixTrie trie = new PrefixTrie(Arrays.asList("android/", "com/android", "com/google"));
+
+        assertTrue(trie.matchesPrefixOf("android/app/Activity.class"));
+        assertTrue(trie.matchesPrefixOf("com/android"));
+        assertTrue(trie.matchesPrefixOf("com/google/gson/Gson.class"));
+        assertFalse(trie.matchesPrefixOf("com/andro"));
+        assertFalse(trie.matchesPrefixOf("com/example/Main.class"));
+        assertFalse(trie.matchesPrefixOf("android"));
+        assertFalse(trie.matchesPrefixOf(""));
+    }
+
+    @Test
+    void testEmptyPrefixes() {
+        assertFalse(new PrefixTrie(Collections.emptyList()).matchesPrefixOf("android/app/Activity.class"));
+        assertTrue(new PrefixTrie(Collections.singletonList("")).matchesPrefixOf("android/app/Activity.class"));
+    }
+}